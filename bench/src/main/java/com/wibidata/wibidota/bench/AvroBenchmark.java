@@ -0,0 +1,148 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota.bench;
+
+import com.wibidata.wibidota.CompactPlayersConverter;
+import com.wibidata.wibidota.PlayerProjection;
+import com.wibidata.wibidota.RawMatch;
+import com.wibidata.wibidota.avro.CompactPlayers;
+import com.wibidata.wibidota.avro.Players;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Avro binary encoding and decoding of the Players of each match, as stored in
+ * data:player_data, along with CompactPlayers and a PlayerProjection of two fields.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@OperationsPerInvocation(MatchCorpus.MATCHES)
+public class AvroBenchmark {
+
+  private final SpecificDatumWriter<Players> mPlayersWriter =
+      new SpecificDatumWriter<Players>(Players.class);
+  private final SpecificDatumReader<Players> mPlayersReader =
+      new SpecificDatumReader<Players>(Players.class);
+  private final SpecificDatumReader<CompactPlayers> mCompactReader =
+      new SpecificDatumReader<CompactPlayers>(CompactPlayers.class);
+  private final GenericDatumReader<GenericRecord> mProjectedReader =
+      PlayerProjection.playersReader(PlayerProjection.playersSchema("player_slot", "hero_id"));
+
+  private final ByteArrayOutputStream mOut = new ByteArrayOutputStream();
+  private BinaryEncoder mEncoder = null;
+  private BinaryDecoder mDecoder = null;
+
+  private List<Players> mPlayers;
+  private List<byte[]> mEncoded;
+  private List<byte[]> mEncodedCompact;
+
+  private static <T> List<byte[]> encodeAll(List<T> records, SpecificDatumWriter<T> writer)
+      throws IOException {
+    final List<byte[]> encoded = new ArrayList<byte[]>(records.size());
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BinaryEncoder encoder = null;
+    for(T record : records) {
+      out.reset();
+      encoder = EncoderFactory.get().binaryEncoder(out, encoder);
+      writer.write(record, encoder);
+      encoder.flush();
+      encoded.add(out.toByteArray());
+    }
+    return encoded;
+  }
+
+  @Setup
+  public void setup() throws IOException {
+    mPlayers = new ArrayList<Players>(MatchCorpus.MATCHES);
+    final List<CompactPlayers> compact = new ArrayList<CompactPlayers>(MatchCorpus.MATCHES);
+    for(RawMatch match : MatchCorpus.matches()) {
+      mPlayers.add(match.players);
+      compact.add(CompactPlayersConverter.toCompact(match.players));
+    }
+    mEncoded = encodeAll(mPlayers, mPlayersWriter);
+    mEncodedCompact = encodeAll(compact,
+        new SpecificDatumWriter<CompactPlayers>(CompactPlayers.class));
+  }
+
+  @Benchmark
+  public void encodePlayers(Blackhole bh) throws IOException {
+    for(Players players : mPlayers) {
+      mOut.reset();
+      mEncoder = EncoderFactory.get().binaryEncoder(mOut, mEncoder);
+      mPlayersWriter.write(players, mEncoder);
+      mEncoder.flush();
+      bh.consume(mOut.size());
+    }
+  }
+
+  @Benchmark
+  public void decodePlayers(Blackhole bh) throws IOException {
+    for(byte[] bytes : mEncoded) {
+      mDecoder = DecoderFactory.get().binaryDecoder(bytes, mDecoder);
+      bh.consume(mPlayersReader.read(null, mDecoder));
+    }
+  }
+
+  @Benchmark
+  public void decodeCompactPlayers(Blackhole bh) throws IOException {
+    for(byte[] bytes : mEncodedCompact) {
+      mDecoder = DecoderFactory.get().binaryDecoder(bytes, mDecoder);
+      bh.consume(mCompactReader.read(null, mDecoder));
+    }
+  }
+
+  @Benchmark
+  public void decodeCompactToPlayers(Blackhole bh) throws IOException {
+    for(byte[] bytes : mEncodedCompact) {
+      mDecoder = DecoderFactory.get().binaryDecoder(bytes, mDecoder);
+      bh.consume(CompactPlayersConverter.fromCompact(mCompactReader.read(null, mDecoder)));
+    }
+  }
+
+  @Benchmark
+  public void decodeProjectedPlayers(Blackhole bh) throws IOException {
+    for(byte[] bytes : mEncoded) {
+      mDecoder = DecoderFactory.get().binaryDecoder(bytes, mDecoder);
+      bh.consume(mProjectedReader.read(null, mDecoder));
+    }
+  }
+}
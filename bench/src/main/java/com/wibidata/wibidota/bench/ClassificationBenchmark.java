@@ -0,0 +1,108 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota.bench;
+
+import com.wibidata.wibidota.DotaValues.GameMode;
+import com.wibidata.wibidota.DotaValues.LeaverStatus;
+import com.wibidata.wibidota.DotaValues.LobbyType;
+import com.wibidata.wibidota.RawMatch;
+import com.wibidata.wibidota.RealMatchClassifier;
+import com.wibidata.wibidota.avro.Player;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The real_match classification RealMatchProducer does, with RealMatchClassifier and
+ * with the DotaValues enums it replaced. The enums baseline looks values up the way fromInt
+ * originally did, cloning values() on every call.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(MatchCorpus.MATCHES)
+public class ClassificationBenchmark {
+
+  private int[] mGameModes;
+  private int[] mLobbyTypes;
+  private int[] mHumanPlayers;
+  private List<Player>[] mPlayers;
+
+  @Setup
+  @SuppressWarnings("unchecked")
+  public void setup() throws IOException {
+    final List<RawMatch> matches = MatchCorpus.matches();
+    mGameModes = new int[matches.size()];
+    mLobbyTypes = new int[matches.size()];
+    mHumanPlayers = new int[matches.size()];
+    mPlayers = new List[matches.size()];
+    for(int i = 0; i < matches.size(); i++) {
+      final RawMatch match = matches.get(i);
+      mGameModes[i] = match.gameMode;
+      mLobbyTypes[i] = match.lobbyType;
+      mHumanPlayers[i] = match.humanPlayers;
+      mPlayers[i] = match.players.getPlayers();
+    }
+  }
+
+  @Benchmark
+  public double classifier() {
+    double sum = 0.0;
+    for(int i = 0; i < mGameModes.length; i++) {
+      sum += RealMatchClassifier.classify(mGameModes[i], mLobbyTypes[i], mHumanPlayers[i],
+          mPlayers[i]);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public double enums() {
+    double sum = 0.0;
+    for(int i = 0; i < mGameModes.length; i++) {
+      if(!GameMode.seriousGame(GameMode.values()[mGameModes[i]])
+          || !LobbyType.seriousLobby(LobbyType.values()[mLobbyTypes[i] + 1])
+          || mHumanPlayers[i] != 10) {
+        continue;
+      }
+      boolean leavers = false;
+      boolean safeLeavers = false;
+      for(Player player : mPlayers[i]) {
+        final Integer status = player.getLeaverStatus();
+        LeaverStatus ls = (status == null ? LeaverStatus.BOT : LeaverStatus.values()[status]);
+        if(ls == LeaverStatus.SAFE_LEAVE) {
+          safeLeavers = true;
+        } else if(ls != LeaverStatus.STAYED) {
+          leavers = true;
+        }
+      }
+      sum += leavers ? 1.0 : (safeLeavers ? 2.0 : 3.0);
+    }
+    return sum;
+  }
+}
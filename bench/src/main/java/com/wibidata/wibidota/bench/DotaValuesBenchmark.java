@@ -0,0 +1,114 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota.bench;
+
+import com.wibidata.wibidota.DotaValues;
+import com.wibidata.wibidota.DotaValues.Barracks;
+import com.wibidata.wibidota.RawMatch;
+import com.wibidata.wibidota.avro.Player;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding the raw player_slot, tower and barracks values of the corpus with DotaValues.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(MatchCorpus.MATCHES)
+public class DotaValuesBenchmark {
+
+  private static final Barracks[] BARRACKS = Barracks.values();
+
+  // The raw player_slot of every player, 10 per match
+  private int[] mPlayerSlots;
+
+  // The raw tower and barracks statuses of each match, radiant then dire
+  private int[] mTowers;
+  private int[] mBarracks;
+
+  @Setup
+  public void setup() throws IOException {
+    final List<RawMatch> matches = MatchCorpus.matches();
+    mPlayerSlots = new int[matches.size() * 10];
+    mTowers = new int[matches.size() * 2];
+    mBarracks = new int[matches.size() * 2];
+    int p = 0;
+    for(int i = 0; i < matches.size(); i++) {
+      final RawMatch match = matches.get(i);
+      for(Player player : match.players.getPlayers()) {
+        mPlayerSlots[p++] = player.getPlayerSlot();
+      }
+      mTowers[2 * i] = match.radiantTowers;
+      mTowers[2 * i + 1] = match.direTowers;
+      mBarracks[2 * i] = match.radiantBarracks;
+      mBarracks[2 * i + 1] = match.direBarracks;
+    }
+  }
+
+  @Benchmark
+  public int playerSlot() {
+    int sum = 0;
+    for(int slot : mPlayerSlots) {
+      sum += DotaValues.playerSlot(slot);
+      if(DotaValues.radiantPlayer(slot)) {
+        sum++;
+      }
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public int towers() {
+    int sum = 0;
+    for(int status : mTowers) {
+      final DotaValues.Towers towers = new DotaValues.Towers(status);
+      sum += towers.getTowersStanding();
+      if(towers.midT3()) {
+        sum++;
+      }
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public int barracks() {
+    int sum = 0;
+    for(int status : mBarracks) {
+      sum += Barracks.numRaxesUp(status);
+      for(Barracks rax : BARRACKS) {
+        if(Barracks.raxUp(status, rax)) {
+          sum++;
+        }
+      }
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,106 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota.bench;
+
+import com.wibidata.wibidota.RawMatch;
+import com.wibidata.wibidota.StreamingMatchParser;
+import org.apache.hadoop.io.Text;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The checked in corpus of synthetic match JSON lines the benchmarks run on, in the format
+ * dota_slurp.py writes. Loaded once from the classpath and shared by every benchmark.
+ *
+ * Written by MatchGenerator with its default settings:
+ * MatchGenerator -Dwibidota.generator.matches=200 -Dwibidota.generator.start_seq_num=100000000
+ */
+public final class MatchCorpus {
+
+  /** Number of matches in the corpus, benchmarks report the time per match. */
+  public static final int MATCHES = 200;
+
+  private static final String CORPUS =
+      "com/wibidata/wibidota/bench/matches_100000000-100000200.gz";
+
+  private static List<String> lines = null;
+
+  // This utility class should not be instantiated
+  private MatchCorpus() {}
+
+  /**
+   * @return the lines of the corpus.
+   * @throws IOException if the corpus could not be read.
+   */
+  public static synchronized List<String> lines() throws IOException {
+    if(lines == null) {
+      final InputStream in = MatchCorpus.class.getClassLoader().getResourceAsStream(CORPUS);
+      if(in == null) {
+        throw new IOException(CORPUS + " not found on the classpath");
+      }
+      final BufferedReader reader =
+          new BufferedReader(new InputStreamReader(new GZIPInputStream(in), "UTF-8"));
+      final List<String> read = new ArrayList<String>(MATCHES);
+      try {
+        String line;
+        while((line = reader.readLine()) != null) {
+          read.add(line);
+        }
+      } finally {
+        reader.close();
+      }
+      if(read.size() != MATCHES) {
+        throw new IOException("Expected " + MATCHES + " matches in " + CORPUS + " but read " +
+            read.size());
+      }
+      lines = Collections.unmodifiableList(read);
+    }
+    return lines;
+  }
+
+  /**
+   * @return a new Text for each line of the corpus.
+   */
+  public static List<Text> texts() throws IOException {
+    final List<Text> texts = new ArrayList<Text>(MATCHES);
+    for(String line : lines()) {
+      texts.add(new Text(line));
+    }
+    return texts;
+  }
+
+  /**
+   * @return each line of the corpus parsed into a RawMatch.
+   */
+  public static List<RawMatch> matches() throws IOException {
+    final List<RawMatch> matches = new ArrayList<RawMatch>(MATCHES);
+    for(Text text : texts()) {
+      matches.add(StreamingMatchParser.parse(text));
+    }
+    return matches;
+  }
+}
@@ -0,0 +1,82 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota.bench;
+
+import com.google.gson.JsonParser;
+import com.wibidata.wibidota.DotaMatchBulkImporter;
+import org.apache.hadoop.io.Text;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing a line of raw match JSON, with the JsonObject based DotaMatchBulkImporter.extractPlayers
+ * and with the StreamingMatchParser.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@OperationsPerInvocation(MatchCorpus.MATCHES)
+public class ParseBenchmark {
+
+  private final JsonParser mParser = new JsonParser();
+
+  private List<String> mLines;
+
+  private List<Text> mTexts;
+
+  @Setup
+  public void setup() throws IOException {
+    mLines = MatchCorpus.lines();
+    mTexts = MatchCorpus.texts();
+  }
+
+  /** Only the players, as the importers did before RawMatch. */
+  @Benchmark
+  public void extractPlayers(Blackhole bh) {
+    for(String line : mLines) {
+      bh.consume(DotaMatchBulkImporter.extractPlayers(mParser.parse(line).getAsJsonObject()));
+    }
+  }
+
+  @Benchmark
+  public void legacyParser(Blackhole bh) throws IOException {
+    for(Text text : mTexts) {
+      bh.consume(DotaMatchBulkImporter.parseMatch(text, true));
+    }
+  }
+
+  @Benchmark
+  public void streamingParser(Blackhole bh) throws IOException {
+    for(Text text : mTexts) {
+      bh.consume(DotaMatchBulkImporter.parseMatch(text, false));
+    }
+  }
+}
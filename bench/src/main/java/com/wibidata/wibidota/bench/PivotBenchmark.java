@@ -0,0 +1,176 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota.bench;
+
+import com.wibidata.wibidota.MatchCellSink;
+import com.wibidata.wibidota.MatchCells;
+import com.wibidata.wibidota.RawMatch;
+import com.wibidata.wibidota.avro.Player;
+import com.wibidata.wibidota.avro.Players;
+import org.kiji.schema.EntityId;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pivoting parsed matches into the dota_players rows DotaPlayersBulkImporter writes, and
+ * building the dota_matches row. Cells go to a sink that only consumes them so the
+ * cost of encoding and writing them is left out. Scores are matches per second, the puts
+ * counter gives the puts per second.
+ *
+ * legacyPlayerRows is the pivot DotaPlayersBulkImporter did before MatchCells, copied here
+ * as the baseline for playerRows.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(MatchCorpus.MATCHES)
+public class PivotBenchmark {
+
+  /**
+   * Counts the cells put, JMH reports it as puts per second.
+   */
+  @State(Scope.Thread)
+  @AuxCounters
+  public static class Puts {
+
+    public long puts;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      puts = 0;
+    }
+  }
+
+  /**
+   * Sink handing every cell to a Blackhole. Row keys are not built, eids are always null.
+   */
+  static class BlackholeSink implements MatchCellSink {
+
+    private final Blackhole mBlackhole;
+    private final Puts mPuts;
+
+    BlackholeSink(Blackhole blackhole, Puts puts) {
+      mBlackhole = blackhole;
+      mPuts = puts;
+    }
+
+    public EntityId getEntityId(Object... components) {
+      mBlackhole.consume(components);
+      return null;
+    }
+
+    public <T> void put(EntityId eid, String family, String qualifier, long timestamp, T value) {
+      mBlackhole.consume(value);
+      mPuts.puts++;
+    }
+  }
+
+  private List<RawMatch> mMatches;
+
+  // A separate copy for the legacy pivot, which swaps the list in each match's Players
+  private List<RawMatch> mLegacyMatches;
+
+  @Setup
+  public void setup() throws IOException {
+    mMatches = MatchCorpus.matches();
+    mLegacyMatches = MatchCorpus.matches();
+  }
+
+  /**
+   * The pivot from DotaPlayersBulkImporter before it moved to MatchCells, with the values
+   * read from a RawMatch rather than the JsonObject.
+   */
+  static void legacyWritePlayerRows(RawMatch match, MatchCellSink sink) throws IOException {
+    final long startTime = match.startTime;
+    final Players players = match.players;
+
+    List<Player> allPlayers = new ArrayList<Player>();
+    List<Player> otherPlayers = new ArrayList<Player>();
+    allPlayers.addAll(players.getPlayers());
+    otherPlayers.addAll(players.getPlayers());
+    for(int i = 0; i < allPlayers.size(); i++) {
+      Player player = allPlayers.get(i);
+      Integer accountId = player.getAccountId();
+      if(accountId != null && accountId != -1) {
+        otherPlayers.remove(i);
+        players.setPlayers(otherPlayers);
+        EntityId eid = sink.getEntityId(accountId);
+        sink.put(eid, "data", "match_id", startTime, match.matchId);
+        sink.put(eid, "data", "dire_towers_status", startTime, match.direTowers);
+        sink.put(eid, "data", "radiant_towers_status", startTime, match.radiantTowers);
+        sink.put(eid, "data", "dire_barracks_status", startTime, match.direBarracks);
+        sink.put(eid, "data", "radiant_barracks_status", startTime, match.radiantBarracks);
+        sink.put(eid, "data", "cluster", startTime, match.cluster);
+        sink.put(eid, "data", "season", startTime, match.season);
+        sink.put(eid, "data", "match_seq_num", startTime, match.seqNum);
+        sink.put(eid, "data", "league_id", startTime, match.leagueId);
+        sink.put(eid, "data", "first_blood_time", startTime, match.firstBloodTime);
+        sink.put(eid, "data", "negative_votes", startTime, match.negativeVotes);
+        sink.put(eid, "data", "positive_votes", startTime, match.positiveVotes);
+        sink.put(eid, "data", "duration", startTime, match.duration);
+        sink.put(eid, "data", "radiant_win", startTime, match.radiantWin);
+        sink.put(eid, "data", "game_mode", startTime, match.gameMode);
+        sink.put(eid, "data", "lobby_type", startTime, match.lobbyType);
+        sink.put(eid, "data", "human_players", startTime, match.humanPlayers);
+        sink.put(eid, "data", "other_players", startTime, players);
+        sink.put(eid, "data", "player", startTime, player);
+        otherPlayers.add(i, player);
+      }
+    }
+  }
+
+  @Benchmark
+  public void legacyPlayerRows(Blackhole bh, Puts puts) throws IOException {
+    final MatchCellSink sink = new BlackholeSink(bh, puts);
+    for(RawMatch match : mLegacyMatches) {
+      legacyWritePlayerRows(match, sink);
+    }
+  }
+
+  @Benchmark
+  public void playerRows(Blackhole bh, Puts puts) throws IOException {
+    final MatchCellSink sink = new BlackholeSink(bh, puts);
+    for(RawMatch match : mMatches) {
+      MatchCells.writePlayerRows(match, sink);
+    }
+  }
+
+  @Benchmark
+  public void matchRow(Blackhole bh, Puts puts) throws IOException {
+    final MatchCellSink sink = new BlackholeSink(bh, puts);
+    for(RawMatch match : mMatches) {
+      MatchCells.writeMatchRow(match, sink, false);
+    }
+  }
+}
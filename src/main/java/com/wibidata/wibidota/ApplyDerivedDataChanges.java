@@ -0,0 +1,88 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota;
+
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.kiji.mapreduce.KijiMapper;
+import org.kiji.mapreduce.framework.HFileKeyValue;
+import org.kiji.mapreduce.framework.KijiConfKeys;
+import org.kiji.schema.EntityId;
+import org.kiji.schema.KijiURI;
+
+import java.io.IOException;
+
+/**
+ * Copies the changes recorded in a DerivedDataChangeLog to the match_derived_data family of the
+ * dota_players table, writing a cell for each player of each changed match. Only the logged
+ * matches are read, rather than the full scan of dota_matches DerivedDataToHFiles does.
+ *
+ * ex. kiji mapreduce --mapper=com.wibidata.wibidota.ApplyDerivedDataChanges \
+ *   --input="format=text file=hdfs://path/to/changelog/<run>" \
+ *   --output="format=hfile file=hdfs://path/to/hfiles table=kiji://.env/wibidota/dota_players"
+ */
+public class ApplyDerivedDataChanges
+    extends KijiMapper<LongWritable, Text, HFileKeyValue, NullWritable> {
+
+  private static final String FAMILY = "match_derived_data";
+
+  static enum Counters {
+    CHANGES,       // Number of change log lines read
+    CELLS_WRITTEN  // Number of match_derived_data cells written
+  }
+
+  private TableCellEncoder mEncoder = null;
+
+  @Override
+  protected void setup(Context context) throws IOException, InterruptedException {
+    mEncoder = new TableCellEncoder(KijiURI.newBuilder(
+        context.getConfiguration().get(KijiConfKeys.KIJI_OUTPUT_TABLE_URI)).build());
+  }
+
+  @Override
+  protected void map(LongWritable key, Text line, Context context)
+      throws IOException, InterruptedException {
+    final DerivedDataChangeLog.Change change = DerivedDataChangeLog.Change.parse(line.toString());
+    final byte[] encoded = mEncoder.encode(FAMILY, change.qualifier, change.value);
+    for(int accountId : change.accountIds) {
+      final EntityId eid = mEncoder.getEntityId(accountId);
+      context.write(mEncoder.keyValue(eid, FAMILY, change.qualifier, change.timestamp, encoded),
+          NullWritable.get());
+    }
+    context.getCounter(Counters.CHANGES).increment(1);
+    context.getCounter(Counters.CELLS_WRITTEN).increment(change.accountIds.length);
+  }
+
+  @Override
+  protected void cleanup(Context context) throws IOException, InterruptedException {
+    mEncoder.close();
+  }
+
+  @Override
+  public Class<?> getOutputKeyClass() {
+    return HFileKeyValue.class;
+  }
+
+  @Override
+  public Class<?> getOutputValueClass() {
+    return NullWritable.class;
+  }
+}
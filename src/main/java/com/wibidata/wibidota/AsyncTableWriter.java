@@ -0,0 +1,249 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.kiji.mapreduce.KijiContext;
+import org.kiji.schema.EntityId;
+import org.kiji.schema.KijiBufferedWriter;
+import org.kiji.schema.KijiRegion;
+import org.kiji.schema.KijiTable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes cells to a Kiji table from a background thread so the caller, such as a gatherer
+ * scanning another table, does not block on each flush. Cells are grouped into batches by the
+ * region of the table their row falls in, and full batches are queued for the writer thread
+ * which puts and flushes a batch at a time. The queue is bounded, once it is full put blocks
+ * until the writer catches up, so memory use stays bounded at about
+ * (regions + queued batches + 1) * batch size cells.
+ *
+ * Not thread safe, a single thread should call put and close. Instances are meant to be
+ * created per task.
+ */
+public class AsyncTableWriter implements Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(AsyncTableWriter.class);
+
+  static enum Counters {
+    FLUSHES,                // Number of batches written
+    FLUSHED_CELLS,          // Number of cells written, FLUSHED_CELLS / FLUSHES is the batch size
+    FLUSH_MILLIS,           // Time spent writing, FLUSH_MILLIS / FLUSHES is the flush latency
+    BACKPRESSURE_WAIT_MILLIS  // Time put spent waiting for room in the queue
+  }
+
+  // A single cell to be written
+  private static class Cell {
+    final EntityId eid;
+    final String family;
+    final String qualifier;
+    final long timestamp;
+    final Object value;
+
+    Cell(EntityId eid, String family, String qualifier, long timestamp, Object value) {
+      this.eid = eid;
+      this.family = family;
+      this.qualifier = qualifier;
+      this.timestamp = timestamp;
+      this.value = value;
+    }
+  }
+
+  // Marks the end of the queue, compared by identity
+  private static final List<Cell> END_OF_BATCHES = new ArrayList<Cell>();
+
+  private final KijiBufferedWriter mWriter;
+  private final int mBatchSize;
+  private final byte[][] mRegionStarts;
+  private final List<List<Cell>> mBatches;
+  private final BlockingQueue<List<Cell>> mQueue;
+  private final Thread mWriterThread;
+  private volatile Throwable mWriterError = null;
+
+  private final AtomicLong mFlushes = new AtomicLong();
+  private final AtomicLong mFlushedCells = new AtomicLong();
+  private final AtomicLong mFlushMillis = new AtomicLong();
+  private long mWaitMillis = 0;
+
+  // Values of the statistics last passed to the counters
+  private final long[] mReported = new long[Counters.values().length];
+
+  /**
+   * @param table, the table to write to, it must stay open until this writer is closed.
+   * @param batchSize, the number of cells to write per a flush.
+   * @param maxQueuedBatches, the number of full batches that can wait for the writer thread.
+   * @throws IOException if the writer could not be opened.
+   */
+  public AsyncTableWriter(KijiTable table, int batchSize, int maxQueuedBatches)
+      throws IOException {
+    mBatchSize = batchSize;
+    mWriter = table.getWriterFactory().openBufferedWriter();
+
+    final List<KijiRegion> regions = new ArrayList<KijiRegion>(table.getRegions());
+    Collections.sort(regions, new Comparator<KijiRegion>() {
+      public int compare(KijiRegion a, KijiRegion b) {
+        return Bytes.compareTo(a.getStartKey(), b.getStartKey());
+      }
+    });
+    mRegionStarts = new byte[regions.size()][];
+    mBatches = new ArrayList<List<Cell>>(regions.size());
+    for(int i = 0; i < regions.size(); i++) {
+      mRegionStarts[i] = regions.get(i).getStartKey();
+      mBatches.add(new ArrayList<Cell>(batchSize));
+    }
+    if(mBatches.isEmpty()) {
+      mBatches.add(new ArrayList<Cell>(batchSize));
+    }
+
+    mQueue = new ArrayBlockingQueue<List<Cell>>(maxQueuedBatches);
+    mWriterThread = new Thread(new Runnable() {
+      public void run() {
+        writeBatches();
+      }
+    }, "AsyncTableWriter");
+    mWriterThread.setDaemon(true);
+    mWriterThread.start();
+  }
+
+  // Body of the writer thread
+  private void writeBatches() {
+    try {
+      List<Cell> batch;
+      while((batch = mQueue.take()) != END_OF_BATCHES) {
+        final long start = System.currentTimeMillis();
+        for(Cell cell : batch) {
+          mWriter.put(cell.eid, cell.family, cell.qualifier, cell.timestamp, cell.value);
+        }
+        mWriter.flush();
+        mFlushMillis.addAndGet(System.currentTimeMillis() - start);
+        mFlushes.incrementAndGet();
+        mFlushedCells.addAndGet(batch.size());
+      }
+    } catch (Throwable t) {
+      LOG.error("Writer thread failed", t);
+      mWriterError = t;
+      // Unblock the caller if it is waiting on a full queue
+      mQueue.clear();
+    }
+  }
+
+  private void checkWriter() throws IOException {
+    if(mWriterError != null) {
+      throw new IOException("Writer thread failed", mWriterError);
+    }
+  }
+
+  // Index of the region holding rowKey, the last region whose start key is <= rowKey
+  private int regionOf(byte[] rowKey) {
+    int low = 0;
+    int high = mRegionStarts.length - 1;
+    while(low < high) {
+      final int mid = (low + high + 1) >>> 1;
+      if(Bytes.compareTo(mRegionStarts[mid], rowKey) <= 0) {
+        low = mid;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return low;
+  }
+
+  private void enqueue(List<Cell> batch) throws IOException {
+    final long start = System.currentTimeMillis();
+    try {
+      while(!mQueue.offer(batch, 1, TimeUnit.SECONDS)) {
+        checkWriter();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted waiting for the writer thread", e);
+    }
+    mWaitMillis += System.currentTimeMillis() - start;
+  }
+
+  /**
+   * Queues a cell to be written.
+   *
+   * @throws IOException if the writer thread has failed or the caller was interrupted.
+   */
+  public <T> void put(EntityId eid, String family, String qualifier, long timestamp, T value)
+      throws IOException {
+    checkWriter();
+    final int region = (mRegionStarts.length == 0 ? 0 : regionOf(eid.getHBaseRowKey()));
+    final List<Cell> batch = mBatches.get(region);
+    batch.add(new Cell(eid, family, qualifier, timestamp, value));
+    if(batch.size() >= mBatchSize) {
+      mBatches.set(region, new ArrayList<Cell>(mBatchSize));
+      enqueue(batch);
+    }
+  }
+
+  /**
+   * Adds the change in the write statistics since the last call to the counters of context.
+   */
+  public void reportCounters(KijiContext context) {
+    final long[] current = new long[] {
+        mFlushes.get(), mFlushedCells.get(), mFlushMillis.get(), mWaitMillis
+    };
+    for(Counters counter : Counters.values()) {
+      final int i = counter.ordinal();
+      if(current[i] != mReported[i]) {
+        context.incrementCounter(counter, current[i] - mReported[i]);
+        mReported[i] = current[i];
+      }
+    }
+  }
+
+  /**
+   * Queues the partially filled batches, waits for the writer thread to write everything and
+   * closes the underlying writer.
+   *
+   * @throws IOException if any of the writes failed.
+   */
+  public void close() throws IOException {
+    try {
+      for(List<Cell> batch : mBatches) {
+        if(!batch.isEmpty()) {
+          enqueue(batch);
+        }
+      }
+      enqueue(END_OF_BATCHES);
+      mWriterThread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted waiting for the writer thread", e);
+    } finally {
+      mWriter.close();
+    }
+    checkWriter();
+  }
+}
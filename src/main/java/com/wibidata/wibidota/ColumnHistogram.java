@@ -0,0 +1,253 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota;
+
+import com.wibidata.wibidota.avro.MatchSummary;
+import org.apache.avro.Schema;
+import org.apache.hadoop.conf.Configuration;
+import org.kiji.schema.KijiCell;
+import org.kiji.schema.KijiDataRequestBuilder;
+import org.kiji.schema.KijiRowData;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Builds the histograms of one data: column of dota_matches, optionally split into buckets by
+ * the time the match started, the timestamp of its cells, for DotaValueHistogram. Keeps a
+ * HistogramWritable per bucket, found through an IntCountsMap so adding a row takes no
+ * allocation once its bucket exists. Int columns (and booleans, as 0 and 1) are counted exactly,
+ * continuous columns like duration are sketched.
+ *
+ * The columns are set with wibidota.histogram.counts and wibidota.histogram.sketches, comma
+ * separated qualifiers of the data family, and the bucket length in milliseconds with
+ * wibidota.histogram.interval (0 for no buckets). Columns held in match_summary are read from
+ * it, or from their legacy column if the row has no match_summary unless
+ * wibidota.matches.legacy_fallback is false, see MatchSummaries. Rows without the column are
+ * counted as nulls, but only when there are no buckets since they have no time to bucket by.
+ */
+public class ColumnHistogram {
+
+  /** Configuration key for the data: columns to count each value of. */
+  public static final String COUNTS_KEY = "wibidota.histogram.counts";
+
+  /** Configuration key for the data: columns to sketch. */
+  public static final String SKETCHES_KEY = "wibidota.histogram.sketches";
+
+  /** Configuration key for the length of the start time buckets in milliseconds. */
+  public static final String INTERVAL_KEY = "wibidota.histogram.interval";
+
+  /** Configuration key for the relative accuracy of the sketches. */
+  public static final String ACCURACY_KEY = "wibidota.histogram.accuracy";
+
+  private static final String[] DEFAULT_COUNTS = new String[] {"game_mode"};
+
+  private static final String[] DEFAULT_SKETCHES = new String[] {"duration", "first_blood_time"};
+
+  // Cells are written at the match's start time in milliseconds, the bucket numbers of
+  // shorter buckets would not fit an int
+  private static final long MIN_INTERVAL = 1000L;
+
+  /**
+   * Receives each bucket's histogram when they are emitted.
+   */
+  public interface Emitter {
+    public void emit(String key, HistogramWritable histogram) throws IOException;
+  }
+
+  private final String mQualifier;
+  private final boolean mSketched;
+  private final long mInterval;
+  private final double mAccuracy;
+
+  // Position of the column in MatchSummary, -1 if it is not one of its fields
+  private final int mSummaryField;
+
+  // Index of each bucket's histogram plus 1
+  private final IntCountsMap mSlots = new IntCountsMap(1);
+  private final List<HistogramWritable> mHistograms = new ArrayList<HistogramWritable>();
+  private int[] mBuckets = new int[16];
+
+  /**
+   * @param qualifier, the column of the data family.
+   * @param sketched, true to sketch the column, false to count its values.
+   * @param interval, the length of the start time buckets in milliseconds, 0 for none.
+   * @param accuracy, the relative accuracy of a sketch.
+   */
+  public ColumnHistogram(String qualifier, boolean sketched, long interval, double accuracy) {
+    if(interval != 0 && interval < MIN_INTERVAL) {
+      throw new IllegalArgumentException(INTERVAL_KEY + " must be 0 or at least " +
+          MIN_INTERVAL + "ms, got " + interval);
+    }
+    mQualifier = qualifier;
+    mSketched = sketched;
+    mInterval = interval;
+    mAccuracy = accuracy;
+    final Schema.Field field = MatchSummary.SCHEMA$.getField(qualifier);
+    mSummaryField = field == null ? -1 : field.pos();
+  }
+
+  /**
+   * @return the histograms configured in conf, counts then sketches.
+   */
+  public static ColumnHistogram[] fromConf(Configuration conf) {
+    final String[] counts = conf.getTrimmedStrings(COUNTS_KEY, DEFAULT_COUNTS);
+    final String[] sketches = conf.getTrimmedStrings(SKETCHES_KEY, DEFAULT_SKETCHES);
+    final long interval = conf.getLong(INTERVAL_KEY, 0L);
+    final double accuracy = conf.getFloat(ACCURACY_KEY, (float) QuantileSketch.DEFAULT_ACCURACY);
+    final ColumnHistogram[] histograms = new ColumnHistogram[counts.length + sketches.length];
+    for(int i = 0; i < counts.length; i++) {
+      histograms[i] = new ColumnHistogram(counts[i], false, interval, accuracy);
+    }
+    for(int i = 0; i < sketches.length; i++) {
+      histograms[counts.length + i] = new ColumnHistogram(sketches[i], true, interval, accuracy);
+    }
+    return histograms;
+  }
+
+  public String getQualifier() {
+    return mQualifier;
+  }
+
+  /**
+   * @return true if the histogram is split by start time.
+   */
+  public boolean isBucketed() {
+    return mInterval > 0;
+  }
+
+  /**
+   * Adds the columns needed to read this histogram's column to a data request.
+   *
+   * @param def, the columns definition to add to.
+   * @param added, the qualifiers of the data family already added to def, updated.
+   * @param legacyFallback, whether to read the legacy column of rows without a match_summary.
+   */
+  public void addColumns(KijiDataRequestBuilder.ColumnsDef def, Set<String> added,
+                         boolean legacyFallback) {
+    if(mSummaryField < 0 || legacyFallback) {
+      if(added.add(mQualifier)) {
+        def.add("data", mQualifier);
+      }
+    }
+    if(mSummaryField >= 0 && added.add("match_summary")) {
+      def.add(DotaValues.Columns.MATCH_SUMMARY.columnName());
+    }
+  }
+
+  // The cell holding the column's value in row, null if there is none
+  private KijiCell<?> cell(KijiRowData row) throws IOException {
+    if(mSummaryField >= 0 && row.containsColumn("data", "match_summary")) {
+      return row.getMostRecentCell("data", "match_summary");
+    }
+    if(!row.containsColumn("data", mQualifier)) {
+      return null;
+    }
+    return row.getMostRecentCell("data", mQualifier);
+  }
+
+  private HistogramWritable histogram(int bucket) {
+    final int slot = (int) mSlots.get(bucket, 0) - 1;
+    if(slot >= 0) {
+      return mHistograms.get(slot);
+    }
+    final HistogramWritable histogram = new HistogramWritable();
+    histogram.reset(mSketched, mAccuracy);
+    if(mHistograms.size() == mBuckets.length) {
+      final int[] buckets = new int[mBuckets.length * 2];
+      System.arraycopy(mBuckets, 0, buckets, 0, mBuckets.length);
+      mBuckets = buckets;
+    }
+    mBuckets[mHistograms.size()] = bucket;
+    mHistograms.add(histogram);
+    mSlots.add(bucket, 0, mHistograms.size());
+    return histogram;
+  }
+
+  /**
+   * Adds the column's value in row, a row of dota_matches.
+   */
+  public void add(KijiRowData row) throws IOException {
+    final KijiCell<?> cell = cell(row);
+    int bucket = 0;
+    if(mInterval > 0) {
+      if(cell == null) {
+        return;
+      }
+      bucket = (int) (cell.getTimestamp() / mInterval);
+    }
+    final HistogramWritable histogram = histogram(bucket);
+    Object value = cell == null ? null : cell.getData();
+    if(value instanceof MatchSummary) {
+      value = ((MatchSummary) value).get(mSummaryField);
+    }
+    final Number number;
+    if(value == null) {
+      histogram.addNull();
+      return;
+    } else if(value instanceof Boolean) {
+      number = (Boolean) value ? 1 : 0;
+    } else if(value instanceof Number) {
+      number = (Number) value;
+    } else {
+      throw new IllegalArgumentException("data:" + mQualifier + " is not a numeric column");
+    }
+    if(mSketched) {
+      histogram.add(number.doubleValue());
+    } else {
+      final long whole = number.longValue();
+      if(whole != (int) whole) {
+        throw new IllegalArgumentException("data:" + mQualifier + " value " + whole +
+            " does not fit an int, sketch the column instead");
+      }
+      histogram.add((int) whole);
+    }
+  }
+
+  /**
+   * @return roughly the number of bytes the histograms take up.
+   */
+  public long estimatedBytes() {
+    long bytes = mSlots.estimatedBytes();
+    for(HistogramWritable histogram : mHistograms) {
+      bytes += histogram.estimatedBytes();
+    }
+    return bytes;
+  }
+
+  /**
+   * Passes the histogram of each bucket, keyed by data:<column> [<start>-<end>), to emitter
+   * then clears them.
+   */
+  public void emit(Emitter emitter) throws IOException {
+    for(int i = 0; i < mHistograms.size(); i++) {
+      final StringBuilder key = new StringBuilder("data:").append(mQualifier);
+      if(mInterval > 0) {
+        final long start = mBuckets[i] * mInterval;
+        key.append(" [").append(start).append('-').append(start + mInterval).append(')');
+      }
+      emitter.emit(key.toString(), mHistograms.get(i));
+    }
+    mSlots.clear();
+    mHistograms.clear();
+  }
+}
@@ -0,0 +1,212 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota;
+
+import com.wibidata.wibidota.avro.AbilityUpgrade;
+import com.wibidata.wibidota.avro.AdditionalUnit;
+import com.wibidata.wibidota.avro.CompactPlayers;
+import com.wibidata.wibidota.avro.Player;
+import com.wibidata.wibidota.avro.Players;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Converts between Players and the column oriented CompactPlayers record. CompactPlayers
+ * stores the ten players of a match in parallel arrays, item ids in fixed width two byte
+ * slots, and ability upgrade times as deltas, which encodes smaller and decodes with far
+ * fewer allocations than an array of Player records.
+ */
+public final class CompactPlayersConverter {
+
+  private static final int ITEMS = 6;
+
+  // Largest item id that fits in an item slot
+  private static final int MAX_ITEM_ID = 0xFFFF;
+
+  // This utility class should not be instantiated
+  private CompactPlayersConverter() {}
+
+  private static void putItems(ByteBuffer buffer, List<Integer> itemIds) {
+    if(itemIds.size() != ITEMS) {
+      throw new IllegalArgumentException("Expected " + ITEMS + " items, got " + itemIds.size());
+    }
+    for(Integer itemId : itemIds) {
+      if(itemId < 0 || itemId > MAX_ITEM_ID) {
+        throw new IllegalArgumentException("Item id out of range: " + itemId);
+      }
+      buffer.putShort((short) itemId.intValue());
+    }
+  }
+
+  private static List<Integer> getItems(ByteBuffer buffer, int player) {
+    final List<Integer> itemIds = new ArrayList<Integer>(ITEMS);
+    final int offset = buffer.position() + player * ITEMS * 2;
+    for(int i = 0; i < ITEMS; i++) {
+      itemIds.add(buffer.getShort(offset + i * 2) & MAX_ITEM_ID);
+    }
+    return itemIds;
+  }
+
+  /**
+   * @param players, the players to convert.
+   * @return the CompactPlayers holding the same stats.
+   */
+  public static CompactPlayers toCompact(Players players) {
+    final List<Player> list = players.getPlayers();
+    final int n = list.size();
+    final List<Integer> accountIds = new ArrayList<Integer>(n);
+    final List<Integer> playerSlots = new ArrayList<Integer>(n);
+    final List<Integer> heroIds = new ArrayList<Integer>(n);
+    final List<Integer> levels = new ArrayList<Integer>(n);
+    final List<Integer> kills = new ArrayList<Integer>(n);
+    final List<Integer> deaths = new ArrayList<Integer>(n);
+    final List<Integer> assists = new ArrayList<Integer>(n);
+    final List<Integer> lastHits = new ArrayList<Integer>(n);
+    final List<Integer> denies = new ArrayList<Integer>(n);
+    final List<Integer> gold = new ArrayList<Integer>(n);
+    final List<Integer> goldSpent = new ArrayList<Integer>(n);
+    final List<Integer> heroDamage = new ArrayList<Integer>(n);
+    final List<Integer> heroHealing = new ArrayList<Integer>(n);
+    final List<Integer> towerDamage = new ArrayList<Integer>(n);
+    final List<Integer> leaverStatuses = new ArrayList<Integer>(n);
+    final List<Double> goldPerMinute = new ArrayList<Double>(n);
+    final List<Double> expPerMinute = new ArrayList<Double>(n);
+    final ByteBuffer items = ByteBuffer.allocate(n * ITEMS * 2);
+    final List<Integer> upgradeCounts = new ArrayList<Integer>(n);
+    final List<Integer> abilityIds = new ArrayList<Integer>();
+    final List<Integer> abilityLevels = new ArrayList<Integer>();
+    final List<Integer> abilityTimeDeltas = new ArrayList<Integer>();
+    final List<AdditionalUnit> additionalUnits = new ArrayList<AdditionalUnit>(n);
+
+    for(Player player : list) {
+      accountIds.add(player.getAccountId());
+      playerSlots.add(player.getPlayerSlot());
+      heroIds.add(player.getHeroId());
+      levels.add(player.getLevel());
+      kills.add(player.getKills());
+      deaths.add(player.getDeaths());
+      assists.add(player.getAssists());
+      lastHits.add(player.getLastHits());
+      denies.add(player.getDenies());
+      gold.add(player.getGold());
+      goldSpent.add(player.getGoldSpent());
+      heroDamage.add(player.getHeroDamage());
+      heroHealing.add(player.getHeroHealing());
+      towerDamage.add(player.getTowerDamage());
+      leaverStatuses.add(player.getLeaverStatus());
+      goldPerMinute.add(player.getGoldPerMinute());
+      expPerMinute.add(player.getExpPerMinute());
+      putItems(items, player.getItemIds());
+      additionalUnits.add(player.getAdditionalUnits());
+
+      final List<AbilityUpgrade> upgrades = player.getAbilityUpgrades();
+      upgradeCounts.add(upgrades.size());
+      int prevTime = 0;
+      for(AbilityUpgrade upgrade : upgrades) {
+        abilityIds.add(upgrade.getAbilityId());
+        abilityLevels.add(upgrade.getLevel());
+        abilityTimeDeltas.add(upgrade.getTime() - prevTime);
+        prevTime = upgrade.getTime();
+      }
+    }
+    items.flip();
+
+    return CompactPlayers.newBuilder()
+        .setAccountIds(accountIds)
+        .setPlayerSlots(playerSlots)
+        .setHeroIds(heroIds)
+        .setLevels(levels)
+        .setKills(kills)
+        .setDeaths(deaths)
+        .setAssists(assists)
+        .setLastHits(lastHits)
+        .setDenies(denies)
+        .setGold(gold)
+        .setGoldSpent(goldSpent)
+        .setHeroDamage(heroDamage)
+        .setHeroHealing(heroHealing)
+        .setTowerDamage(towerDamage)
+        .setLeaverStatuses(leaverStatuses)
+        .setGoldPerMinute(goldPerMinute)
+        .setExpPerMinute(expPerMinute)
+        .setItemIds(items)
+        .setAbilityUpgradeCounts(upgradeCounts)
+        .setAbilityIds(abilityIds)
+        .setAbilityLevels(abilityLevels)
+        .setAbilityTimeDeltas(abilityTimeDeltas)
+        .setAdditionalUnits(additionalUnits)
+        .build();
+  }
+
+  /**
+   * @param compact, the CompactPlayers to convert.
+   * @return the Players holding the same stats.
+   */
+  public static Players fromCompact(CompactPlayers compact) {
+    final int n = compact.getHeroIds().size();
+    final List<Player> players = new ArrayList<Player>(n);
+    final ByteBuffer items = compact.getItemIds();
+    if(items.remaining() != n * ITEMS * 2) {
+      throw new IllegalArgumentException("Expected " + n * ITEMS * 2 + " bytes of items, got " +
+          items.remaining());
+    }
+    final List<Integer> upgradeCounts = compact.getAbilityUpgradeCounts();
+    final List<Integer> abilityIds = compact.getAbilityIds();
+    final List<Integer> abilityLevels = compact.getAbilityLevels();
+    final List<Integer> abilityTimeDeltas = compact.getAbilityTimeDeltas();
+
+    int upgrade = 0;
+    for(int i = 0; i < n; i++) {
+      final int count = upgradeCounts.get(i);
+      final List<AbilityUpgrade> upgrades = new ArrayList<AbilityUpgrade>(count);
+      int time = 0;
+      for(int end = upgrade + count; upgrade < end; upgrade++) {
+        time += abilityTimeDeltas.get(upgrade);
+        upgrades.add(new AbilityUpgrade(abilityLevels.get(upgrade), abilityIds.get(upgrade), time));
+      }
+
+      players.add(Player.newBuilder()
+          .setAccountId(compact.getAccountIds().get(i))
+          .setPlayerSlot(compact.getPlayerSlots().get(i))
+          .setHeroId(compact.getHeroIds().get(i))
+          .setLevel(compact.getLevels().get(i))
+          .setKills(compact.getKills().get(i))
+          .setDeaths(compact.getDeaths().get(i))
+          .setAssists(compact.getAssists().get(i))
+          .setLastHits(compact.getLastHits().get(i))
+          .setDenies(compact.getDenies().get(i))
+          .setGold(compact.getGold().get(i))
+          .setGoldSpent(compact.getGoldSpent().get(i))
+          .setHeroDamage(compact.getHeroDamage().get(i))
+          .setHeroHealing(compact.getHeroHealing().get(i))
+          .setTowerDamage(compact.getTowerDamage().get(i))
+          .setLeaverStatus(compact.getLeaverStatuses().get(i))
+          .setGoldPerMinute(compact.getGoldPerMinute().get(i))
+          .setExpPerMinute(compact.getExpPerMinute().get(i))
+          .setItemIds(getItems(items, i))
+          .setAbilityUpgrades(upgrades)
+          .setAdditionalUnits(compact.getAdditionalUnits().get(i))
+          .build());
+    }
+    return new Players(players);
+  }
+}
@@ -0,0 +1,151 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota;
+
+import com.wibidata.wibidota.avro.CompactPlayers;
+import com.wibidata.wibidota.avro.Players;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.hadoop.io.Text;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Compares the Avro binary encodings of Players and CompactPlayers on a local sample of the
+ * raw match JSON (plain or gzipped). Prints the average bytes per match of each encoding and
+ * the time taken to decode every match, both for decoding CompactPlayers on its own and for
+ * decoding and converting it back into Players.
+ *
+ * ex. java -cp ... com.wibidata.wibidota.ComparePlayersEncodings matches_0-100000.gz [rounds]
+ */
+public class ComparePlayersEncodings {
+
+  private static final int DEFAULT_ROUNDS = 5;
+
+  private static List<Players> readSample(String path) throws IOException {
+    InputStream in = new FileInputStream(path);
+    if(path.endsWith(".gz")) {
+      in = new GZIPInputStream(in);
+    }
+    final BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+    final List<Players> sample = new ArrayList<Players>();
+    try {
+      String line;
+      while((line = reader.readLine()) != null) {
+        sample.add(StreamingMatchParser.parse(new Text(line)).players);
+      }
+    } finally {
+      reader.close();
+    }
+    return sample;
+  }
+
+  private static <T> List<byte[]> encodeAll(List<T> records, SpecificDatumWriter<T> writer)
+      throws IOException {
+    final List<byte[]> encoded = new ArrayList<byte[]>(records.size());
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BinaryEncoder encoder = null;
+    for(T record : records) {
+      out.reset();
+      encoder = EncoderFactory.get().binaryEncoder(out, encoder);
+      writer.write(record, encoder);
+      encoder.flush();
+      encoded.add(out.toByteArray());
+    }
+    return encoded;
+  }
+
+  private static long totalBytes(List<byte[]> encoded) {
+    long total = 0;
+    for(byte[] bytes : encoded) {
+      total += bytes.length;
+    }
+    return total;
+  }
+
+  // Returns the nanoseconds taken to decode every record, converting CompactPlayers to
+  // Players if toPlayers is set
+  private static <T> long timeDecode(List<byte[]> encoded, SpecificDatumReader<T> reader,
+                                     boolean toPlayers) throws IOException {
+    BinaryDecoder decoder = null;
+    final long start = System.nanoTime();
+    for(byte[] bytes : encoded) {
+      decoder = DecoderFactory.get().binaryDecoder(bytes, decoder);
+      final T record = reader.read(null, decoder);
+      if(toPlayers) {
+        CompactPlayersConverter.fromCompact((CompactPlayers) record);
+      }
+    }
+    return System.nanoTime() - start;
+  }
+
+  public static void main(String[] args) throws IOException {
+    if(args.length < 1) {
+      System.err.println("Usage: ComparePlayersEncodings <sample file> [rounds]");
+      System.exit(1);
+    }
+    final int rounds = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ROUNDS;
+
+    final List<Players> sample = readSample(args[0]);
+    final List<CompactPlayers> compactSample = new ArrayList<CompactPlayers>(sample.size());
+    for(Players players : sample) {
+      final CompactPlayers compact = CompactPlayersConverter.toCompact(players);
+      if(!players.equals(CompactPlayersConverter.fromCompact(compact))) {
+        throw new IllegalStateException("Round trip through CompactPlayers changed " + players);
+      }
+      compactSample.add(compact);
+    }
+
+    final List<byte[]> encoded =
+        encodeAll(sample, new SpecificDatumWriter<Players>(Players.class));
+    final List<byte[]> compactEncoded =
+        encodeAll(compactSample, new SpecificDatumWriter<CompactPlayers>(CompactPlayers.class));
+    final int n = sample.size();
+    System.out.println("Matches: " + n);
+    System.out.println("Players bytes per match: " + (double) totalBytes(encoded) / n);
+    System.out.println("CompactPlayers bytes per match: " + (double) totalBytes(compactEncoded) / n);
+
+    final SpecificDatumReader<Players> reader = new SpecificDatumReader<Players>(Players.class);
+    final SpecificDatumReader<CompactPlayers> compactReader =
+        new SpecificDatumReader<CompactPlayers>(CompactPlayers.class);
+    // The first round warms up the JIT and is not reported
+    for(int round = 0; round <= rounds; round++) {
+      final long players = timeDecode(encoded, reader, false);
+      final long compact = timeDecode(compactEncoded, compactReader, false);
+      final long converted = timeDecode(compactEncoded, compactReader, true);
+      if(round > 0) {
+        System.out.println("Round " + round + " ns per match, Players: " + players / n +
+            " CompactPlayers: " + compact / n + " CompactPlayers to Players: " + converted / n);
+      }
+    }
+  }
+}
@@ -0,0 +1,85 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A Writable of an array of long counts, each written as a variable length long so small
+ * counts take a byte or two. Instances can be reused with set.
+ */
+public class CountsWritable implements Writable {
+
+  private long[] mCounts;
+
+  public CountsWritable() {
+    mCounts = new long[0];
+  }
+
+  public CountsWritable(long... counts) {
+    mCounts = counts;
+  }
+
+  /**
+   * Sets the counts to a copy of counts.
+   */
+  public void set(long[] counts) {
+    if(mCounts.length != counts.length) {
+      mCounts = new long[counts.length];
+    }
+    System.arraycopy(counts, 0, mCounts, 0, counts.length);
+  }
+
+  public long get(int idx) {
+    return mCounts[idx];
+  }
+
+  public int size() {
+    return mCounts.length;
+  }
+
+  public void write(DataOutput out) throws IOException {
+    WritableUtils.writeVInt(out, mCounts.length);
+    for(long count : mCounts) {
+      WritableUtils.writeVLong(out, count);
+    }
+  }
+
+  public void readFields(DataInput in) throws IOException {
+    final int length = WritableUtils.readVInt(in);
+    if(mCounts.length != length) {
+      mCounts = new long[length];
+    }
+    for(int i = 0; i < length; i++) {
+      mCounts[i] = WritableUtils.readVLong(in);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return Arrays.toString(mCounts);
+  }
+}
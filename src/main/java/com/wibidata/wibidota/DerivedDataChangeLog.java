@@ -0,0 +1,160 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota;
+
+import com.wibidata.wibidota.avro.Player;
+import com.wibidata.wibidota.avro.Players;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * A log of the derived_data cells a producer wrote to the dota_matches table, so the same
+ * values can be copied to the match_derived_data of the affected players with
+ * ApplyDerivedDataChanges instead of porting the whole table. Logging is enabled by setting
+ * wibidota.changelog.dir, each task then writes its changes to
+ * <dir>/<run>/<task attempt id>, where run defaults to the job id and can be set with
+ * wibidota.changelog.run. Each line has the form:
+ *
+ * <match_id>  <timestamp of the match>  <qualifier>  <value>  <account_id>,<account_id>,...
+ *
+ * listing the non-anonymous players of the match. Failed or speculative task attempts leave
+ * their logs behind as well, applying a change more than once is harmless since it always
+ * writes the same cell.
+ */
+public class DerivedDataChangeLog implements Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(DerivedDataChangeLog.class);
+
+  /** Configuration key for the directory to write change logs to, unset disables logging. */
+  public static final String DIR_KEY = "wibidota.changelog.dir";
+
+  /** Configuration key for the name of this run's subdirectory, defaults to the job id. */
+  public static final String RUN_KEY = "wibidota.changelog.run";
+
+  /**
+   * A single line of a change log.
+   */
+  public static class Change {
+    public final long matchId;
+    public final long timestamp;
+    public final String qualifier;
+    public final double value;
+    public final int[] accountIds;
+
+    public Change(long matchId, long timestamp, String qualifier, double value, int[] accountIds) {
+      this.matchId = matchId;
+      this.timestamp = timestamp;
+      this.qualifier = qualifier;
+      this.value = value;
+      this.accountIds = accountIds;
+    }
+
+    /**
+     * Parses a line of a change log.
+     *
+     * @throws IllegalArgumentException if the line is malformed.
+     */
+    public static Change parse(String line) {
+      final String[] parts = line.split("\t", -1);
+      if(parts.length != 5) {
+        throw new IllegalArgumentException("Malformed change log line: " + line);
+      }
+      final String[] ids = parts[4].split(",");
+      final int[] accountIds = new int[parts[4].isEmpty() ? 0 : ids.length];
+      for(int i = 0; i < accountIds.length; i++) {
+        accountIds[i] = Integer.parseInt(ids[i]);
+      }
+      return new Change(Long.parseLong(parts[0]), Long.parseLong(parts[1]), parts[2],
+          Double.parseDouble(parts[3]), accountIds);
+    }
+  }
+
+  private final Configuration mConf;
+  private final String mDir;
+  private Writer mWriter = null;
+
+  public DerivedDataChangeLog(Configuration conf) {
+    mConf = conf;
+    mDir = conf.get(DIR_KEY);
+  }
+
+  /**
+   * @return true if wibidota.changelog.dir is set and changes are being logged.
+   */
+  public boolean isEnabled() {
+    return mDir != null;
+  }
+
+  private Writer getWriter() throws IOException {
+    if(mWriter == null) {
+      final String run = mConf.get(RUN_KEY, TaskFiles.jobId(mConf));
+      final Path path = TaskFiles.taskFile(mConf, new Path(mDir, run));
+      mWriter = new OutputStreamWriter(path.getFileSystem(mConf).create(path, true), "UTF-8");
+      LOG.info("Logging derived_data changes to " + path);
+    }
+    return mWriter;
+  }
+
+  /**
+   * Logs a derived_data cell written to a match's row, does nothing if logging is not enabled.
+   *
+   * @param matchId, the match_id of the row.
+   * @param timestamp, the time the match started, the timestamp of its player_data.
+   * @param qualifier, the derived_data qualifier written.
+   * @param value, the value written.
+   * @param players, the players of the match.
+   * @throws IOException if the change could not be written.
+   */
+  public void record(long matchId, long timestamp, String qualifier, double value,
+                     Players players) throws IOException {
+    if(!isEnabled()) {
+      return;
+    }
+    final StringBuilder line = new StringBuilder();
+    line.append(matchId).append('\t').append(timestamp).append('\t').append(qualifier)
+        .append('\t').append(value).append('\t');
+    boolean first = true;
+    for(Player player : players.getPlayers()) {
+      if(DotaValues.nonAnonPlayer(player.getAccountId())) {
+        if(!first) {
+          line.append(',');
+        }
+        line.append(player.getAccountId());
+        first = false;
+      }
+    }
+    line.append('\n');
+    getWriter().write(line.toString());
+  }
+
+  public void close() throws IOException {
+    if(mWriter != null) {
+      mWriter.close();
+      mWriter = null;
+    }
+  }
+}
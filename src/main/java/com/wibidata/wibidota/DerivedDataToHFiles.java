@@ -28,10 +28,6 @@ import org.kiji.mapreduce.framework.KijiConfKeys;
 import org.kiji.mapreduce.gather.GathererContext;
 import org.kiji.mapreduce.gather.KijiGatherer;
 import org.kiji.schema.*;
-import org.kiji.schema.hbase.HBaseColumnName;
-import org.kiji.schema.impl.DefaultKijiCellEncoderFactory;
-import org.kiji.schema.layout.CellSpec;
-import org.kiji.schema.layout.impl.ColumnNameTranslator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -44,15 +40,25 @@ import java.util.NavigableMap;
  * Gatherer that can transfer data from the derived_data section of the
  * dota_matches table to the match_derived_data of the dota_players table
  * using hfiles.
+ *
+ * Set wibidota.port.columns to a comma separated list of qualifiers to only port those
+ * columns, only they are then read from the table. Each value is encoded once per a match
+ * and reused for every player. Run with an hfile output without nsplits so there is one
+ * reducer per region of dota_players and the sorting and HFile writing are spread evenly
+ * over the regions.
  */
 public class DerivedDataToHFiles extends KijiGatherer<HFileKeyValue, NullWritable> {
 
   private static final Logger LOG = LoggerFactory.getLogger(DerivedDataToHFiles.class);
 
-  private ColumnNameTranslator mColumnNameTranslator = null;
-  private EntityIdFactory mEntityIdFactory=  null;
-  private KijiCellEncoder mCellEncoder = null;
-  private Kiji mKiji = null;
+  /** Configuration key for the derived_data qualifiers to port, defaults to all of them. */
+  public static final String PORT_COLUMNS_KEY = "wibidota.port.columns";
+
+  private static final String FAMILY = "match_derived_data";
+
+  private TableCellEncoder mEncoder = null;
+
+  private TaskMetrics mMetrics = null;
 
   @Override
   public void setup(GathererContext<HFileKeyValue, NullWritable> context) throws IOException {
@@ -60,26 +66,16 @@ public class DerivedDataToHFiles extends KijiGatherer<HFileKeyValue, NullWritabl
 
     // Grab the output table from the config file
     KijiURI uri = KijiURI.newBuilder(conf.get(KijiConfKeys.KIJI_OUTPUT_TABLE_URI)).build();
-
-    // Get the encoder we want. We need to keep our KijiInstance open so its schemaTable
-    // remain open for use by the encoder
-    mKiji = Kiji.Factory.open(uri);
-    KijiTable table = mKiji.openTable(uri.getTable());
-    CellSpec cellSpec = table.getLayout().getCellSpec(new KijiColumnName("derived_data"))
-        .setSchemaTable(mKiji.getSchemaTable());
-    table.release();
-    mCellEncoder = DefaultKijiCellEncoderFactory.get().create(cellSpec);
-
-    // Grab the some other translating tools we need, we assume the
-    // table's layout is static
-    mColumnNameTranslator = new ColumnNameTranslator(table.getLayout());
-    mEntityIdFactory = EntityIdFactory.getFactory(table.getLayout());
+    mEncoder = new TableCellEncoder(uri);
+    mMetrics = new TaskMetrics(conf, "DerivedDataToHFiles");
     super.setup(context);
   }
 
   @Override
   public void cleanup(GathererContext<HFileKeyValue, NullWritable> context) throws IOException {
-    mKiji.release();
+    mEncoder.close();
+    mMetrics.reportCounters(context);
+    mMetrics.close();
     super.cleanup(context);
   }
 
@@ -96,37 +92,58 @@ public class DerivedDataToHFiles extends KijiGatherer<HFileKeyValue, NullWritabl
     def.withMaxVersions(1);
 
     def.add("data", "player_data");
-    def.addFamily("derived_data");
+    final String[] columns = getConf().getStrings(PORT_COLUMNS_KEY);
+    if(columns == null) {
+      def.addFamily("derived_data");
+    } else {
+      LOG.info("Porting derived_data columns: " + getConf().get(PORT_COLUMNS_KEY));
+      for(String column : columns) {
+        def.add("derived_data", column.trim());
+      }
+    }
     return builder.addColumns(def).build();
   }
 
   @Override
   public void gather(KijiRowData input, GathererContext<HFileKeyValue, NullWritable> context) throws IOException {
+    final long gatherStart = TaskMetrics.start();
     NavigableMap<String, Double> data = input.getMostRecentValues("derived_data");
     if(data.size() == 0) {
       return;
     }
 
+    // Encode the values once for all the players
+    final long encodeStart = TaskMetrics.start();
+    final String[] qualifiers = new String[data.size()];
+    final byte[][] encoded = new byte[data.size()][];
+    int encodedBytes = 0;
+    int i = 0;
+    for(Map.Entry<String, Double> entry : data.entrySet()) {
+      qualifiers[i] = entry.getKey();
+      encoded[i] = mEncoder.encode(FAMILY, entry.getKey(), entry.getValue());
+      encodedBytes += encoded[i].length;
+      i++;
+    }
+    mMetrics.stop(TaskMetrics.Metric.ENCODE_NANOS, encodeStart);
+
     KijiCell<Players> playerCell = input.getMostRecentCell("data", "player_data");
     Players players = playerCell.getData();
     long time = playerCell.getTimestamp();
+    int rows = 0;
     for(Player player : players.getPlayers()) {
       Integer accountId = player.getAccountId();
       if(DotaValues.nonAnonPlayer(accountId)) {
-        EntityId id = mEntityIdFactory.getEntityId(accountId);
-        for(Map.Entry<String, Double> entry : data.entrySet()) {
-          final KijiColumnName kijiColumn = new KijiColumnName("match_derived_data", entry.getKey());
-          final HBaseColumnName hbaseColumn = mColumnNameTranslator.toHBaseColumnName(kijiColumn);
-          final HFileKeyValue mrKey = new HFileKeyValue(
-              id.getHBaseRowKey(),
-              hbaseColumn.getFamily(),
-              hbaseColumn.getQualifier(),
-              time,
-              mCellEncoder.encode(entry.getValue()));
-          context.write(mrKey, NullWritable.get());
+        EntityId id = mEncoder.getEntityId(accountId);
+        for(int j = 0; j < qualifiers.length; j++) {
+          context.write(mEncoder.keyValue(id, FAMILY, qualifiers[j], time, encoded[j]),
+              NullWritable.get());
         }
+        rows++;
       }
     }
+    mMetrics.record(TaskMetrics.Metric.CELLS_PER_ROW, rows * qualifiers.length);
+    mMetrics.record(TaskMetrics.Metric.BYTES_PER_ROW, (long) rows * encodedBytes);
+    mMetrics.stop(TaskMetrics.Metric.GATHER_NANOS, gatherStart);
   }
 
   @Override
@@ -20,6 +20,7 @@
 package com.wibidata.wibidota;
 
 import com.wibidata.wibidota.avro.AbilityUpgrade;
+import com.wibidata.wibidota.avro.MatchSummary;
 import com.wibidata.wibidota.avro.Player;
 import com.wibidata.wibidota.avro.Players;
 import org.apache.hadoop.io.LongWritable;
@@ -54,9 +55,6 @@ public class DotaCheckValues extends KijiGatherer {
   // Rows seen so far
   private static int rows = 0;
 
-  // List of team prefixes
-  private static final String[] TEAMS = new String[]{"dire", "radiant"};
-
   // Exception to throw if a field is not formatted correctly
   private static class BadFormat extends RuntimeException {
     public BadFormat(String msg) {
@@ -107,23 +105,8 @@ public class DotaCheckValues extends KijiGatherer {
     KijiDataRequestBuilder.ColumnsDef def = builder.newColumnsDef();
     def.withMaxVersions(1);
     // Everything
-    def.add(new KijiColumnName("data","player_data"))
-        .add(new KijiColumnName("data", "dire_towers_status"))
-        .add(new KijiColumnName("data", "radiant_towers_status"))
-        .add(new KijiColumnName("data", "dire_barracks_status"))
-        .add(new KijiColumnName("data", "radiant_barracks_status"))
-        .add(new KijiColumnName("data", "cluster"))
-        .add(new KijiColumnName("data", "season"))
-        .add(new KijiColumnName("data", "game_mode"))
-        .add(new KijiColumnName("data", "match_seq_num"))
-        .add(new KijiColumnName("data", "league_id"))
-        .add(new KijiColumnName("data", "first_blood_time"))
-        .add(new KijiColumnName("data", "negative_votes"))
-        .add(new KijiColumnName("data", "duration"))
-        .add(new KijiColumnName("data", "radiant_win"))
-        .add(new KijiColumnName("data", "positive_votes"))
-        .add(new KijiColumnName("data", "lobby_type"))
-        .add(new KijiColumnName("data", "human_players"));
+    def.add(new KijiColumnName("data","player_data"));
+    MatchSummaries.addColumns(def, MatchSummaries.legacyFallback(getConf()));
     return builder.addColumns(def).build();
   }
 
@@ -135,28 +118,29 @@ public class DotaCheckValues extends KijiGatherer {
     }
     try {
       // After 2005, before the future plus 10 minutes to allow for clock misalignments
-      checkLong(kijiRowData.getMostRecentCell("data", "match_id").getTimestamp(), "start_time",
+      // Cells are written at the match's start time
+      checkLong(kijiRowData.getMostRecentCell("data", "player_data").getTimestamp(), "start_time",
           1104537600, System.currentTimeMillis() + 60000);
-      for(String team : TEAMS) {
-        Integer towerStatus = kijiRowData.getMostRecentValue("data", team + "_towers_status");
-        checkInt(towerStatus, team + "_tower_status", 0, ((Double) Math.pow(2, 11)).intValue());
-      }
-      for(String team : TEAMS) {
-        Integer raxStatus = kijiRowData.getMostRecentValue("data", team + "_barracks_status");
-        checkInt(raxStatus, team + "_barracks_status", 0, ((Double) Math.pow(2, 6)).intValue());
-      }
-      checkInt((Integer) kijiRowData.getMostRecentValue("data", "human_players"),
-          "human_players", 0, 10);
-
-      DotaValues.LobbyType.fromInt((Integer) kijiRowData.getMostRecentValue("data", "lobby_type"));
-      DotaValues.GameMode.fromInt((Integer) kijiRowData.getMostRecentValue("data", "game_mode"));
-      for(String s : new String[]{"cluster", "season", "duration",
-          "negative_votes", "positive_votes"}) {
-        Integer n = kijiRowData.getMostRecentValue("data", s);
-        checkInt(n, s, 0, Integer.MAX_VALUE / 2);
-      }
-      checkInt((Integer) kijiRowData.getMostRecentValue("data", "league_id"), "league_id",
-          0, Integer.MAX_VALUE);
+      MatchSummary summary = MatchSummaries.get(kijiRowData);
+      checkNull(summary, "match_summary");
+      checkInt(summary.getDireTowersStatus(), "dire_tower_status",
+          0, ((Double) Math.pow(2, 11)).intValue());
+      checkInt(summary.getRadiantTowersStatus(), "radiant_tower_status",
+          0, ((Double) Math.pow(2, 11)).intValue());
+      checkInt(summary.getDireBarracksStatus(), "dire_barracks_status",
+          0, ((Double) Math.pow(2, 6)).intValue());
+      checkInt(summary.getRadiantBarracksStatus(), "radiant_barracks_status",
+          0, ((Double) Math.pow(2, 6)).intValue());
+      checkInt(summary.getHumanPlayers(), "human_players", 0, 10);
+
+      DotaValues.LobbyType.fromInt(summary.getLobbyType());
+      DotaValues.GameMode.fromInt(summary.getGameMode());
+      checkInt(summary.getCluster(), "cluster", 0, Integer.MAX_VALUE / 2);
+      checkInt(summary.getSeason(), "season", 0, Integer.MAX_VALUE / 2);
+      checkInt(summary.getDuration(), "duration", 0, Integer.MAX_VALUE / 2);
+      checkInt(summary.getNegativeVotes(), "negative_votes", 0, Integer.MAX_VALUE / 2);
+      checkInt(summary.getPositiveVotes(), "positive_votes", 0, Integer.MAX_VALUE / 2);
+      checkInt(summary.getLeagueId(), "league_id", 0, Integer.MAX_VALUE);
       Players players = kijiRowData.getMostRecentValue("data", "player_data");
       for(Player player : players.getPlayers()) {
         Integer n = player.getAccountId();
@@ -0,0 +1,457 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.io.hfile.CacheConfig;
+import org.apache.hadoop.hbase.io.hfile.Compression;
+import org.apache.hadoop.hbase.io.hfile.HFile;
+import org.apache.hadoop.hbase.regionserver.StoreFile;
+import org.apache.hadoop.hbase.regionserver.TimeRangeTracker;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.ByteWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Partitioner;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.LazyOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.kiji.mapreduce.framework.HFileKeyValue;
+import org.kiji.schema.EntityId;
+import org.kiji.schema.Kiji;
+import org.kiji.schema.KijiRegion;
+import org.kiji.schema.KijiTable;
+import org.kiji.schema.KijiURI;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses each line of the raw JSON once and writes HFiles for both the dota_matches and
+ * dota_players tables in the same job. Skips the per-put Avro encoding a KijiTableContext does,
+ * see TableCellEncoder. The mappers tag each encoded cell with its table, the reducers are split
+ * between the regions of the two tables so each reducer sorts one region's cells and writes
+ * them straight to HFiles. The HFiles for each table end up in a matches or players
+ * directory under the output, ready to bulk-load, with no intermediate copy of the cells.
+ *
+ * ex. kiji jar $WIBIDOTA/lib/wibi-dota-0.0.1.jar com.wibidata.wibidota.DotaCombinedImport \
+ *   hdfs://path/to/match/files/directory/ hdfs://path/to/combined
+ */
+public class DotaCombinedImport extends Configured implements Tool {
+
+  private static final Logger LOG = LoggerFactory.getLogger(DotaCombinedImport.class);
+
+  /** Configuration key for the uri of the dota_matches table. */
+  public static final String MATCHES_TABLE_KEY = "wibidota.combined.matches_table";
+
+  /** Configuration key for the uri of the dota_players table. */
+  public static final String PLAYERS_TABLE_KEY = "wibidota.combined.players_table";
+
+  /** Configuration key for the compression of the HFiles written, an HBase algorithm name. */
+  public static final String COMPRESSION_KEY = "wibidota.combined.hfile_compression";
+
+  private static final String DEFAULT_MATCHES_TABLE = "kiji://.env/wibidota/dota_matches";
+
+  private static final String DEFAULT_PLAYERS_TABLE = "kiji://.env/wibidota/dota_players";
+
+  private static final String DEFAULT_COMPRESSION = "gz";
+
+  // Set by run to the base64 region start keys of each table, for TablePartitioner
+  private static final String MATCHES_REGIONS_KEY = "wibidota.combined.matches_regions";
+  private static final String PLAYERS_REGIONS_KEY = "wibidota.combined.players_regions";
+
+  // Index of each table, the value of its cells in the map output
+  static final byte MATCHES = 0;
+  static final byte PLAYERS = 1;
+
+  // Names of the output directories for each table
+  static final String MATCHES_OUTPUT = "matches";
+  static final String PLAYERS_OUTPUT = "players";
+
+  /**
+   * Cells, encoded bytes and encoding time of the line being imported, shared by the sinks
+   * of both tables and recorded into the TaskMetrics after each line.
+   */
+  static class LineStats {
+    long cells = 0;
+    long bytes = 0;
+    long encodeNanos = 0;
+
+    /**
+     * Records the stats of the line under CELLS_PER_ROW, BYTES_PER_ROW and ENCODE_NANOS
+     * and resets them for the next line.
+     */
+    void record(TaskMetrics metrics) {
+      metrics.record(TaskMetrics.Metric.CELLS_PER_ROW, cells);
+      metrics.record(TaskMetrics.Metric.BYTES_PER_ROW, bytes);
+      metrics.record(TaskMetrics.Metric.ENCODE_NANOS, encodeNanos);
+      cells = 0;
+      bytes = 0;
+      encodeNanos = 0;
+    }
+  }
+
+  /**
+   * EncodedCellSink that encodes cells and writes them to the map output tagged with their
+   * table.
+   */
+  static class HFileCellSink implements EncodedCellSink {
+
+    private final TableCellEncoder mEncoder;
+    private final Mapper<LongWritable, Text, HFileKeyValue, ByteWritable>.Context mContext;
+    private final ByteWritable mTable;
+    private final LineStats mStats;
+
+    HFileCellSink(TableCellEncoder encoder,
+                  Mapper<LongWritable, Text, HFileKeyValue, ByteWritable>.Context context,
+                  byte table, LineStats stats) {
+      mEncoder = encoder;
+      mContext = context;
+      mTable = new ByteWritable(table);
+      mStats = stats;
+    }
+
+    public EntityId getEntityId(Object... components) {
+      return mEncoder.getEntityId(components);
+    }
+
+    public <T> void put(EntityId eid, String family, String qualifier, long timestamp, T value)
+        throws IOException {
+      putEncoded(eid, family, qualifier, timestamp, encode(family, qualifier, value));
+    }
+
+    public byte[] encode(String family, String qualifier, Object value) throws IOException {
+      final long start = TaskMetrics.start();
+      final byte[] encoded = mEncoder.encode(family, qualifier, value);
+      mStats.encodeNanos += System.nanoTime() - start;
+      return encoded;
+    }
+
+    public void putEncoded(EntityId eid, String family, String qualifier, long timestamp,
+                           byte[] encoded) throws IOException {
+      try {
+        mContext.write(mEncoder.keyValue(eid, family, qualifier, timestamp, encoded), mTable);
+        mStats.cells++;
+        mStats.bytes += encoded.length;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted writing a cell", e);
+      }
+    }
+  }
+
+  public static class CombinedImportMap
+      extends Mapper<LongWritable, Text, HFileKeyValue, ByteWritable> {
+
+    private boolean mLegacyParser = false;
+    private boolean mLegacyColumns = true;
+    private TableCellEncoder mMatchesEncoder;
+    private TableCellEncoder mPlayersEncoder;
+    private MatchCellSink mMatchesSink;
+    // An EncodedCellSink so the writePlayerRows overloads encoding once per match are used
+    private EncodedCellSink mPlayersSink;
+    private IngestErrors mErrors;
+    private long mWatermark = -1;
+    private MatchDerivations mDerivations;
+    // Timestamp to write derived_data at, the time the task started
+    private long mDerivedTime;
+    private final LineStats mStats = new LineStats();
+    private TaskMetrics mMetrics;
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+      Configuration conf = context.getConfiguration();
+      mLegacyParser = conf.getBoolean(DotaMatchBulkImporter.LEGACY_PARSER_KEY, false);
+      mLegacyColumns = conf.getBoolean(DotaMatchBulkImporter.LEGACY_COLUMNS_KEY, true);
+      mMatchesEncoder = new TableCellEncoder(
+          KijiURI.newBuilder(conf.get(MATCHES_TABLE_KEY, DEFAULT_MATCHES_TABLE)).build());
+      mPlayersEncoder = new TableCellEncoder(
+          KijiURI.newBuilder(conf.get(PLAYERS_TABLE_KEY, DEFAULT_PLAYERS_TABLE)).build());
+      mMatchesSink = new HFileCellSink(mMatchesEncoder, context, MATCHES, mStats);
+      mPlayersSink = new HFileCellSink(mPlayersEncoder, context, PLAYERS, mStats);
+      mErrors = new IngestErrors(conf);
+      mWatermark = SeqNumWatermark.read(conf);
+      mDerivations = new MatchDerivations(conf);
+      mDerivedTime = System.currentTimeMillis();
+      mMetrics = new TaskMetrics(conf, "DotaCombinedImport");
+    }
+
+    @Override
+    protected void map(LongWritable key, Text line, Context context)
+        throws IOException, InterruptedException {
+      if(SeqNumWatermark.belowWatermark(line, mWatermark)) {
+        // Already imported
+        context.getCounter(SeqNumWatermark.Counters.LINES_BELOW_WATERMARK).increment(1);
+        return;
+      }
+      mErrors.lineRead();
+      try {
+        final RawMatch match;
+        final long parseStart = TaskMetrics.start();
+        try {
+          match = DotaMatchBulkImporter.parseMatch(line, mLegacyParser);
+        } catch (IOException ioe) {
+          // The line is not valid JSON
+          context.getCounter(mErrors.failed(line, ioe)).increment(1);
+          return;
+        }
+        mMetrics.stop(TaskMetrics.Metric.PARSE_NANOS, parseStart);
+
+        final long writeStart = TaskMetrics.start();
+        MatchCells.writeMatchRow(match, mMatchesSink, mLegacyColumns);
+        MatchCells.writePlayerRows(match, mPlayersSink);
+        mDerivations.derive(match);
+        mDerivations.writeMatchRow(match, mMatchesSink, mDerivedTime);
+        mDerivations.writePlayerRows(match, mPlayersSink);
+        mMetrics.stop(TaskMetrics.Metric.WRITE_NANOS, writeStart);
+        mStats.record(mMetrics);
+      } catch (RuntimeException re) {
+        context.getCounter(mErrors.failed(line, re)).increment(1);
+        // Cells written before the failure still count towards this line
+        mStats.record(mMetrics);
+      }
+    }
+
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+      mErrors.close();
+      mMatchesEncoder.close();
+      mPlayersEncoder.close();
+      mMetrics.reportCounters(context);
+      mMetrics.close();
+    }
+  }
+
+  /**
+   * Sends each cell to the reducer for the region of its table holding its row. Reducers
+   * [0, matches regions) take dota_matches, the rest dota_players.
+   */
+  public static class TablePartitioner extends Partitioner<HFileKeyValue, ByteWritable>
+      implements Configurable {
+
+    private Configuration mConf;
+    private byte[][] mMatchesStarts;
+    private byte[][] mPlayersStarts;
+
+    public void setConf(Configuration conf) {
+      mConf = conf;
+      mMatchesStarts = decodeKeys(conf.getStrings(MATCHES_REGIONS_KEY));
+      mPlayersStarts = decodeKeys(conf.getStrings(PLAYERS_REGIONS_KEY));
+    }
+
+    public Configuration getConf() {
+      return mConf;
+    }
+
+    @Override
+    public int getPartition(HFileKeyValue cell, ByteWritable table, int partitions) {
+      if(table.get() == MATCHES) {
+        return regionOf(mMatchesStarts, cell.getRowKey());
+      }
+      return mMatchesStarts.length + regionOf(mPlayersStarts, cell.getRowKey());
+    }
+
+    // Index of the region holding rowKey, the last region whose start key is <= rowKey
+    private static int regionOf(byte[][] starts, byte[] rowKey) {
+      int low = 0;
+      int high = starts.length - 1;
+      while(low < high) {
+        final int mid = (low + high + 1) >>> 1;
+        if(Bytes.compareTo(starts[mid], rowKey) <= 0) {
+          low = mid;
+        } else {
+          high = mid - 1;
+        }
+      }
+      return low;
+    }
+  }
+
+  /**
+   * Writes the sorted cells of one region of a table to an HFile per HBase family, under
+   * the task's work directory so they are only moved into the output if the task succeeds.
+   */
+  public static class HFileReduce
+      extends Reducer<HFileKeyValue, ByteWritable, NullWritable, NullWritable> {
+
+    private final Map<String, HFile.Writer> mWriters = new HashMap<String, HFile.Writer>();
+    private final TimeRangeTracker mTimeRange = new TimeRangeTracker();
+    private Path mTableDir = null;
+    private Compression.Algorithm mCompression;
+    private Configuration mConf;
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+      mConf = context.getConfiguration();
+      mCompression = Compression.getCompressionAlgorithmByName(
+          mConf.get(COMPRESSION_KEY, DEFAULT_COMPRESSION));
+    }
+
+    private HFile.Writer writer(byte[] family, Context context)
+        throws IOException, InterruptedException {
+      final String name = Bytes.toString(family);
+      HFile.Writer writer = mWriters.get(name);
+      if(writer == null) {
+        final Path path = new Path(new Path(mTableDir, name),
+            "part-r-" + context.getTaskAttemptID().getTaskID().getId());
+        writer = HFile.getWriterFactory(mConf, new CacheConfig(mConf))
+            .withPath(FileSystem.get(path.toUri(), mConf), path)
+            .withCompression(mCompression)
+            .withComparator(KeyValue.KEY_COMPARATOR)
+            .create();
+        mWriters.put(name, writer);
+      }
+      return writer;
+    }
+
+    @Override
+    protected void reduce(HFileKeyValue cell, Iterable<ByteWritable> tables, Context context)
+        throws IOException, InterruptedException {
+      if(mTableDir == null) {
+        // Every cell a reducer sees is from the same table
+        mTableDir = new Path(FileOutputFormat.getWorkOutputPath(context),
+            tables.iterator().next().get() == MATCHES ? MATCHES_OUTPUT : PLAYERS_OUTPUT);
+      }
+      final KeyValue kv = cell.toKeyValue();
+      mTimeRange.includeTimestamp(kv);
+      // Cells with the same key (a match in the input twice) are written once, HFiles can not
+      // hold duplicate keys
+      writer(cell.getFamily(), context).append(kv);
+    }
+
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+      for(HFile.Writer writer : mWriters.values()) {
+        writer.appendFileInfo(StoreFile.BULKLOAD_TIME_KEY,
+            Bytes.toBytes(System.currentTimeMillis()));
+        writer.appendFileInfo(StoreFile.BULKLOAD_TASK_KEY,
+            Bytes.toBytes(context.getTaskAttemptID().toString()));
+        writer.appendFileInfo(StoreFile.MAJOR_COMPACTION_KEY, Bytes.toBytes(true));
+        writer.appendFileInfo(StoreFile.TIMERANGE_KEY, WritableUtils.toByteArray(mTimeRange));
+        writer.close();
+      }
+    }
+  }
+
+  // The start keys of the regions of the table at uri, in order
+  private static List<byte[]> regionStarts(String uri) throws IOException {
+    final KijiURI kijiURI = KijiURI.newBuilder(uri).build();
+    final Kiji kiji = Kiji.Factory.open(kijiURI);
+    try {
+      final KijiTable table = kiji.openTable(kijiURI.getTable());
+      try {
+        final List<byte[]> starts = new ArrayList<byte[]>();
+        for(KijiRegion region : table.getRegions()) {
+          starts.add(region.getStartKey());
+        }
+        Collections.sort(starts, new Comparator<byte[]>() {
+          public int compare(byte[] a, byte[] b) {
+            return Bytes.compareTo(a, b);
+          }
+        });
+        return starts;
+      } finally {
+        table.release();
+      }
+    } finally {
+      kiji.release();
+    }
+  }
+
+  private static String[] encodeKeys(List<byte[]> keys) {
+    final String[] encoded = new String[keys.size()];
+    for(int i = 0; i < encoded.length; i++) {
+      encoded[i] = Base64.encodeBase64String(keys.get(i)).trim();
+    }
+    return encoded;
+  }
+
+  private static byte[][] decodeKeys(String[] encoded) {
+    final byte[][] keys = new byte[encoded.length][];
+    for(int i = 0; i < keys.length; i++) {
+      keys[i] = Base64.decodeBase64(encoded[i]);
+    }
+    return keys;
+  }
+
+  public static void main(String args[]) throws Exception {
+    Configuration conf = new Configuration();
+    int res = ToolRunner.run(conf, new DotaCombinedImport(), args);
+    System.exit(res);
+  }
+
+  public final int run(final String[] args) throws Exception {
+    final Configuration conf = super.getConf();
+    final List<byte[]> matchesStarts =
+        regionStarts(conf.get(MATCHES_TABLE_KEY, DEFAULT_MATCHES_TABLE));
+    final List<byte[]> playersStarts =
+        regionStarts(conf.get(PLAYERS_TABLE_KEY, DEFAULT_PLAYERS_TABLE));
+    conf.setStrings(MATCHES_REGIONS_KEY, encodeKeys(matchesStarts));
+    conf.setStrings(PLAYERS_REGIONS_KEY, encodeKeys(playersStarts));
+
+    Job job = new Job(conf, "Dota Combined Import");
+    job.setMapOutputKeyClass(HFileKeyValue.class);
+    job.setMapOutputValueClass(ByteWritable.class);
+    job.setOutputKeyClass(NullWritable.class);
+    job.setOutputValueClass(NullWritable.class);
+
+    job.setMapperClass(CombinedImportMap.class);
+    job.setPartitionerClass(TablePartitioner.class);
+    job.setReducerClass(HFileReduce.class);
+    // One reducer per region of each table
+    job.setNumReduceTasks(matchesStarts.size() + playersStarts.size());
+
+    job.setJarByClass(DotaCombinedImport.class);
+
+    IndexedGzipInputFormat.configureInput(job);
+    // The reducers write HFiles themselves, avoid creating empty part files
+    LazyOutputFormat.setOutputFormatClass(job, SequenceFileOutputFormat.class);
+
+    FileInputFormat.addInputPath(job, new Path(args[0]));
+    FileOutputFormat.setOutputPath(job, new Path(args[1]));
+
+    if (job.waitForCompletion(true)) {
+      return 0;
+    } else {
+      return -1;
+    }
+  }
+}
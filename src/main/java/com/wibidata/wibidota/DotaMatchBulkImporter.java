@@ -31,7 +31,6 @@ import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Text;
 import org.kiji.mapreduce.KijiTableContext;
 import org.kiji.mapreduce.bulkimport.KijiBulkImporter;
-import org.kiji.schema.EntityId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -58,6 +57,37 @@ public class DotaMatchBulkImporter extends KijiBulkImporter<LongWritable, Text>
 
   static final JsonParser PARSER = new JsonParser();
 
+  /**
+   * Configuration key, if true lines are parsed into a JsonObject before being read
+   * rather than with the StreamingMatchParser.
+   */
+  public static final String LEGACY_PARSER_KEY = "wibidota.importer.legacy_parser";
+
+  /**
+   * Configuration key, if true the scalar match level values are written to their individual
+   * columns as well as the match_summary column. Defaults to true while MultHistogram, Histogram
+   * and other express jobs over arbitrary columns still read the individual columns, and until
+   * MatchSummaryProducer has backfilled match_summary for older rows.
+   */
+  public static final String LEGACY_COLUMNS_KEY = "wibidota.importer.legacy_columns";
+
+  private boolean mLegacyParser = false;
+
+  private boolean mLegacyColumns = true;
+
+  private MatchCells.CountingSink mSink = null;
+
+  private TaskMetrics mMetrics = null;
+
+  private IngestErrors mErrors = null;
+
+  private long mWatermark = -1;
+
+  private MatchDerivations mDerivations = null;
+
+  // Timestamp to write derived_data at, the time the task started
+  private long mDerivedTime = 0;
+
   /**
    * Gets an Integer from a JsonElement that might be null.
    *
@@ -179,62 +209,71 @@ public class DotaMatchBulkImporter extends KijiBulkImporter<LongWritable, Text>
   }
 
 
+  /**
+   * Parses a line of raw match JSON, either with the StreamingMatchParser or, if legacyParser
+   * is set, by building a JsonObject and reading fields from it.
+   */
+  public static RawMatch parseMatch(Text line, boolean legacyParser) throws IOException {
+    if(legacyParser) {
+      return RawMatch.fromJson(PARSER.parse(line.toString()).getAsJsonObject());
+    }
+    return StreamingMatchParser.parse(line);
+  }
+
+  @Override
+  public void setup(KijiTableContext context) throws IOException {
+    mLegacyParser = getConf().getBoolean(LEGACY_PARSER_KEY, false);
+    LOG.info(LEGACY_PARSER_KEY + " set to: " + mLegacyParser);
+    mLegacyColumns = getConf().getBoolean(LEGACY_COLUMNS_KEY, true);
+    LOG.info(LEGACY_COLUMNS_KEY + " set to: " + mLegacyColumns);
+    mSink = new MatchCells.CountingSink(MatchCells.contextSink(context));
+    mMetrics = new TaskMetrics(getConf(), "DotaMatchBulkImporter");
+    mErrors = new IngestErrors(getConf());
+    mWatermark = SeqNumWatermark.read(getConf());
+    mDerivations = new MatchDerivations(getConf());
+    mDerivedTime = System.currentTimeMillis();
+    LOG.info("Skipping matches with match_seq_num <= " + mWatermark);
+    super.setup(context);
+  }
+
   @Override
   public void produce(LongWritable filePos, Text line, KijiTableContext context)
       throws IOException {
-
+    if(SeqNumWatermark.belowWatermark(line, mWatermark)) {
+      // Already imported
+      context.incrementCounter(SeqNumWatermark.Counters.LINES_BELOW_WATERMARK);
+      return;
+    }
+    mErrors.lineRead();
+    try {
+      final RawMatch match;
+      final long parseStart = TaskMetrics.start();
       try {
-          // Parse the JSON and wrap a JSONplayerData over it
-          final JsonObject matchData = PARSER.parse(line.toString()).getAsJsonObject();
-
-          // Collect the values we need
-          final long matchId = matchData.get("match_id").getAsLong();
-          final int gameMode = matchData.get("game_mode").getAsInt();
-          final int lobbyType = matchData.get("lobby_type").getAsInt();
-          final int direTowers = matchData.get("tower_status_dire").getAsInt();
-          final int radiantTowers = matchData.get("tower_status_radiant").getAsInt();
-          final int direBarracks = matchData.get("barracks_status_dire").getAsInt();
-          final int radiantBarracks = matchData.get("barracks_status_radiant").getAsInt();
-          final int cluster = matchData.get("cluster").getAsInt();
-          final Integer season = getNullableInt(matchData.get("season"));
-          final long startTime = matchData.get("start_time").getAsLong() * 1000; // convert to milliseconds
-          final long seqNum = matchData.get("match_seq_num").getAsLong();
-          final int leagueId = matchData.get("leagueid").getAsInt();
-          final int firstBloodTime = matchData.get("first_blood_time").getAsInt();
-          final int negativeVotes = matchData.get("negative_votes").getAsInt();
-          final int positiveVotes = matchData.get("positive_votes").getAsInt();
-          final int duration = matchData.get("duration").getAsInt();
-          final boolean radiantWin = matchData.get("radiant_win").getAsBoolean();
-          final int humanPlayers = matchData.get("human_players").getAsInt();
-
-          // Build and parse the player match stats
-          final Players players = extractPlayers(matchData);
-
-          EntityId eid = context.getEntityId(matchId);
-
-          // Produce all our data
-          context.put(eid, "data", "dire_towers_status", startTime, direTowers);
-          context.put(eid, "data", "radiant_towers_status", startTime, radiantTowers);
-          context.put(eid, "data", "dire_barracks_status", startTime, direBarracks);
-          context.put(eid, "data", "radiant_barracks_status", startTime, radiantBarracks);
-          context.put(eid, "data", "cluster", startTime, cluster);
-          context.put(eid, "data", "season", startTime, season);
-          context.put(eid, "data", "match_seq_num", startTime, seqNum);
-          context.put(eid, "data", "league_id", startTime, leagueId);
-          context.put(eid, "data", "first_blood_time", startTime, firstBloodTime);
-          context.put(eid, "data", "negative_votes", startTime, negativeVotes);
-          context.put(eid, "data", "positive_votes", startTime, positiveVotes);
-          context.put(eid, "data", "duration", startTime, duration);
-          context.put(eid, "data", "radiant_win", startTime, radiantWin);
-          context.put(eid, "data", "player_data", startTime, players);
-          context.put(eid, "data", "game_mode", startTime, gameMode);
-          context.put(eid, "data", "lobby_type", startTime, lobbyType);
-          context.put(eid, "data", "human_players", startTime, humanPlayers);
-      } catch (RuntimeException re) {
-          // For RunetimeExceptions we try to log additional information for debugging purposes
-        LOG.error("Runtime Exception! " +
-            "\nLine\n" + line + "\nMessage:\n" + re.toString());
-        throw re;
+        match = parseMatch(line, mLegacyParser);
+      } catch (IOException ioe) {
+        // The line is not valid JSON
+        context.incrementCounter(mErrors.failed(line, ioe));
+        return;
       }
+      mMetrics.stop(TaskMetrics.Metric.PARSE_NANOS, parseStart);
+
+      // Produce all our data
+      final long writeStart = TaskMetrics.start();
+      MatchCells.writeMatchRow(match, mSink, mLegacyColumns);
+      mDerivations.derive(match);
+      mDerivations.writeMatchRow(match, mSink, mDerivedTime);
+      mMetrics.stop(TaskMetrics.Metric.WRITE_NANOS, writeStart);
+      mMetrics.record(TaskMetrics.Metric.CELLS_PER_ROW, mSink.takeCount());
+    } catch (RuntimeException re) {
+      context.incrementCounter(mErrors.failed(line, re));
+    }
+  }
+
+  @Override
+  public void cleanup(KijiTableContext context) throws IOException {
+    mErrors.close();
+    mMetrics.reportCounters(context);
+    mMetrics.close();
+    super.cleanup(context);
   }
 }
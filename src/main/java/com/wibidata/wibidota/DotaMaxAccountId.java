@@ -31,7 +31,6 @@ import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Reducer;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
-import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
 import org.apache.hadoop.util.Tool;
@@ -113,7 +112,7 @@ public class DotaMaxAccountId extends Configured implements Tool {
 
     job.setJarByClass(DotaMaxAccountId.class);
 
-    job.setInputFormatClass(TextInputFormat.class);
+    IndexedGzipInputFormat.configureInput(job);
     job.setOutputFormatClass(TextOutputFormat.class);
 
     FileInputFormat.addInputPath(job, new Path(args[0]));
@@ -0,0 +1,135 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+import java.io.IOException;
+
+/**
+ * A map only job that checks the StreamingMatchParser agrees with the JsonObject based
+ * parsing DotaMatchBulkImporter.extractPlayers does. Run on the raw JSON encoded data, counts
+ * the matching and mismatching lines and outputs a limited number of mismatching lines of
+ * the form:
+ *
+ * <Type of mismatch>  <Line>
+ */
+public class DotaParserEquivalence extends Configured implements Tool {
+
+  static enum Counters {
+    MATCHING_LINES,     // Lines both parsers read to the same values
+    MISMATCHED_LINES,   // Lines the parsers read to different values
+    LEGACY_FAILURES,    // Lines only the JsonObject parsing failed on
+    STREAMING_FAILURES, // Lines only the streaming parser failed on
+    BOTH_FAILED         // Lines neither parser could read
+  }
+
+  // Maximum number of example lines to output per a map task
+  private static final int MAX_EXAMPLES = 10;
+
+  public static class CompareMap extends Mapper<LongWritable, Text, Text, Text> {
+
+    private int examples = 0;
+
+    private void example(String type, Text line, Context context)
+        throws IOException, InterruptedException {
+      if(examples < MAX_EXAMPLES) {
+        examples++;
+        context.write(new Text(type), line);
+      }
+    }
+
+    @Override
+    public void map(LongWritable key, Text value, Context context)
+        throws IOException, InterruptedException {
+      RawMatch legacy = null;
+      RawMatch streamed = null;
+      try {
+        legacy = DotaMatchBulkImporter.parseMatch(value, true);
+      } catch (RuntimeException e) {
+        // Compared below
+      } catch (IOException e) {
+        // Compared below
+      }
+      try {
+        streamed = DotaMatchBulkImporter.parseMatch(value, false);
+      } catch (RuntimeException e) {
+        // Compared below
+      } catch (IOException e) {
+        // Compared below
+      }
+
+      if(legacy == null && streamed == null) {
+        context.getCounter(Counters.BOTH_FAILED).increment(1);
+      } else if(legacy == null) {
+        context.getCounter(Counters.LEGACY_FAILURES).increment(1);
+        example("legacy_failure", value, context);
+      } else if(streamed == null) {
+        context.getCounter(Counters.STREAMING_FAILURES).increment(1);
+        example("streaming_failure", value, context);
+      } else if(legacy.equals(streamed)) {
+        context.getCounter(Counters.MATCHING_LINES).increment(1);
+      } else {
+        context.getCounter(Counters.MISMATCHED_LINES).increment(1);
+        example("mismatch", value, context);
+      }
+    }
+  }
+
+  public static void main(String args[]) throws Exception {
+    Configuration conf = new Configuration();
+    int res = ToolRunner.run(conf, new DotaParserEquivalence(), args);
+    System.exit(res);
+  }
+
+  public final int run(final String[] args) throws Exception {
+    Job job = new Job(super.getConf(), "Dota Parser Equivalence");
+    job.setOutputKeyClass(Text.class);
+    job.setOutputValueClass(Text.class);
+
+    job.setMapperClass(CompareMap.class);
+    job.setNumReduceTasks(0);
+
+    job.setJarByClass(DotaParserEquivalence.class);
+
+    IndexedGzipInputFormat.configureInput(job);
+    job.setOutputFormatClass(TextOutputFormat.class);
+
+    FileInputFormat.addInputPath(job, new Path(args[0]));
+    FileOutputFormat.setOutputPath(job, new Path(args[1]));
+
+    if (job.waitForCompletion(true)) {
+      return 0;
+    } else {
+      return -1;
+    }
+  }
+}
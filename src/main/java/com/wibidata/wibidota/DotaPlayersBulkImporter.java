@@ -19,21 +19,14 @@
 
 package com.wibidata.wibidota;
 
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
-import com.wibidata.wibidota.avro.Player;
-import com.wibidata.wibidota.avro.Players;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Text;
 import org.kiji.mapreduce.KijiTableContext;
 import org.kiji.mapreduce.bulkimport.KijiBulkImporter;
-import org.kiji.schema.EntityId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
 
 /**
  *  Class to bulk-import data into the dota_players table from the raw Json files.
@@ -42,80 +35,67 @@ public class DotaPlayersBulkImporter extends KijiBulkImporter<LongWritable, Text
 
   private static final Logger LOG = LoggerFactory.getLogger(DotaPlayersBulkImporter.class);
 
-  private static final JsonParser PARSER = new JsonParser();
+  private boolean mLegacyParser = false;
 
-  @Override
-  public void produce(LongWritable filePos, Text line, KijiTableContext context)
-    throws IOException {
+  private MatchCells.CountingSink mSink = null;
 
-    try {
-      // Parse the JSON
-      final JsonObject matchData = PARSER.parse(line.toString()).getAsJsonObject();
+  private TaskMetrics mMetrics = null;
 
-      // Collect the values we need
-      final long matchId = matchData.get("match_id").getAsLong();
-      final int gameMode = matchData.get("game_mode").getAsInt();
-      final int lobbyType = matchData.get("lobby_type").getAsInt();
-      final int direTowers = matchData.get("tower_status_dire").getAsInt();
-      final int radiantTowers = matchData.get("tower_status_radiant").getAsInt();
-      final int direBarracks = matchData.get("barracks_status_dire").getAsInt();
-      final int radiantBarracks = matchData.get("barracks_status_radiant").getAsInt();
-      final int cluster = matchData.get("cluster").getAsInt();
-      final Integer season = DotaMatchBulkImporter.getNullableInt(matchData.get("season"));
-      final long startTime = matchData.get("start_time").getAsLong() * 1000; // Convert to milliseconds
-      final long seqNum = matchData.get("match_seq_num").getAsLong();
-      final int leagueId = matchData.get("leagueid").getAsInt();
-      final int firstBloodTime = matchData.get("first_blood_time").getAsInt();
-      final int negativeVotes = matchData.get("negative_votes").getAsInt();
-      final int positiveVotes = matchData.get("positive_votes").getAsInt();
-      final int duration = matchData.get("duration").getAsInt();
-      final boolean radiantWin = matchData.get("radiant_win").getAsBoolean();
-      final int humanPlayers = matchData.get("human_players").getAsInt();
+  private IngestErrors mErrors = null;
 
-      final Players players = DotaMatchBulkImporter.extractPlayers(matchData);
+  private long mWatermark = -1;
 
-      List<Player> allPlayers = new ArrayList<Player>();
-      List<Player> otherPlayers = new ArrayList<Player>();
-      allPlayers.addAll(players.getPlayers());
-      otherPlayers.addAll(players.getPlayers());
-      for(int i = 0; i < allPlayers.size(); i++) {
-        Player player = allPlayers.get(i);
-        Integer accountId = player.getAccountId();
-        if(accountId != null && accountId != -1) {
-          otherPlayers.remove(i);
-          players.setPlayers(otherPlayers);
-          EntityId eid = context.getEntityId(accountId);
-          context.put(eid, "data", "match_id", startTime, matchId);
-          context.put(eid, "data", "dire_towers_status", startTime, direTowers);
-          context.put(eid, "data", "radiant_towers_status", startTime, radiantTowers);
-          context.put(eid, "data", "dire_barracks_status", startTime, direBarracks);
-          context.put(eid, "data", "radiant_barracks_status", startTime, radiantBarracks);
-          context.put(eid, "data", "cluster", startTime, cluster);
-          context.put(eid, "data", "season", startTime, season);
-          context.put(eid, "data", "match_seq_num", startTime, seqNum);
-          context.put(eid, "data", "league_id", startTime, leagueId);
-          context.put(eid, "data", "first_blood_time", startTime, firstBloodTime);
-          context.put(eid, "data", "negative_votes", startTime, negativeVotes);
-          context.put(eid, "data", "positive_votes", startTime, positiveVotes);
-          context.put(eid, "data", "duration", startTime, duration);
-          context.put(eid, "data", "radiant_win", startTime, radiantWin);
-          context.put(eid, "data", "game_mode", startTime, gameMode);
-          context.put(eid, "data", "lobby_type", startTime, lobbyType);
-          context.put(eid, "data", "human_players", startTime, humanPlayers);
-          context.put(eid, "data", "other_players", startTime, players);
-          context.put(eid, "data", "player", startTime, player);
-          otherPlayers.add(i, player);
-        }
-      }
-    } catch (RuntimeException re) {
-      // For RunetimeExceptions we try to log additional information debugging purposes
+  private MatchDerivations mDerivations = null;
+
+  @Override
+  public void setup(KijiTableContext context) throws IOException {
+    mLegacyParser = getConf().getBoolean(DotaMatchBulkImporter.LEGACY_PARSER_KEY, false);
+    LOG.info(DotaMatchBulkImporter.LEGACY_PARSER_KEY + " set to: " + mLegacyParser);
+    mSink = new MatchCells.CountingSink(MatchCells.contextSink(context));
+    mMetrics = new TaskMetrics(getConf(), "DotaPlayersBulkImporter");
+    mErrors = new IngestErrors(getConf());
+    mWatermark = SeqNumWatermark.read(getConf());
+    mDerivations = new MatchDerivations(getConf());
+    LOG.info("Skipping matches with match_seq_num <= " + mWatermark);
+    super.setup(context);
+  }
+
+  @Override
+  public void produce(LongWritable filePos, Text line, KijiTableContext context)
+    throws IOException {
+    if(SeqNumWatermark.belowWatermark(line, mWatermark)) {
+      // Already imported
+      context.incrementCounter(SeqNumWatermark.Counters.LINES_BELOW_WATERMARK);
+      return;
+    }
+    mErrors.lineRead();
+    try {
+      final RawMatch match;
+      final long parseStart = TaskMetrics.start();
       try {
-        LOG.error("Runtime Exception! MatchId=" +
-            "\nLine\n" + line + "\nMessage:\n" + re.toString());
-      } catch (RuntimeException ex) {
-        LOG.debug("Error loggging the error: " + ex.getMessage());
+        match = DotaMatchBulkImporter.parseMatch(line, mLegacyParser);
+      } catch (IOException ioe) {
+        // The line is not valid JSON
+        context.incrementCounter(mErrors.failed(line, ioe));
+        return;
       }
-      throw re;
+      mMetrics.stop(TaskMetrics.Metric.PARSE_NANOS, parseStart);
+      final long writeStart = TaskMetrics.start();
+      MatchCells.writePlayerRows(match, mSink);
+      mDerivations.derive(match);
+      mDerivations.writePlayerRows(match, mSink);
+      mMetrics.stop(TaskMetrics.Metric.WRITE_NANOS, writeStart);
+      mMetrics.record(TaskMetrics.Metric.CELLS_PER_ROW, mSink.takeCount());
+    } catch (RuntimeException re) {
+      context.incrementCounter(mErrors.failed(line, re));
     }
   }
+
+  @Override
+  public void cleanup(KijiTableContext context) throws IOException {
+    mErrors.close();
+    mMetrics.reportCounters(context);
+    mMetrics.close();
+    super.cleanup(context);
+  }
 }
@@ -19,110 +19,106 @@
 
 package com.wibidata.wibidota;
 
-import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Text;
 import org.kiji.mapreduce.gather.GathererContext;
 import org.kiji.mapreduce.gather.KijiGatherer;
-import org.kiji.schema.KijiColumnName;
 import org.kiji.schema.KijiDataRequest;
 import org.kiji.schema.KijiDataRequestBuilder;
 import org.kiji.schema.KijiRowData;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.HashSet;
 
 /**
- * Collects and counts values and from the Kiji dota table and returns the
- * number of times those values appeared. Can be subdived by start_time of
- * the game. Output is of the form:
+ * Builds histograms of the data: columns of the dota_matches table, optionally subdivided by
+ * the time the match started, see ColumnHistogram for the configuration. Histograms are
+ * aggregated in the mapper and emitted as compact HistogramWritables when the task finishes,
+ * or early if they grow past wibidota.combiner.max_bytes. Use with HistogramReducer as the
+ * combiner and reducer. Output is of the form:
  *
- * <Columns>=<Value> (<start_range>-<end_range>)  <number of occurances>
+ * data:<column> [<start_range>-<end_range>)  <value>=<count> <value>=<count> ...
+ *
+ * or for a sketched column:
+ *
+ * data:<column> [<start_range>-<end_range>)  count=<count> min=<min> p10=<p10> ... max=<max>
  */
-// The express job MultHistogram is preferred for this functionality
-// This class should just be used for reference
-public abstract class DotaValueHistogram extends KijiGatherer {
-
-  private static final Logger LOG =
-      LoggerFactory.getLogger(DotaValueHistogram.class);
+public class DotaValueHistogram extends KijiGatherer<Text, HistogramWritable> {
 
-  private static final LongWritable ONE = new LongWritable(1);
+  // Rows between checks of the size of the histograms
+  private static final int SIZE_CHECK_ROWS = 1024;
 
-  private static int rows = 0;
+  private ColumnHistogram[] mHistograms = null;
 
-  public interface KeyGenerator {
-    public String getKey(KijiRowData row) throws IOException;
-    public String[] getColumnNames();
-  }
+  private ColumnHistogram.Emitter mEmitter = null;
 
-  private static class ValueByTime implements KeyGenerator {
+  private long mMaxBytes;
 
-    public final String family;
-    public final String column;
-    public final Long interval;
-    public final String nullStr;
+  private long mRows = 0;
 
-    public ValueByTime(String family, String column, Long interval) {
-      this.family = family;
-      this.column = column;
-      this.interval = interval;
-      this.nullStr = "NULL";
-    }
+  private TaskMetrics mMetrics = null;
 
-    public String[] getColumnNames() {
-      return new String[]{
-          family +":" + column,
-          "data:start_time"
-      };
-    }
-
-    public String getKey(KijiRowData row) throws IOException {
-      Integer value = row.getMostRecentValue(family, column);
-      StringBuilder sb = new StringBuilder();
-      sb.append(family + ":" + column + "=" + (value == null ? nullStr : value));
-      if(interval != null) {
-        Long startTime = row.getMostRecentValue("data"  , "start_time");
-        long slot = startTime / interval;
-        sb.append(" [" + slot * interval + "-" + (slot + 1) * interval + ")");
+  @Override
+  public void setup(final GathererContext<Text, HistogramWritable> context) throws IOException {
+    mHistograms = ColumnHistogram.fromConf(getConf());
+    mMaxBytes = getConf().getLong(PartialCounts.MAX_BYTES_KEY, PartialCounts.DEFAULT_MAX_BYTES);
+    final Text outKey = new Text();
+    mEmitter = new ColumnHistogram.Emitter() {
+      public void emit(String key, HistogramWritable histogram) throws IOException {
+        outKey.set(key);
+        context.write(outKey, histogram);
       }
-      return sb.toString();
-    }
+    };
+    mMetrics = new TaskMetrics(getConf(), "DotaValueHistogram");
+    super.setup(context);
   }
 
-  private static final KeyGenerator[] KEYS = new KeyGenerator[] {
-      new ValueByTime("data", "game_mode", 21600L)
-  };
-
   @Override
   public KijiDataRequest getDataRequest() {
     KijiDataRequestBuilder builder = KijiDataRequest.builder();
     KijiDataRequestBuilder.ColumnsDef def = builder.newColumnsDef();
     def.withMaxVersions(1);
     HashSet<String> colsAdded = new HashSet<String>();
-    for(KeyGenerator kg : KEYS) {
-      for(String s : kg.getColumnNames()) {
-        if(!colsAdded.contains(s)) {
-          def.add(new KijiColumnName(s));
-          colsAdded.add(s);
-        }
-      }
+    final boolean legacyFallback = MatchSummaries.legacyFallback(getConf());
+    for(ColumnHistogram histogram : ColumnHistogram.fromConf(getConf())) {
+      histogram.addColumns(def, colsAdded, legacyFallback);
     }
     return builder.addColumns(def).build();
   }
 
   @Override
-  public void gather(KijiRowData input, GathererContext context)
+  public void gather(KijiRowData input, GathererContext<Text, HistogramWritable> context)
       throws IOException {
-    rows++;
-    for(KeyGenerator kg: KEYS) {
-      context.write(new Text(kg.getKey(input)), ONE);
+    final long gatherStart = TaskMetrics.start();
+    for(ColumnHistogram histogram : mHistograms) {
+      histogram.add(input);
     }
-    if(rows % 1000 == 0) {
-      LOG.info("Processes row: " + rows);
+    if(++mRows % SIZE_CHECK_ROWS == 0 && estimatedBytes() > mMaxBytes) {
+      emit();
+    }
+    mMetrics.stop(TaskMetrics.Metric.GATHER_NANOS, gatherStart);
+  }
+
+  private long estimatedBytes() {
+    long bytes = 0;
+    for(ColumnHistogram histogram : mHistograms) {
+      bytes += histogram.estimatedBytes();
+    }
+    return bytes;
+  }
+
+  private void emit() throws IOException {
+    for(ColumnHistogram histogram : mHistograms) {
+      histogram.emit(mEmitter);
     }
   }
 
+  @Override
+  public void cleanup(GathererContext<Text, HistogramWritable> context) throws IOException {
+    emit();
+    mMetrics.reportCounters(context);
+    mMetrics.close();
+  }
+
   @Override
   public Class<?> getOutputKeyClass() {
     return Text.class;
@@ -130,7 +126,6 @@ public abstract class DotaValueHistogram extends KijiGatherer {
 
   @Override
   public Class<?> getOutputValueClass() {
-    return LongWritable.class;
+    return HistogramWritable.class;
   }
 }
-
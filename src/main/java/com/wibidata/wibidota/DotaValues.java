@@ -257,7 +257,8 @@ public final class DotaValues {
     POSITIVE_VOTES("positive_votes"),
     LOBBY_TYPE("lobby_type"),
     HUMAN_PLAYERS("human_players"),
-    PLAYER_DATA("player_data");
+    PLAYER_DATA("player_data"),
+    MATCH_SUMMARY("match_summary");
 
     private final String name;
     Columns(String name) { this.name = name; }
@@ -282,8 +283,11 @@ public final class DotaValues {
     private final int rawValue;
     GameMode(int rawValue) { this.rawValue = rawValue; }
 
+    // values() clones the array on every call
+    private static final GameMode[] VALUES = values();
+
     public static GameMode fromInt(int i) {
-      return GameMode.values()[i];
+      return VALUES[i];
     }
 
     public static boolean seriousGame(GameMode gameMode) {
@@ -302,9 +306,10 @@ public final class DotaValues {
     LobbyType(int rawValue) { this.rawValue = rawValue; }
     public int getEncoding() { return rawValue; }
 
-    public static LobbyType fromInt(Integer i) {
+    private static final LobbyType[] VALUES = values();
 
-      return LobbyType.values()[i + 1];
+    public static LobbyType fromInt(Integer i) {
+      return VALUES[i + 1];
     }
 
     public static boolean seriousLobby(LobbyType lobbyType) {
@@ -335,8 +340,10 @@ public final class DotaValues {
     LeaverStatus(Integer rawValue) { this.rawValue = rawValue; }
     public Integer getEncoding() { return rawValue; }
 
+    private static final LeaverStatus[] VALUES = values();
+
     public static LeaverStatus fromInt(Integer i) {
-      return (i == null ? LeaverStatus.BOT : LeaverStatus.values()[i]);
+      return (i == null ? LeaverStatus.BOT : VALUES[i]);
     }
   }
 
@@ -351,8 +358,10 @@ public final class DotaValues {
     public final int rawValue;
     ItemSlot(Integer rawValue) { this.rawValue = rawValue; }
 
+    private static final ItemSlot[] VALUES = values();
+
     public static ItemSlot getItemSlot(int num) {
-      return ItemSlot.values()[num];
+      return VALUES[num];
     }
   }
 }
@@ -0,0 +1,44 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota;
+
+import org.kiji.schema.EntityId;
+
+import java.io.IOException;
+
+/**
+ * A MatchCellSink that encodes values before writing them, and can be given bytes it
+ * encoded earlier so a value written to many rows, such as the match level values each
+ * player in a match gets, is only encoded once.
+ */
+public interface EncodedCellSink extends MatchCellSink {
+
+  /**
+   * Encodes value the way it would be stored in family:qualifier. The returned bytes
+   * might be shared and should not be modified.
+   */
+  public byte[] encode(String family, String qualifier, Object value) throws IOException;
+
+  /**
+   * Writes a single cell holding bytes returned by encode for the same column.
+   */
+  public void putEncoded(EntityId eid, String family, String qualifier, long timestamp,
+                         byte[] encoded) throws IOException;
+}
@@ -0,0 +1,232 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The index of a match dump written as a series of independent gzip members, as
+ * RechunkMatchDumps does. The index is stored next to the dump in a text file with the
+ * same name plus ".idx", with one line per a member of the form:
+ *
+ * <offset> <compressed length> <first match_seq_num> <last match_seq_num> <lines>
+ *
+ * Each member can be decompressed on its own, which lets the dump be split between tasks.
+ */
+public class GzipChunkIndex {
+
+  /** Suffix of the index file of a dump. */
+  public static final String INDEX_SUFFIX = ".idx";
+
+  // Finds the match_seq_num of a raw line without parsing it
+  private static final Pattern SEQ_NUM = Pattern.compile("\"match_seq_num\"\\s*:\\s*(\\d+)");
+
+  /**
+   * A single gzip member of a dump.
+   */
+  public static class Member {
+    public final long offset;
+    public final long length;
+    public final long firstSeqNum;
+    public final long lastSeqNum;
+    public final int lines;
+
+    public Member(long offset, long length, long firstSeqNum, long lastSeqNum, int lines) {
+      this.offset = offset;
+      this.length = length;
+      this.firstSeqNum = firstSeqNum;
+      this.lastSeqNum = lastSeqNum;
+      this.lines = lines;
+    }
+  }
+
+  /**
+   * InputStream that reads at most a fixed number of bytes from the underlying stream.
+   */
+  static class LimitedInputStream extends FilterInputStream {
+
+    private long mRemaining;
+
+    LimitedInputStream(InputStream in, long limit) {
+      super(in);
+      mRemaining = limit;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if(mRemaining <= 0) {
+        return -1;
+      }
+      final int b = super.read();
+      if(b >= 0) {
+        mRemaining--;
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if(mRemaining <= 0) {
+        return -1;
+      }
+      final int read = super.read(b, off, (int) Math.min(len, mRemaining));
+      if(read > 0) {
+        mRemaining -= read;
+      }
+      return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      final long skipped = super.skip(Math.min(n, mRemaining));
+      mRemaining -= skipped;
+      return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+      return (int) Math.min(super.available(), mRemaining);
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+
+    @Override
+    public void close() {
+      // The underlying stream is shared between members, it is closed by its owner
+    }
+  }
+
+  private final List<Member> mMembers;
+
+  public GzipChunkIndex(List<Member> members) {
+    mMembers = members;
+  }
+
+  /**
+   * @return the members of the dump in file order.
+   */
+  public List<Member> getMembers() {
+    return mMembers;
+  }
+
+  /**
+   * @param dump, the path to a dump.
+   * @return the path of dump's index.
+   */
+  public static Path indexPath(Path dump) {
+    return dump.suffix(INDEX_SUFFIX);
+  }
+
+  /**
+   * @param path, the path to check.
+   * @return true if path is the path to an index rather than a dump.
+   */
+  public static boolean isIndex(Path path) {
+    return path.getName().endsWith(INDEX_SUFFIX);
+  }
+
+  /**
+   * @param line, a raw line of match JSON.
+   * @return the match_seq_num of line, or -1 if it could not be found.
+   */
+  public static long seqNum(String line) {
+    final Matcher m = SEQ_NUM.matcher(line);
+    return m.find() ? Long.parseLong(m.group(1)) : -1;
+  }
+
+  /**
+   * Loads the index of a dump.
+   *
+   * @param fs, the filesystem the dump is on.
+   * @param dump, the path to the dump.
+   * @return the index, or null if the dump has no index.
+   * @throws IOException if the index could not be read.
+   */
+  public static GzipChunkIndex load(FileSystem fs, Path dump) throws IOException {
+    final Path indexPath = indexPath(dump);
+    if(!fs.exists(indexPath)) {
+      return null;
+    }
+    final BufferedReader reader =
+        new BufferedReader(new InputStreamReader(fs.open(indexPath), "UTF-8"));
+    final List<Member> members = new ArrayList<Member>();
+    try {
+      String line;
+      while((line = reader.readLine()) != null) {
+        if(line.trim().isEmpty()) {
+          continue;
+        }
+        final String[] parts = line.trim().split("\\s+");
+        if(parts.length != 5) {
+          throw new IOException("Malformed line in " + indexPath + ": " + line);
+        }
+        members.add(new Member(Long.parseLong(parts[0]), Long.parseLong(parts[1]),
+            Long.parseLong(parts[2]), Long.parseLong(parts[3]), Integer.parseInt(parts[4])));
+      }
+    } finally {
+      reader.close();
+    }
+    return new GzipChunkIndex(members);
+  }
+
+  /**
+   * Writes this index in the text format described above.
+   */
+  public void write(OutputStream out) throws IOException {
+    final Writer writer = new OutputStreamWriter(out, "UTF-8");
+    for(Member member : mMembers) {
+      writer.write(member.offset + " " + member.length + " " + member.firstSeqNum + " " +
+          member.lastSeqNum + " " + member.lines + "\n");
+    }
+    writer.flush();
+  }
+
+  /**
+   * Opens a stream of the decompressed content of a single member.
+   *
+   * @param in, a stream of the dump, the returned stream reads from it and does not close it.
+   * @param member, the member to read.
+   * @return the decompressed lines of member.
+   * @throws IOException if the member could not be read.
+   */
+  public static InputStream openMember(FSDataInputStream in, Member member) throws IOException {
+    in.seek(member.offset);
+    return new GZIPInputStream(new LimitedInputStream(in, member.length));
+  }
+}
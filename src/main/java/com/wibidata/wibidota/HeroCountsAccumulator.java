@@ -0,0 +1,75 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota;
+
+import org.apache.hadoop.conf.Configuration;
+import org.kiji.mapreduce.KijiContext;
+
+import java.io.IOException;
+
+/**
+ * Counts the games each player played and won with each hero, as HeroPicks and
+ * GetHeroSkillTuples do. Emits "hero" keyed by "<account_id>\t<hero_id>" with counts of
+ * [games, wins], once per player and hero. That is a record for every hero each player used, too
+ * many for the combiner to shrink, so it is not one of PlayerTimeline's default accumulators; list
+ * it alone in wibidota.timeline.accumulators to write the counts to their own output.
+ */
+public class HeroCountsAccumulator implements TimelineAccumulator {
+
+  public static final String STATISTIC = "hero";
+
+  // Hero ids are small, they all fit in the dense arrays
+  private static final int MAX_HERO_ID = 127;
+
+  private final IntCountsMap mCounts = new IntCountsMap(2, 0, MAX_HERO_ID);
+  private Output mOut;
+  private IntCountsMap.Visitor mEmitter;
+  private int mAccountId;
+
+  public void setup(Configuration conf, Output out) {
+    mOut = out;
+    mEmitter = new IntCountsMap.Visitor() {
+      public void visit(int hero, long[] counts) throws IOException {
+        mOut.emit(STATISTIC, mAccountId + "\t" + hero, counts);
+      }
+    };
+  }
+
+  public void startPlayer(int accountId) {
+    mAccountId = accountId;
+  }
+
+  public void game(PlayerGame game) {
+    if(game.isBurnIn()) {
+      return;
+    }
+    mCounts.add(game.getHeroId(), 0, 1);
+    if(game.isWin()) {
+      mCounts.add(game.getHeroId(), 1, 1);
+    }
+  }
+
+  public void endPlayer() throws IOException {
+    mCounts.forEach(mEmitter);
+    mCounts.clear();
+  }
+
+  public void cleanup(KijiContext context) {}
+}
@@ -0,0 +1,60 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota;
+
+import org.apache.hadoop.io.Text;
+import org.kiji.mapreduce.KijiReducer;
+
+import java.io.IOException;
+
+/**
+ * Merges the partial HistogramWritables DotaValueHistogram emits for each key. Since the input
+ * and output types match it can be used as both the combiner and the reducer, with text output
+ * each histogram is written in the form HistogramWritable.toString describes.
+ */
+public class HistogramReducer extends KijiReducer<Text, HistogramWritable,
+    Text, HistogramWritable> {
+
+  private final HistogramWritable mMerged = new HistogramWritable();
+
+  @Override
+  protected void reduce(Text key, Iterable<HistogramWritable> values, Context context)
+      throws IOException, InterruptedException {
+    boolean first = true;
+    for(HistogramWritable histogram : values) {
+      if(first) {
+        mMerged.reset(histogram.isSketched(), histogram.getAccuracy());
+        first = false;
+      }
+      mMerged.merge(histogram);
+    }
+    context.write(key, mMerged);
+  }
+
+  @Override
+  public Class<?> getOutputKeyClass() {
+    return Text.class;
+  }
+
+  @Override
+  public Class<?> getOutputValueClass() {
+    return HistogramWritable.class;
+  }
+}
@@ -0,0 +1,193 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A partial histogram of a column as emitted by DotaValueHistogram. Either exact counts of
+ * each int value, or a QuantileSketch of a continuous column. Both count the cells that had
+ * no value. Written compactly, the counts as variable length value and count pairs, and
+ * merged with merge. Instances can be reused with reset.
+ */
+public class HistogramWritable implements Writable {
+
+  // Values in this range, which covers game modes, lobbies and clusters, are held densely
+  private static final int DENSE_VALUES = 255;
+
+  private static final double[] QUANTILES = new double[] {0.1, 0.25, 0.5, 0.75, 0.9, 0.99};
+
+  private boolean mSketched = false;
+  private long mNulls = 0;
+  private final IntCountsMap mCounts = new IntCountsMap(1, 0, DENSE_VALUES);
+  private final QuantileSketch mSketch = new QuantileSketch();
+
+  private final IntCountsMap.Visitor mMerger = new IntCountsMap.Visitor() {
+    public void visit(int value, long[] counts) {
+      mCounts.add(value, 0, counts[0]);
+    }
+  };
+
+  /**
+   * Empties the histogram.
+   *
+   * @param sketched, true to sketch continuous values, false to count int values.
+   * @param accuracy, the relative accuracy of the sketch.
+   */
+  public void reset(boolean sketched, double accuracy) {
+    mSketched = sketched;
+    mNulls = 0;
+    mCounts.clear();
+    mSketch.reset(accuracy);
+  }
+
+  public boolean isSketched() {
+    return mSketched;
+  }
+
+  /**
+   * @return the relative accuracy of the sketch.
+   */
+  public double getAccuracy() {
+    return mSketch.getAccuracy();
+  }
+
+  public void addNull() {
+    mNulls++;
+  }
+
+  /**
+   * Counts value, the histogram must not be sketched.
+   */
+  public void add(int value) {
+    mCounts.add(value, 0, 1);
+  }
+
+  /**
+   * Adds value to the sketch, the histogram must be sketched.
+   */
+  public void add(double value) {
+    mSketch.add(value);
+  }
+
+  /**
+   * Adds the counts of other, which must be of the same kind, to this histogram.
+   */
+  public void merge(HistogramWritable other) throws IOException {
+    if(other.mSketched != mSketched) {
+      throw new IllegalArgumentException("Can not merge counts with a sketch");
+    }
+    mNulls += other.mNulls;
+    if(mSketched) {
+      mSketch.merge(other.mSketch);
+    } else {
+      other.mCounts.forEach(mMerger);
+    }
+  }
+
+  /**
+   * @return roughly the number of bytes the histogram takes up.
+   */
+  public long estimatedBytes() {
+    return mCounts.estimatedBytes() + mSketch.estimatedBytes();
+  }
+
+  public void write(final DataOutput out) throws IOException {
+    out.writeBoolean(mSketched);
+    WritableUtils.writeVLong(out, mNulls);
+    if(mSketched) {
+      mSketch.write(out);
+      return;
+    }
+    WritableUtils.writeVInt(out, mCounts.size());
+    mCounts.forEach(new IntCountsMap.Visitor() {
+      public void visit(int value, long[] counts) throws IOException {
+        WritableUtils.writeVInt(out, value);
+        WritableUtils.writeVLong(out, counts[0]);
+      }
+    });
+  }
+
+  public void readFields(DataInput in) throws IOException {
+    mSketched = in.readBoolean();
+    mNulls = WritableUtils.readVLong(in);
+    mCounts.clear();
+    if(mSketched) {
+      mSketch.readFields(in);
+      return;
+    }
+    final int values = WritableUtils.readVInt(in);
+    for(int i = 0; i < values; i++) {
+      final int value = WritableUtils.readVInt(in);
+      mCounts.add(value, 0, WritableUtils.readVLong(in));
+    }
+  }
+
+  /**
+   * Formats the histogram as space separated <value>=<count> pairs in order of value, or
+   * for a sketch the count, min, quantiles and max, followed by null=<count> if any cells
+   * had no value.
+   */
+  @Override
+  public String toString() {
+    final StringBuilder sb = new StringBuilder();
+    try {
+      if(mSketched) {
+        sb.append("count=").append(mSketch.getCount());
+        if(mSketch.getCount() > 0) {
+          sb.append(" min=").append(mSketch.getMin());
+          for(double q : QUANTILES) {
+            sb.append(" p").append((int) Math.round(q * 100)).append('=')
+                .append(mSketch.quantile(q));
+          }
+          sb.append(" max=").append(mSketch.getMax());
+        }
+      } else {
+        final int[] values = new int[mCounts.size()];
+        mCounts.forEach(new IntCountsMap.Visitor() {
+          private int mNext = 0;
+          public void visit(int value, long[] counts) {
+            values[mNext++] = value;
+          }
+        });
+        Arrays.sort(values);
+        for(int value : values) {
+          if(sb.length() > 0) {
+            sb.append(' ');
+          }
+          sb.append(value).append('=').append(mCounts.get(value, 0));
+        }
+      }
+    } catch (IOException e) {
+      // The visitors above don't do any IO
+      throw new IllegalStateException(e);
+    }
+    if(mNulls > 0) {
+      sb.append(sb.length() > 0 ? " " : "").append("null=").append(mNulls);
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,220 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.BlockLocation;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+import org.apache.hadoop.util.LineReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Reads lines from match dumps written by RechunkMatchDumps. Each dump with an index is split
+ * along the boundaries of its gzip members, grouping consecutive members into splits of about
+ * the usual split size. Dumps without an index are read whole, as TextInputFormat would read
+ * a gzip file, and index files themselves are skipped. Keys are the offset of the gzip member
+ * the line came from.
+ */
+public class IndexedGzipInputFormat extends FileInputFormat<LongWritable, Text> {
+
+  /** Configuration key to read the input of the jobs with this format instead of as text. */
+  public static final String INDEXED_INPUT_KEY = "wibidota.input.indexed_gzip";
+
+  /**
+   * Sets the input format of job to IndexedGzipInputFormat if wibidota.input.indexed_gzip is
+   * set, TextInputFormat otherwise. If a watermark file is set dumps entirely below the
+   * watermark are skipped, see SeqNumWatermark.
+   */
+  public static void configureInput(Job job) {
+    if(job.getConfiguration().getBoolean(INDEXED_INPUT_KEY, false)) {
+      job.setInputFormatClass(IndexedGzipInputFormat.class);
+    } else {
+      job.setInputFormatClass(TextInputFormat.class);
+    }
+    if(job.getConfiguration().get(SeqNumWatermark.WATERMARK_FILE_KEY) != null) {
+      FileInputFormat.setInputPathFilter(job, SeqNumWatermark.NewerDumpsFilter.class);
+    }
+  }
+
+  @Override
+  protected List<FileStatus> listStatus(JobContext job) throws IOException {
+    final List<FileStatus> files = new ArrayList<FileStatus>();
+    for(FileStatus status : super.listStatus(job)) {
+      if(!GzipChunkIndex.isIndex(status.getPath())) {
+        files.add(status);
+      }
+    }
+    return files;
+  }
+
+  @Override
+  public List<InputSplit> getSplits(JobContext job) throws IOException {
+    final Configuration conf = job.getConfiguration();
+    final List<InputSplit> splits = new ArrayList<InputSplit>();
+    for(FileStatus file : listStatus(job)) {
+      final Path path = file.getPath();
+      final FileSystem fs = path.getFileSystem(conf);
+      final BlockLocation[] blocks = fs.getFileBlockLocations(file, 0, file.getLen());
+      final GzipChunkIndex index = GzipChunkIndex.load(fs, path);
+      if(index == null || index.getMembers().isEmpty()) {
+        splits.add(new FileSplit(path, 0, file.getLen(),
+            blocks.length == 0 ? new String[0] : blocks[0].getHosts()));
+        continue;
+      }
+
+      final long splitSize = computeSplitSize(file.getBlockSize(),
+          getMinSplitSize(job), getMaxSplitSize(job));
+      long start = -1;
+      long length = 0;
+      for(GzipChunkIndex.Member member : index.getMembers()) {
+        if(start < 0) {
+          start = member.offset;
+        }
+        length = member.offset + member.length - start;
+        if(length >= splitSize) {
+          splits.add(new FileSplit(path, start, length,
+              blocks[getBlockIndex(blocks, start)].getHosts()));
+          start = -1;
+        }
+      }
+      if(start >= 0) {
+        splits.add(new FileSplit(path, start, length,
+            blocks[getBlockIndex(blocks, start)].getHosts()));
+      }
+    }
+    return splits;
+  }
+
+  @Override
+  public RecordReader<LongWritable, Text> createRecordReader(InputSplit split,
+                                                             TaskAttemptContext context) {
+    return new IndexedGzipRecordReader();
+  }
+
+  /**
+   * Reads the lines of the gzip members that start within a split, each member with its own
+   * decompressor.
+   */
+  static class IndexedGzipRecordReader extends RecordReader<LongWritable, Text> {
+
+    private Configuration mConf;
+    private FSDataInputStream mIn;
+    private Iterator<GzipChunkIndex.Member> mMembers;
+    private int mMembersTotal;
+    private int mMembersRead = 0;
+    private LineReader mLines;
+    private long mMemberOffset;
+    private final LongWritable mKey = new LongWritable();
+    private final Text mValue = new Text();
+
+    @Override
+    public void initialize(InputSplit genericSplit, TaskAttemptContext context)
+        throws IOException {
+      final FileSplit split = (FileSplit) genericSplit;
+      mConf = context.getConfiguration();
+      final Path path = split.getPath();
+      final FileSystem fs = path.getFileSystem(mConf);
+      final GzipChunkIndex index = GzipChunkIndex.load(fs, path);
+      mIn = fs.open(path);
+
+      final List<GzipChunkIndex.Member> members = new ArrayList<GzipChunkIndex.Member>();
+      if(index == null || index.getMembers().isEmpty()) {
+        // Read the whole file, decompressing it as TextInputFormat would
+        final CompressionCodec codec = new CompressionCodecFactory(mConf).getCodec(path);
+        final InputStream in = (codec == null ? mIn : codec.createInputStream(mIn));
+        mLines = new LineReader(in, mConf);
+        mMemberOffset = 0;
+        mMembersTotal = 1;
+      } else {
+        final long end = split.getStart() + split.getLength();
+        for(GzipChunkIndex.Member member : index.getMembers()) {
+          if(member.offset >= split.getStart() && member.offset < end) {
+            members.add(member);
+          }
+        }
+        mMembersTotal = members.size();
+      }
+      mMembers = members.iterator();
+    }
+
+    @Override
+    public boolean nextKeyValue() throws IOException {
+      while(true) {
+        if(mLines != null) {
+          if(mLines.readLine(mValue) > 0) {
+            mKey.set(mMemberOffset);
+            return true;
+          }
+          mLines.close();
+          mLines = null;
+          mMembersRead++;
+        }
+        if(!mMembers.hasNext()) {
+          return false;
+        }
+        final GzipChunkIndex.Member member = mMembers.next();
+        mMemberOffset = member.offset;
+        mLines = new LineReader(GzipChunkIndex.openMember(mIn, member), mConf);
+      }
+    }
+
+    @Override
+    public LongWritable getCurrentKey() {
+      return mKey;
+    }
+
+    @Override
+    public Text getCurrentValue() {
+      return mValue;
+    }
+
+    @Override
+    public float getProgress() {
+      return mMembersTotal == 0 ? 1.0f : Math.min(1.0f, (float) mMembersRead / mMembersTotal);
+    }
+
+    @Override
+    public void close() throws IOException {
+      if(mIn != null) {
+        mIn.close();
+      }
+    }
+  }
+}
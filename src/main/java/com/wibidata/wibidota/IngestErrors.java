@@ -0,0 +1,195 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota;
+
+import com.google.gson.JsonParseException;
+import org.apache.avro.AvroRuntimeException;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Tracks the lines an import task failed to read. By default a failure is logged and rethrown,
+ * failing the task. If wibidota.importer.tolerate_errors is set failures are instead counted
+ * by ErrorType and the lines written to a quarantine file, one per a task attempt, in
+ * wibidota.importer.quarantine_dir of the form:
+ *
+ * <match_id>  <ErrorType>  <Message>  <Line>
+ *
+ * with -1 as the match id if none could be found. The task still fails once more than
+ * wibidota.importer.max_error_rate of its lines have failed, checked once it has read at least
+ * wibidota.importer.error_rate_min_lines lines. Note retried or speculative attempts of a task
+ * each write their own quarantine file, so the same line can be quarantined more than once.
+ */
+public class IngestErrors implements Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(IngestErrors.class);
+
+  /** Configuration key, if true bad lines are quarantined rather than failing the task. */
+  public static final String TOLERATE_ERRORS_KEY = "wibidota.importer.tolerate_errors";
+
+  /** Configuration key for the fraction of lines that can fail before the task fails. */
+  public static final String MAX_ERROR_RATE_KEY = "wibidota.importer.max_error_rate";
+
+  /** Configuration key for the number of lines to read before checking the error rate. */
+  public static final String MIN_LINES_KEY = "wibidota.importer.error_rate_min_lines";
+
+  /** Configuration key for the directory to write the quarantine files to. */
+  public static final String QUARANTINE_DIR_KEY = "wibidota.importer.quarantine_dir";
+
+  private static final float DEFAULT_MAX_ERROR_RATE = 0.01f;
+
+  private static final int DEFAULT_MIN_LINES = 1000;
+
+  private static final String DEFAULT_QUARANTINE_DIR = "wibidota_quarantine";
+
+  // Finds the match_id of a raw line without parsing it
+  private static final Pattern MATCH_ID = Pattern.compile("\"match_id\"\\s*:\\s*(\\d+)");
+
+  /**
+   * The kinds of failure, also used as the counters.
+   */
+  public static enum ErrorType {
+    MALFORMED_JSON, // The line was not valid JSON
+    MISSING_FIELD,  // A required field was missing
+    BAD_VALUE,      // A field held a value of the wrong type
+    OTHER
+  }
+
+  private final Configuration mConf;
+  private final boolean mTolerant;
+  private final float mMaxErrorRate;
+  private final int mMinLines;
+  private long mLines = 0;
+  private long mErrors = 0;
+  private Writer mQuarantine = null;
+
+  public IngestErrors(Configuration conf) {
+    mConf = conf;
+    mTolerant = conf.getBoolean(TOLERATE_ERRORS_KEY, false);
+    mMaxErrorRate = conf.getFloat(MAX_ERROR_RATE_KEY, DEFAULT_MAX_ERROR_RATE);
+    mMinLines = conf.getInt(MIN_LINES_KEY, DEFAULT_MIN_LINES);
+    LOG.info(TOLERATE_ERRORS_KEY + " set to: " + mTolerant);
+  }
+
+  /**
+   * @param line, a raw line of match JSON.
+   * @return the match_id of line, or -1 if it could not be found.
+   */
+  public static long matchId(Text line) {
+    final Matcher m = MATCH_ID.matcher(line.toString());
+    return m.find() ? Long.parseLong(m.group(1)) : -1;
+  }
+
+  /**
+   * @param e, the exception thrown reading a line.
+   * @return the kind of failure e indicates.
+   */
+  public static ErrorType classify(Exception e) {
+    if(e instanceof IOException || e instanceof JsonParseException) {
+      // The streaming parser throws IOExceptions on malformed input
+      return ErrorType.MALFORMED_JSON;
+    } else if(e instanceof NullPointerException || e instanceof AvroRuntimeException) {
+      // A field missing from a JsonObject, or a record built without a required field
+      return ErrorType.MISSING_FIELD;
+    } else if(e instanceof IllegalStateException && e.getMessage() != null &&
+        e.getMessage().startsWith("Field ")) {
+      // The streaming parser's missing field check
+      return ErrorType.MISSING_FIELD;
+    } else if(e instanceof IllegalStateException || e instanceof NumberFormatException ||
+        e instanceof ClassCastException || e instanceof UnsupportedOperationException ||
+        e instanceof IllegalArgumentException) {
+      return ErrorType.BAD_VALUE;
+    }
+    return ErrorType.OTHER;
+  }
+
+  /**
+   * Records a line being read, call once per a line.
+   */
+  public void lineRead() {
+    mLines++;
+  }
+
+  private void quarantine(Text line, ErrorType type, Exception e) throws IOException {
+    if(mQuarantine == null) {
+      final Path path = TaskFiles.taskFile(mConf,
+          new Path(mConf.get(QUARANTINE_DIR_KEY, DEFAULT_QUARANTINE_DIR)));
+      final FSDataOutputStream out = path.getFileSystem(mConf).create(path, true);
+      mQuarantine = new OutputStreamWriter(out, "UTF-8");
+      LOG.info("Quarantining bad lines to " + path);
+    }
+    mQuarantine.write(matchId(line) + "\t" + type + "\t" +
+        String.valueOf(e.getMessage()).replace('\t', ' ').replace('\n', ' ') + "\t" + line + "\n");
+  }
+
+  /**
+   * Handles a line that could not be read. Rethrows e unless errors are tolerated.
+   *
+   * @param line, the line that failed.
+   * @param e, the exception reading it.
+   * @return the kind of failure, to be counted by the caller.
+   * @throws IOException if e is an IOException and errors are not tolerated, if the error
+   *     rate has been exceeded, or if the line could not be quarantined.
+   */
+  public ErrorType failed(Text line, Exception e) throws IOException {
+    if(!mTolerant) {
+      // For RunetimeExceptions we try to log additional information for debugging purposes
+      LOG.error("Runtime Exception! " +
+          "\nLine\n" + line + "\nMessage:\n" + e.toString());
+      if(e instanceof RuntimeException) {
+        throw (RuntimeException) e;
+      }
+      throw (IOException) e;
+    }
+
+    final ErrorType type = classify(e);
+    mErrors++;
+    quarantine(line, type, e);
+    if(mLines >= mMinLines && mErrors > mMaxErrorRate * mLines) {
+      throw new IOException("Failed to read " + mErrors + " of " + mLines + " lines, more than " +
+          MAX_ERROR_RATE_KEY + "=" + mMaxErrorRate + ", last error: " + e.toString());
+    }
+    return type;
+  }
+
+  /**
+   * Closes the quarantine file if one was opened.
+   */
+  public void close() throws IOException {
+    if(mQuarantine != null) {
+      mQuarantine.close();
+      mQuarantine = null;
+    }
+    if(mErrors > 0) {
+      LOG.warn("Quarantined " + mErrors + " of " + mLines + " lines");
+    }
+  }
+}
@@ -0,0 +1,214 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Map from int keys to a fixed number (the width) of long counts, without boxing. Keys in an
+ * optional dense range [denseMin, denseMax] are held in plain arrays indexed by the key, all
+ * other keys in an open addressing hash table with linear probing. Used by PartialCounts to
+ * aggregate in the mapper.
+ */
+public class IntCountsMap {
+
+  /**
+   * Called with each key and its counts by forEach. counts is reused between calls.
+   */
+  public interface Visitor {
+    public void visit(int key, long[] counts) throws IOException;
+  }
+
+  private static final int INITIAL_CAPACITY = 64;
+
+  private final int mWidth;
+
+  // The dense range, empty if mDenseMax < mDenseMin
+  private final int mDenseMin;
+  private final int mDenseMax;
+  private final boolean[] mDenseUsed;
+  private final long[] mDenseCounts;
+  private int mDenseSize = 0;
+
+  // The hash table, counts of the key in slot s are at [s * width, (s + 1) * width)
+  private int[] mKeys;
+  private boolean[] mUsed;
+  private long[] mCounts;
+  private int mSize = 0;
+
+  /**
+   * @param width, the number of counts per key.
+   */
+  public IntCountsMap(int width) {
+    this(width, 0, -1);
+  }
+
+  /**
+   * @param width, the number of counts per key.
+   * @param denseMin, the smallest key held in the dense arrays.
+   * @param denseMax, the largest key held in the dense arrays.
+   */
+  public IntCountsMap(int width, int denseMin, int denseMax) {
+    mWidth = width;
+    mDenseMin = denseMin;
+    mDenseMax = denseMax;
+    final int dense = Math.max(0, denseMax - denseMin + 1);
+    mDenseUsed = new boolean[dense];
+    mDenseCounts = new long[dense * width];
+    allocate(INITIAL_CAPACITY);
+  }
+
+  private void allocate(int capacity) {
+    mKeys = new int[capacity];
+    mUsed = new boolean[capacity];
+    mCounts = new long[capacity * mWidth];
+  }
+
+  private static int hash(int key) {
+    final int h = key * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  // Returns the slot of key, claiming a free slot for it if it is not present
+  private int slot(int key) {
+    final int mask = mKeys.length - 1;
+    int s = hash(key) & mask;
+    while(mUsed[s]) {
+      if(mKeys[s] == key) {
+        return s;
+      }
+      s = (s + 1) & mask;
+    }
+    mUsed[s] = true;
+    mKeys[s] = key;
+    mSize++;
+    return s;
+  }
+
+  private void grow() {
+    final int[] keys = mKeys;
+    final boolean[] used = mUsed;
+    final long[] counts = mCounts;
+    allocate(keys.length * 2);
+    mSize = 0;
+    for(int s = 0; s < keys.length; s++) {
+      if(used[s]) {
+        System.arraycopy(counts, s * mWidth, mCounts, slot(keys[s]) * mWidth, mWidth);
+      }
+    }
+  }
+
+  private boolean dense(int key) {
+    return key >= mDenseMin && key <= mDenseMax;
+  }
+
+  /**
+   * Adds delta to a count of key.
+   *
+   * @param key, the key.
+   * @param column, which of the key's counts to add to, less than the width.
+   * @param delta, the amount to add.
+   */
+  public void add(int key, int column, long delta) {
+    if(dense(key)) {
+      final int i = key - mDenseMin;
+      if(!mDenseUsed[i]) {
+        mDenseUsed[i] = true;
+        mDenseSize++;
+      }
+      mDenseCounts[i * mWidth + column] += delta;
+      return;
+    }
+    // Keep the load factor at most 3/4
+    if(4 * (mSize + 1) > 3 * mKeys.length) {
+      grow();
+    }
+    mCounts[slot(key) * mWidth + column] += delta;
+  }
+
+  /**
+   * @return a count of key, 0 if key has never been added to.
+   */
+  public long get(int key, int column) {
+    if(dense(key)) {
+      return mDenseCounts[(key - mDenseMin) * mWidth + column];
+    }
+    final int mask = mKeys.length - 1;
+    int s = hash(key) & mask;
+    while(mUsed[s]) {
+      if(mKeys[s] == key) {
+        return mCounts[s * mWidth + column];
+      }
+      s = (s + 1) & mask;
+    }
+    return 0;
+  }
+
+  public int getWidth() {
+    return mWidth;
+  }
+
+  /**
+   * @return the number of keys that have been added to.
+   */
+  public int size() {
+    return mDenseSize + mSize;
+  }
+
+  /**
+   * @return roughly the number of bytes the map's arrays take up.
+   */
+  public long estimatedBytes() {
+    return mDenseUsed.length + 8L * mDenseCounts.length
+        + (4L + 1L + 8L * mWidth) * mKeys.length;
+  }
+
+  /**
+   * Calls visitor with every key that has been added to, dense keys in order then the rest in
+   * no particular order.
+   */
+  public void forEach(Visitor visitor) throws IOException {
+    final long[] counts = new long[mWidth];
+    for(int i = 0; i < mDenseUsed.length; i++) {
+      if(mDenseUsed[i]) {
+        System.arraycopy(mDenseCounts, i * mWidth, counts, 0, mWidth);
+        visitor.visit(mDenseMin + i, counts);
+      }
+    }
+    for(int s = 0; s < mKeys.length; s++) {
+      if(mUsed[s]) {
+        System.arraycopy(mCounts, s * mWidth, counts, 0, mWidth);
+        visitor.visit(mKeys[s], counts);
+      }
+    }
+  }
+
+  /**
+   * Removes every key and shrinks the hash table back to its initial size.
+   */
+  public void clear() {
+    Arrays.fill(mDenseUsed, false);
+    Arrays.fill(mDenseCounts, 0L);
+    mDenseSize = 0;
+    allocate(INITIAL_CAPACITY);
+    mSize = 0;
+  }
+}
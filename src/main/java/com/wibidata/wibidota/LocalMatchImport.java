@@ -0,0 +1,231 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota;
+
+import com.wibidata.wibidota.avro.Players;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses match dumps on a single machine without a cluster, writing the Players of each
+ * match to an Avro container file. Runs as three stages connected by bounded queues:
+ * a reader stage decoding the dumps (see ParallelGzipDecoder), a pool of threads parsing
+ * the lines as DotaMatchBulkImporter does, and a single writer. Matches are written in no
+ * particular order. If any stage fails the whole import is aborted.
+ *
+ * ex. kiji jar $WIBIDOTA/lib/wibi-dota-0.0.1.jar com.wibidata.wibidota.LocalMatchImport \
+ *   file:///path/to/match/files/directory/ file:///path/to/players.avro
+ */
+public class LocalMatchImport extends Configured implements Tool {
+
+  private static final Logger LOG = LoggerFactory.getLogger(LocalMatchImport.class);
+
+  /** Configuration key for the number of threads decoding the dumps. */
+  public static final String READERS_KEY = "wibidota.local.readers";
+
+  /** Configuration key for the number of threads parsing lines. */
+  public static final String PARSERS_KEY = "wibidota.local.parsers";
+
+  /** Configuration key for the capacity of each queue between the stages. */
+  public static final String QUEUE_SIZE_KEY = "wibidota.local.queue_size";
+
+  private static final int DEFAULT_READERS = 2;
+
+  private static final int DEFAULT_QUEUE_SIZE = 1024;
+
+  // Poison pills marking the end of each queue, compared by identity
+  private static final Text END_OF_LINES = new Text();
+  private static final Players END_OF_PLAYERS = new Players();
+
+  /**
+   * Decodes the dumps into the line queue, then queues one END_OF_LINES per a parser.
+   */
+  static class ReadStage implements Callable<Long> {
+
+    private final ParallelGzipDecoder mDecoder;
+    private final Path mInput;
+    private final BlockingQueue<Text> mLines;
+    private final int mParsers;
+
+    ReadStage(ParallelGzipDecoder decoder, Path input, BlockingQueue<Text> lines, int parsers) {
+      mDecoder = decoder;
+      mInput = input;
+      mLines = lines;
+      mParsers = parsers;
+    }
+
+    public Long call() throws Exception {
+      final long lines = mDecoder.decode(mDecoder.listDumps(mInput),
+          new ParallelGzipDecoder.LineHandler() {
+            public void handle(Text line) throws InterruptedException {
+              // The decoder reuses line, queue a copy
+              mLines.put(new Text(line));
+            }
+          });
+      for(int i = 0; i < mParsers; i++) {
+        mLines.put(END_OF_LINES);
+      }
+      return lines;
+    }
+  }
+
+  /**
+   * Parses lines until END_OF_LINES, then queues an END_OF_PLAYERS.
+   */
+  static class ParseStage implements Callable<Long> {
+
+    private final BlockingQueue<Text> mLines;
+    private final BlockingQueue<Players> mPlayers;
+    private final boolean mLegacyParser;
+
+    ParseStage(BlockingQueue<Text> lines, BlockingQueue<Players> players, boolean legacyParser) {
+      mLines = lines;
+      mPlayers = players;
+      mLegacyParser = legacyParser;
+    }
+
+    public Long call() throws Exception {
+      long parsed = 0;
+      Text line;
+      while((line = mLines.take()) != END_OF_LINES) {
+        try {
+          mPlayers.put(DotaMatchBulkImporter.parseMatch(line, mLegacyParser).players);
+        } catch (RuntimeException re) {
+          // For RunetimeExceptions we try to log additional information for debugging purposes
+          LOG.error("Runtime Exception! " +
+              "\nLine\n" + line + "\nMessage:\n" + re.toString());
+          throw re;
+        }
+        parsed++;
+      }
+      mPlayers.put(END_OF_PLAYERS);
+      return parsed;
+    }
+  }
+
+  /**
+   * Appends Players to the output until every parser has finished.
+   */
+  static class WriteStage implements Callable<Long> {
+
+    private final BlockingQueue<Players> mPlayers;
+    private final int mParsers;
+    private final DataFileWriter<Players> mWriter;
+
+    WriteStage(BlockingQueue<Players> players, int parsers, DataFileWriter<Players> writer) {
+      mPlayers = players;
+      mParsers = parsers;
+      mWriter = writer;
+    }
+
+    public Long call() throws Exception {
+      long written = 0;
+      int finished = 0;
+      while(finished < mParsers) {
+        final Players players = mPlayers.take();
+        if(players == END_OF_PLAYERS) {
+          finished++;
+        } else {
+          mWriter.append(players);
+          written++;
+        }
+      }
+      return written;
+    }
+  }
+
+  public static void main(String args[]) throws Exception {
+    Configuration conf = new Configuration();
+    int res = ToolRunner.run(conf, new LocalMatchImport(), args);
+    System.exit(res);
+  }
+
+  public final int run(final String[] args) throws Exception {
+    if(args.length != 2) {
+      System.err.println("Usage: LocalMatchImport <input file or directory> <output avro file>");
+      return -1;
+    }
+    final Configuration conf = getConf();
+    final int readers = conf.getInt(READERS_KEY, DEFAULT_READERS);
+    final int parsers = conf.getInt(PARSERS_KEY, Runtime.getRuntime().availableProcessors());
+    final int queueSize = conf.getInt(QUEUE_SIZE_KEY, DEFAULT_QUEUE_SIZE);
+    final boolean legacyParser = conf.getBoolean(DotaMatchBulkImporter.LEGACY_PARSER_KEY, false);
+
+    final BlockingQueue<Text> lines = new ArrayBlockingQueue<Text>(queueSize);
+    final BlockingQueue<Players> players = new ArrayBlockingQueue<Players>(queueSize);
+    final Path output = new Path(args[1]);
+    final DataFileWriter<Players> writer =
+        new DataFileWriter<Players>(new SpecificDatumWriter<Players>(Players.class));
+    writer.setCodec(CodecFactory.deflateCodec(6));
+    writer.create(Players.SCHEMA$, output.getFileSystem(conf).create(output));
+
+    final ExecutorService pool = Executors.newFixedThreadPool(parsers + 2);
+    final CompletionService<Long> stages = new ExecutorCompletionService<Long>(pool);
+    final long start = System.currentTimeMillis();
+    try {
+      stages.submit(new ReadStage(
+          new ParallelGzipDecoder(conf, readers), new Path(args[0]), lines, parsers));
+      for(int i = 0; i < parsers; i++) {
+        stages.submit(new ParseStage(lines, players, legacyParser));
+      }
+      final Future<Long> written = stages.submit(new WriteStage(players, parsers, writer));
+
+      // Wait for every stage, stopping the rest as soon as one fails
+      for(int i = 0; i < parsers + 2; i++) {
+        try {
+          stages.take().get();
+        } catch (ExecutionException e) {
+          LOG.error("Local import failed", e.getCause());
+          return -1;
+        }
+      }
+      final long elapsed = Math.max(1, System.currentTimeMillis() - start);
+      LOG.info("Wrote " + written.get() + " matches to " + output + " in " + elapsed + "ms (" +
+          written.get() * 1000 / elapsed + " matches/s)");
+      return 0;
+    } finally {
+      pool.shutdownNow();
+      // Make sure the writer stage has stopped before closing the file under it
+      pool.awaitTermination(1, TimeUnit.MINUTES);
+      writer.close();
+    }
+  }
+}
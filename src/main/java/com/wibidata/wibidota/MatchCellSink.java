@@ -0,0 +1,43 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota;
+
+import org.kiji.schema.EntityId;
+
+import java.io.IOException;
+
+/**
+ * Somewhere the cells MatchCells builds from a RawMatch can be written to, such
+ * as a KijiTableContext or a file of HFileKeyValues.
+ */
+public interface MatchCellSink {
+
+  /**
+   * @param components, the components of the row key.
+   * @return the EntityId for the row in the table this sink writes to.
+   */
+  public EntityId getEntityId(Object... components);
+
+  /**
+   * Writes a single cell.
+   */
+  public <T> void put(EntityId eid, String family, String qualifier, long timestamp, T value)
+      throws IOException;
+}
@@ -0,0 +1,221 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota;
+
+import com.wibidata.wibidota.avro.Player;
+import com.wibidata.wibidota.avro.Players;
+import org.kiji.mapreduce.KijiTableContext;
+import org.kiji.schema.EntityId;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * Builds the cells stored in the dota_matches and dota_players tables for a RawMatch.
+ * All cells are written at the timestamp the match started at.
+ */
+public final class MatchCells {
+
+  // This utility class should not be instantiated
+  private MatchCells() {}
+
+  /**
+   * @param context, the context to write to.
+   * @return a MatchCellSink that puts cells into context.
+   */
+  public static MatchCellSink contextSink(final KijiTableContext context) {
+    return new MatchCellSink() {
+      public EntityId getEntityId(Object... components) {
+        return context.getEntityId(components);
+      }
+
+      public <T> void put(EntityId eid, String family, String qualifier, long timestamp, T value)
+          throws IOException {
+        context.put(eid, family, qualifier, timestamp, value);
+      }
+    };
+  }
+
+  /**
+   * A MatchCellSink passing cells on to another sink and counting them.
+   */
+  public static class CountingSink implements MatchCellSink {
+
+    private final MatchCellSink mSink;
+    private long mCells = 0;
+
+    public CountingSink(MatchCellSink sink) {
+      mSink = sink;
+    }
+
+    public EntityId getEntityId(Object... components) {
+      return mSink.getEntityId(components);
+    }
+
+    public <T> void put(EntityId eid, String family, String qualifier, long timestamp, T value)
+        throws IOException {
+      mSink.put(eid, family, qualifier, timestamp, value);
+      mCells++;
+    }
+
+    /**
+     * @return the number of cells put since the last call, and resets the count.
+     */
+    public long takeCount() {
+      final long cells = mCells;
+      mCells = 0;
+      return cells;
+    }
+  }
+
+  /**
+   * Writes the row for match to the dota_matches table. The scalar match level values are
+   * written as a single match_summary cell, and also as individual columns if legacyColumns
+   * is set.
+   */
+  public static void writeMatchRow(RawMatch match, MatchCellSink sink, boolean legacyColumns)
+      throws IOException {
+    final long startTime = match.startTime;
+    final EntityId eid = sink.getEntityId(match.matchId);
+    sink.put(eid, "data", "player_data", startTime, match.players);
+    sink.put(eid, "data", "match_summary", startTime, MatchSummaries.fromRawMatch(match));
+    if(!legacyColumns) {
+      return;
+    }
+    sink.put(eid, "data", "dire_towers_status", startTime, match.direTowers);
+    sink.put(eid, "data", "radiant_towers_status", startTime, match.radiantTowers);
+    sink.put(eid, "data", "dire_barracks_status", startTime, match.direBarracks);
+    sink.put(eid, "data", "radiant_barracks_status", startTime, match.radiantBarracks);
+    sink.put(eid, "data", "cluster", startTime, match.cluster);
+    sink.put(eid, "data", "season", startTime, match.season);
+    sink.put(eid, "data", "match_seq_num", startTime, match.seqNum);
+    sink.put(eid, "data", "league_id", startTime, match.leagueId);
+    sink.put(eid, "data", "first_blood_time", startTime, match.firstBloodTime);
+    sink.put(eid, "data", "negative_votes", startTime, match.negativeVotes);
+    sink.put(eid, "data", "positive_votes", startTime, match.positiveVotes);
+    sink.put(eid, "data", "duration", startTime, match.duration);
+    sink.put(eid, "data", "radiant_win", startTime, match.radiantWin);
+    sink.put(eid, "data", "game_mode", startTime, match.gameMode);
+    sink.put(eid, "data", "lobby_type", startTime, match.lobbyType);
+    sink.put(eid, "data", "human_players", startTime, match.humanPlayers);
+  }
+
+  // Match level columns written to every player's row in the dota_players table, in the
+  // same order as the values returned by playerMatchValues
+  private static final String[] PLAYER_MATCH_COLUMNS = new String[] {
+      "match_id", "dire_towers_status", "radiant_towers_status", "dire_barracks_status",
+      "radiant_barracks_status", "cluster", "season", "match_seq_num", "league_id",
+      "first_blood_time", "negative_votes", "positive_votes", "duration", "radiant_win",
+      "game_mode", "lobby_type", "human_players"
+  };
+
+  /**
+   * @return the match level values written to each player's row, boxed once per match.
+   */
+  private static Object[] playerMatchValues(RawMatch match) {
+    return new Object[] {
+        match.matchId, match.direTowers, match.radiantTowers, match.direBarracks,
+        match.radiantBarracks, match.cluster, match.season, match.seqNum, match.leagueId,
+        match.firstBloodTime, match.negativeVotes, match.positiveVotes, match.duration,
+        match.radiantWin, match.gameMode, match.lobbyType, match.humanPlayers
+    };
+  }
+
+  /**
+   * Read only view of a list of players with a single player left out.
+   */
+  static class OtherPlayers extends AbstractList<Player> {
+    private final List<Player> mPlayers;
+    private final int mExcluded;
+
+    OtherPlayers(List<Player> players, int excluded) {
+      mPlayers = players;
+      mExcluded = excluded;
+    }
+
+    @Override
+    public Player get(int index) {
+      return mPlayers.get(index < mExcluded ? index : index + 1);
+    }
+
+    @Override
+    public int size() {
+      return mPlayers.size() - 1;
+    }
+  }
+
+  /**
+   * Pivots match on to its non-anonymous players and writes a row
+   * for each of them to the dota_players table. match is not modified.
+   */
+  public static void writePlayerRows(RawMatch match, MatchCellSink sink) throws IOException {
+    final long startTime = match.startTime;
+    final List<Player> allPlayers = match.players.getPlayers();
+    Object[] matchValues = null;
+    for(int i = 0; i < allPlayers.size(); i++) {
+      final Player player = allPlayers.get(i);
+      if(!DotaValues.nonAnonPlayer(player.getAccountId())) {
+        continue;
+      }
+      if(matchValues == null) {
+        matchValues = playerMatchValues(match);
+      }
+      final EntityId eid = sink.getEntityId(player.getAccountId());
+      for(int c = 0; c < PLAYER_MATCH_COLUMNS.length; c++) {
+        sink.put(eid, "data", PLAYER_MATCH_COLUMNS[c], startTime, matchValues[c]);
+      }
+      // Each row gets its own Players so nothing is mutated after being handed to the sink
+      sink.put(eid, "data", "other_players", startTime,
+          new Players(new OtherPlayers(allPlayers, i)));
+      sink.put(eid, "data", "player", startTime, player);
+    }
+  }
+
+  /**
+   * Like writePlayerRows, but the match level values are encoded once per match and
+   * the same bytes written to each player's row.
+   */
+  public static void writePlayerRows(RawMatch match, EncodedCellSink sink) throws IOException {
+    final long startTime = match.startTime;
+    final List<Player> allPlayers = match.players.getPlayers();
+    byte[][] encoded = null;
+    for(int i = 0; i < allPlayers.size(); i++) {
+      final Player player = allPlayers.get(i);
+      if(!DotaValues.nonAnonPlayer(player.getAccountId())) {
+        continue;
+      }
+      if(encoded == null) {
+        final Object[] matchValues = playerMatchValues(match);
+        encoded = new byte[PLAYER_MATCH_COLUMNS.length][];
+        for(int c = 0; c < PLAYER_MATCH_COLUMNS.length; c++) {
+          encoded[c] = sink.encode("data", PLAYER_MATCH_COLUMNS[c], matchValues[c]);
+        }
+      }
+      final EntityId eid = sink.getEntityId(player.getAccountId());
+      for(int c = 0; c < PLAYER_MATCH_COLUMNS.length; c++) {
+        sink.putEncoded(eid, "data", PLAYER_MATCH_COLUMNS[c], startTime, encoded[c]);
+      }
+      sink.put(eid, "data", "other_players", startTime,
+          new Players(new OtherPlayers(allPlayers, i)));
+      sink.put(eid, "data", "player", startTime, player);
+    }
+  }
+}
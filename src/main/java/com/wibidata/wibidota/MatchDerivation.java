@@ -0,0 +1,39 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota;
+
+/**
+ * A value derived from a single match that can be computed while the match is imported,
+ * see MatchDerivations. Values are stored in derived_data in the dota_matches table and in
+ * match_derived_data in the dota_players table, under the derivation's qualifier.
+ */
+public interface MatchDerivation {
+
+  /**
+   * @return the qualifier to store the derived values under.
+   */
+  public String getQualifier();
+
+  /**
+   * @param match, the match to derive a value from.
+   * @return the derived value, or null if match should not have one.
+   */
+  public Double derive(RawMatch match);
+}
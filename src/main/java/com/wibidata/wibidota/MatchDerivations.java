@@ -0,0 +1,150 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota;
+
+import com.wibidata.wibidota.avro.Player;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.kiji.schema.EntityId;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Runs the MatchDerivation classes listed (as a comma separated list of class names) in
+ * wibidota.importer.derivations on each imported match, so values such as real_match are
+ * written in the same pass as the raw data. Call derive once per a match, then write the
+ * values to either table.
+ */
+public class MatchDerivations {
+
+  /** Configuration key for the class names of the derivations to run. */
+  public static final String DERIVATIONS_KEY = "wibidota.importer.derivations";
+
+  private final MatchDerivation[] mDerivations;
+
+  // The values of the last match derived, null where a derivation had no value
+  private final Double[] mValues;
+
+  public MatchDerivations(Configuration conf) {
+    final Class<?>[] classes = conf.getClasses(DERIVATIONS_KEY);
+    final int n = (classes == null ? 0 : classes.length);
+    mDerivations = new MatchDerivation[n];
+    mValues = new Double[n];
+    for(int i = 0; i < n; i++) {
+      if(!MatchDerivation.class.isAssignableFrom(classes[i])) {
+        throw new IllegalArgumentException(classes[i].getName() + " in " + DERIVATIONS_KEY +
+            " is not a MatchDerivation");
+      }
+      mDerivations[i] = (MatchDerivation) ReflectionUtils.newInstance(classes[i], conf);
+    }
+  }
+
+  /**
+   * @return true if there are no derivations to run.
+   */
+  public boolean isEmpty() {
+    return mDerivations.length == 0;
+  }
+
+  /**
+   * Runs every derivation on match.
+   */
+  public void derive(RawMatch match) {
+    for(int i = 0; i < mDerivations.length; i++) {
+      mValues[i] = mDerivations[i].derive(match);
+    }
+  }
+
+  /**
+   * Writes the last derived values to derived_data in match's row of the dota_matches table.
+   *
+   * @param timestamp, the timestamp to write at, derived_data is stored at the time it was
+   *     derived.
+   */
+  public void writeMatchRow(RawMatch match, MatchCellSink sink, long timestamp)
+      throws IOException {
+    if(isEmpty()) {
+      return;
+    }
+    final EntityId eid = sink.getEntityId(match.matchId);
+    for(int i = 0; i < mDerivations.length; i++) {
+      if(mValues[i] != null) {
+        sink.put(eid, "derived_data", mDerivations[i].getQualifier(), timestamp, mValues[i]);
+      }
+    }
+  }
+
+  /**
+   * Writes the last derived values to match_derived_data in the row of each non-anonymous
+   * player of match in the dota_players table, at the time the match started.
+   */
+  public void writePlayerRows(RawMatch match, MatchCellSink sink) throws IOException {
+    if(isEmpty()) {
+      return;
+    }
+    final List<Player> players = match.players.getPlayers();
+    for(Player player : players) {
+      if(!DotaValues.nonAnonPlayer(player.getAccountId())) {
+        continue;
+      }
+      final EntityId eid = sink.getEntityId(player.getAccountId());
+      for(int i = 0; i < mDerivations.length; i++) {
+        if(mValues[i] != null) {
+          sink.put(eid, "match_derived_data", mDerivations[i].getQualifier(), match.startTime,
+              mValues[i]);
+        }
+      }
+    }
+  }
+
+  /**
+   * Like writePlayerRows, but each derived value is encoded once per match and the
+   * same bytes written to each player's row.
+   */
+  public void writePlayerRows(RawMatch match, EncodedCellSink sink) throws IOException {
+    if(isEmpty()) {
+      return;
+    }
+    byte[][] encoded = null;
+    final List<Player> players = match.players.getPlayers();
+    for(Player player : players) {
+      if(!DotaValues.nonAnonPlayer(player.getAccountId())) {
+        continue;
+      }
+      if(encoded == null) {
+        encoded = new byte[mDerivations.length][];
+        for(int i = 0; i < mDerivations.length; i++) {
+          if(mValues[i] != null) {
+            encoded[i] = sink.encode("match_derived_data", mDerivations[i].getQualifier(),
+                mValues[i]);
+          }
+        }
+      }
+      final EntityId eid = sink.getEntityId(player.getAccountId());
+      for(int i = 0; i < mDerivations.length; i++) {
+        if(encoded[i] != null) {
+          sink.putEncoded(eid, "match_derived_data", mDerivations[i].getQualifier(),
+              match.startTime, encoded[i]);
+        }
+      }
+    }
+  }
+}
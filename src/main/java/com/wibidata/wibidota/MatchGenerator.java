@@ -0,0 +1,469 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Generates synthetic match dumps for load testing, gzipped files of one JSON match per line
+ * in the format dota_slurp.py writes, named matches_<start>-<end>.gz after the range of
+ * match_seq_nums they hold. Heroes are drawn from heroes.json with a Zipf like popularity
+ * (wibidota.generator.hero_skew, 0 is uniform), items from items.json and abilities from
+ * abilities.json. Players come from a population of wibidota.generator.players accounts, also
+ * with a Zipf like skew (wibidota.generator.player_skew) so a few accounts play many matches
+ * and most only a handful, as in the real dumps. Each file is generated from its own Random
+ * derived from the seed and the file's index, so the output only depends on the settings and
+ * not on the number of threads.
+ *
+ * ex. kiji jar $WIBIDOTA/lib/wibi-dota-0.0.1.jar com.wibidata.wibidota.MatchGenerator \
+ *   -Dwibidota.generator.matches=1000000 hdfs://path/to/match/files/directory/
+ */
+public class MatchGenerator extends Configured implements Tool {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MatchGenerator.class);
+
+  /** Configuration key for the number of matches to generate. */
+  public static final String MATCHES_KEY = "wibidota.generator.matches";
+
+  /** Configuration key for the number of matches per file. */
+  public static final String MATCHES_PER_FILE_KEY = "wibidota.generator.matches_per_file";
+
+  /** Configuration key for the match_seq_num of the first match. */
+  public static final String START_SEQ_NUM_KEY = "wibidota.generator.start_seq_num";
+
+  /** Configuration key for the seed, the same seed and settings give the same files. */
+  public static final String SEED_KEY = "wibidota.generator.seed";
+
+  /** Configuration key for the exponent of the hero popularity, 0 picks heroes uniformly. */
+  public static final String HERO_SKEW_KEY = "wibidota.generator.hero_skew";
+
+  /** Configuration key for the number of distinct non-anonymous accounts matches are played by. */
+  public static final String PLAYERS_KEY = "wibidota.generator.players";
+
+  /** Configuration key for the exponent of how often each account plays, 0 is uniform. */
+  public static final String PLAYER_SKEW_KEY = "wibidota.generator.player_skew";
+
+  /** Configuration key for the chance a player abandons a match. */
+  public static final String LEAVER_RATE_KEY = "wibidota.generator.leaver_rate";
+
+  /** Configuration key for the chance a player safely leaves a match. */
+  public static final String SAFE_LEAVER_RATE_KEY = "wibidota.generator.safe_leaver_rate";
+
+  /** Configuration key for the chance a player is anonymous. */
+  public static final String ANONYMOUS_RATE_KEY = "wibidota.generator.anonymous_rate";
+
+  /** Configuration key for the number of files written at once. */
+  public static final String THREADS_KEY = "wibidota.generator.threads";
+
+  private static final long DEFAULT_MATCHES = 100000;
+  private static final int DEFAULT_MATCHES_PER_FILE = 50000;
+  private static final long DEFAULT_START_SEQ_NUM = 100000000L;
+  private static final float DEFAULT_HERO_SKEW = 1.0f;
+  private static final int DEFAULT_PLAYERS = 2000000;
+  private static final float DEFAULT_PLAYER_SKEW = 0.6f;
+  private static final float DEFAULT_LEAVER_RATE = 0.01f;
+  private static final float DEFAULT_SAFE_LEAVER_RATE = 0.02f;
+  private static final float DEFAULT_ANONYMOUS_RATE = 0.3f;
+
+  // The account_id the API gives anonymous players
+  private static final long ANONYMOUS_ACCOUNT = 4294967295L;
+
+  // Account ids are spread over [1, ACCOUNT_SPACE], the multiplier is coprime to it so each
+  // rank in the population gets a different id
+  private static final int ACCOUNT_SPACE = 150000000;
+  private static final long ACCOUNT_MULTIPLIER = 1000003L;
+
+  // Chance an item slot is empty
+  private static final double EMPTY_SLOT_RATE = 0.15;
+
+  // Chance a player has an additional unit (such as Lone Druid's bear)
+  private static final double ADDITIONAL_UNIT_RATE = 0.02;
+
+  // Chance a match has fewer than 10 human players
+  private static final double BOTS_RATE = 0.03;
+
+  // Raw game modes and lobby types, repeated by how often they are played
+  private static final int[] GAME_MODES = {1, 1, 1, 1, 1, 1, 2, 3, 4, 5, 11, 12, 14, 0, 7, 9};
+  private static final int[] LOBBY_TYPES = {0, 0, 0, 0, 0, 0, 6, 6, 1, 2, 4, 5, -1};
+  private static final int[] CLUSTERS = {111, 112, 121, 122, 131, 132, 133, 151, 152, 161, 171,
+      181, 182, 191, 200, 204, 211, 212, 221, 222, 223, 224, 227};
+
+  // Seconds between the start of one generated match and the next
+  private static final double SECONDS_PER_MATCH = 0.05;
+  private static final long FIRST_START_TIME = 1370000000L;
+  private static final long FIRST_MATCH_ID = 90000000L;
+
+  private static final String HEROES_JSON = "com/wibidata/wibidota/heroes.json";
+  private static final String ITEMS_JSON = "com/wibidata/wibidota/items.json";
+  private static final String ABILITIES_JSON = "com/wibidata/wibidota/abilities.json";
+
+  /**
+   * Reads the ids from one of the json resources DotaValues uses.
+   */
+  static int[] readIds(String resource, String container, boolean skipZero) throws IOException {
+    final InputStream in = MatchGenerator.class.getClassLoader().getResourceAsStream(resource);
+    if(in == null) {
+      throw new IOException(resource + " not found on the classpath");
+    }
+    final List<Integer> ids = new ArrayList<Integer>();
+    final InputStreamReader reader = new InputStreamReader(in, "UTF-8");
+    try {
+      final JsonObject json = new JsonParser().parse(reader).getAsJsonObject();
+      for(JsonElement je : json.get(container).getAsJsonArray()) {
+        final int id = je.getAsJsonObject().get("id").getAsInt();
+        if(id != 0 || !skipZero) {
+          ids.add(id);
+        }
+      }
+    } finally {
+      reader.close();
+    }
+    final int[] array = new int[ids.size()];
+    for(int i = 0; i < array.length; i++) {
+      array[i] = ids.get(i);
+    }
+    return array;
+  }
+
+  /**
+   * The ids and rates matches are generated from, shared by every file.
+   */
+  static class Settings {
+    int[] heroes;
+    // Cumulative popularity of each of heroes, the last entry is 1.0
+    double[] heroWeights;
+    int[] items;
+    int[] abilities;
+    int players;
+    double playerSkew;
+    // Offset of the account ids, so different seeds give different ids
+    long accountOffset;
+    double leaverRate;
+    double safeLeaverRate;
+    double anonymousRate;
+
+    /**
+     * Ranks heroes by a shuffle from seed and weights the hero at rank r by 1 / r^skew.
+     */
+    void setHeroSkew(double skew, long seed) {
+      final List<Integer> order = new ArrayList<Integer>(heroes.length);
+      for(int hero : heroes) {
+        order.add(hero);
+      }
+      Collections.shuffle(order, new Random(seed));
+      heroWeights = new double[heroes.length];
+      double total = 0.0;
+      for(int r = 0; r < heroes.length; r++) {
+        heroes[r] = order.get(r);
+        total += 1.0 / Math.pow(r + 1, skew);
+        heroWeights[r] = total;
+      }
+      for(int r = 0; r < heroes.length; r++) {
+        heroWeights[r] /= total;
+      }
+    }
+  }
+
+  /**
+   * Writes the matches with match_seq_nums in [start, end) to a single file.
+   */
+  static class FileTask implements Callable<Long> {
+
+    private final Settings mSettings;
+    private final FileSystem mFs;
+    private final Path mFile;
+    private final long mStart;
+    private final long mEnd;
+    private final Random mRandom;
+    private final StringBuilder mLine = new StringBuilder(16 * 1024);
+    private final int[] mPicked = new int[10];
+    private final long[] mAccounts = new long[10];
+
+    FileTask(Settings settings, FileSystem fs, Path dir, long start, long end, long seed) {
+      mSettings = settings;
+      mFs = fs;
+      mFile = new Path(dir, "matches_" + start + "-" + end + ".gz");
+      mStart = start;
+      mEnd = end;
+      mRandom = new Random(seed);
+    }
+
+    public Long call() throws IOException {
+      final Writer out = new BufferedWriter(new OutputStreamWriter(
+          new GZIPOutputStream(mFs.create(mFile, false), 64 * 1024), "UTF-8"), 64 * 1024);
+      try {
+        for(long seqNum = mStart; seqNum < mEnd; seqNum++) {
+          mLine.setLength(0);
+          appendMatch(seqNum);
+          mLine.append('\n');
+          out.append(mLine);
+        }
+      } finally {
+        out.close();
+      }
+      return mEnd - mStart;
+    }
+
+    private int pick(int[] values) {
+      return values[mRandom.nextInt(values.length)];
+    }
+
+    private int between(int min, int max) {
+      return min + mRandom.nextInt(max - min + 1);
+    }
+
+    private int pickHero() {
+      int i = Arrays.binarySearch(mSettings.heroWeights, mRandom.nextDouble());
+      if(i < 0) {
+        i = -i - 1;
+      }
+      return mSettings.heroes[Math.min(i, mSettings.heroes.length - 1)];
+    }
+
+    // Picks 10 different heroes into mPicked
+    private void pickHeroes() {
+      for(int p = 0; p < 10; p++) {
+        boolean repeat;
+        do {
+          mPicked[p] = pickHero();
+          repeat = false;
+          for(int q = 0; q < p; q++) {
+            repeat |= mPicked[q] == mPicked[p];
+          }
+        } while(repeat);
+      }
+    }
+
+    /**
+     * Draws the rank of an account from a continuous power law with exponent playerSkew
+     * over [1, players + 1), by inverting its CDF, and maps the rank to an account id.
+     */
+    private long pickAccount() {
+      final double n = mSettings.players + 1.0;
+      final double skew = mSettings.playerSkew;
+      final double u = mRandom.nextDouble();
+      final double x;
+      if(Math.abs(skew - 1.0) < 1e-9) {
+        x = Math.pow(n, u);
+      } else {
+        x = Math.pow((Math.pow(n, 1.0 - skew) - 1.0) * u + 1.0, 1.0 / (1.0 - skew));
+      }
+      final long rank = Math.min((long) x - 1, mSettings.players - 1);
+      return 1 + (rank * ACCOUNT_MULTIPLIER + mSettings.accountOffset) % ACCOUNT_SPACE;
+    }
+
+    // Picks an account for each human player into mAccounts, no account plays twice in a match
+    private void pickAccounts(int humanPlayers) {
+      for(int p = 0; p < humanPlayers; p++) {
+        boolean repeat;
+        do {
+          mAccounts[p] = pickAccount();
+          repeat = false;
+          for(int q = 0; q < p; q++) {
+            repeat |= mAccounts[q] == mAccounts[p];
+          }
+        } while(repeat);
+      }
+    }
+
+    private void field(String name, long value) {
+      mLine.append('"').append(name).append("\": ").append(value).append(", ");
+    }
+
+    private void items() {
+      for(int i = 0; i < 6; i++) {
+        field("item_" + i,
+            mRandom.nextDouble() < EMPTY_SLOT_RATE ? 0 : pick(mSettings.items));
+      }
+    }
+
+    private void appendPlayer(int slot, int hero, int duration, int humanPlayers) {
+      mLine.append('{');
+      final boolean anonymous = slot >= humanPlayers ||
+          mRandom.nextDouble() < mSettings.anonymousRate;
+      field("account_id", anonymous ? ANONYMOUS_ACCOUNT : mAccounts[slot]);
+      field("player_slot", slot < 5 ? slot : 128 + slot - 5);
+      field("hero_id", hero);
+      items();
+      final int minutes = duration / 60;
+      field("kills", between(0, minutes / 2));
+      field("deaths", between(0, minutes / 3));
+      field("assists", between(0, minutes / 2));
+      // Bots have no leaver_status
+      if(slot >= humanPlayers) {
+        mLine.append("\"leaver_status\": null, ");
+      } else {
+        final double leave = mRandom.nextDouble();
+        field("leaver_status", leave < mSettings.leaverRate ? between(2, 4) :
+            (leave < mSettings.leaverRate + mSettings.safeLeaverRate ? 1 : 0));
+      }
+      field("gold", between(0, 5000));
+      final int lastHits = between(0, minutes * 8);
+      field("last_hits", lastHits);
+      field("denies", between(0, lastHits / 8));
+      field("gold_per_min", between(150, 800));
+      field("xp_per_min", between(150, 800));
+      field("gold_spent", between(minutes * 200, minutes * 700));
+      field("hero_damage", between(0, minutes * 800));
+      field("tower_damage", between(0, minutes * 150));
+      field("hero_healing", mRandom.nextDouble() < 0.8 ? 0 : between(0, minutes * 150));
+      final int level = Math.min(25, between(1, 6 + minutes / 3));
+      field("level", level);
+      mLine.append("\"ability_upgrades\": [");
+      int time = between(60, 200);
+      for(int l = 1; l <= level; l++) {
+        mLine.append("{\"ability\": ").append(pick(mSettings.abilities))
+            .append(", \"time\": ").append(time)
+            .append(", \"level\": ").append(l).append('}');
+        if(l < level) {
+          mLine.append(", ");
+        }
+        time += between(30, 200);
+      }
+      mLine.append(']');
+      if(mRandom.nextDouble() < ADDITIONAL_UNIT_RATE) {
+        mLine.append(", \"additional_units\": [{\"unitname\": \"spirit_bear\", ");
+        items();
+        // Drop the trailing ", "
+        mLine.setLength(mLine.length() - 2);
+        mLine.append("}]");
+      }
+      mLine.append('}');
+    }
+
+    private void appendMatch(long seqNum) {
+      final int duration = between(900, 4000);
+      final int humanPlayers = mRandom.nextDouble() < BOTS_RATE ? between(1, 9) : 10;
+      pickHeroes();
+      pickAccounts(humanPlayers);
+      mLine.append("{\"players\": [");
+      for(int p = 0; p < 10; p++) {
+        appendPlayer(p, mPicked[p], duration, humanPlayers);
+        if(p < 9) {
+          mLine.append(", ");
+        }
+      }
+      mLine.append("], \"radiant_win\": ").append(mRandom.nextDouble() < 0.52).append(", ");
+      field("duration", duration);
+      field("start_time", FIRST_START_TIME + (long) (seqNum * SECONDS_PER_MATCH));
+      field("match_id", FIRST_MATCH_ID + seqNum);
+      field("match_seq_num", seqNum);
+      field("tower_status_radiant", mRandom.nextInt(2048));
+      field("tower_status_dire", mRandom.nextInt(2048));
+      field("barracks_status_radiant", mRandom.nextInt(64));
+      field("barracks_status_dire", mRandom.nextInt(64));
+      field("cluster", pick(CLUSTERS));
+      field("first_blood_time", between(0, 400));
+      field("lobby_type", pick(LOBBY_TYPES));
+      field("human_players", humanPlayers);
+      field("leagueid", mRandom.nextDouble() < 0.98 ? 0 : between(1, 200));
+      field("positive_votes", between(0, 3));
+      field("negative_votes", between(0, 3));
+      mLine.append("\"game_mode\": ").append(pick(GAME_MODES)).append('}');
+    }
+  }
+
+  public static void main(String args[]) throws Exception {
+    Configuration conf = new Configuration();
+    int res = ToolRunner.run(conf, new MatchGenerator(), args);
+    System.exit(res);
+  }
+
+  public final int run(final String[] args) throws Exception {
+    if(args.length != 1) {
+      System.err.println("Usage: MatchGenerator <output directory>");
+      return -1;
+    }
+    final Configuration conf = getConf();
+    final long matches = conf.getLong(MATCHES_KEY, DEFAULT_MATCHES);
+    final int perFile = conf.getInt(MATCHES_PER_FILE_KEY, DEFAULT_MATCHES_PER_FILE);
+    final long start = conf.getLong(START_SEQ_NUM_KEY, DEFAULT_START_SEQ_NUM);
+    final long seed = conf.getLong(SEED_KEY, 0L);
+    final int threads = conf.getInt(THREADS_KEY, Runtime.getRuntime().availableProcessors());
+
+    final Settings settings = new Settings();
+    settings.heroes = readIds(HEROES_JSON, "heroes", true);
+    settings.items = readIds(ITEMS_JSON, "items", true);
+    settings.abilities = readIds(ABILITIES_JSON, "abilities", true);
+    settings.setHeroSkew(conf.getFloat(HERO_SKEW_KEY, DEFAULT_HERO_SKEW), seed);
+    settings.players = conf.getInt(PLAYERS_KEY, DEFAULT_PLAYERS);
+    if(settings.players < 10 || settings.players > ACCOUNT_SPACE) {
+      System.err.println(PLAYERS_KEY + " must be between 10 and " + ACCOUNT_SPACE);
+      return -1;
+    }
+    settings.playerSkew = conf.getFloat(PLAYER_SKEW_KEY, DEFAULT_PLAYER_SKEW);
+    settings.accountOffset = new Random(seed).nextInt(ACCOUNT_SPACE);
+    settings.leaverRate = conf.getFloat(LEAVER_RATE_KEY, DEFAULT_LEAVER_RATE);
+    settings.safeLeaverRate = conf.getFloat(SAFE_LEAVER_RATE_KEY, DEFAULT_SAFE_LEAVER_RATE);
+    settings.anonymousRate = conf.getFloat(ANONYMOUS_RATE_KEY, DEFAULT_ANONYMOUS_RATE);
+
+    final Path dir = new Path(args[0]);
+    final FileSystem fs = dir.getFileSystem(conf);
+    fs.mkdirs(dir);
+    final List<FileTask> tasks = new ArrayList<FileTask>();
+    for(long s = start, file = 0; s < start + matches; s += perFile, file++) {
+      // Random's own scrambling of the seed takes care of the neighbouring seeds
+      tasks.add(new FileTask(settings, fs, dir, s, Math.min(s + perFile, start + matches),
+          seed * 1000003L + file));
+    }
+
+    final long startTime = System.currentTimeMillis();
+    long written = 0;
+    final ExecutorService pool = Executors.newFixedThreadPool(threads);
+    try {
+      for(Future<Long> result : pool.invokeAll(tasks)) {
+        written += result.get();
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+    final double seconds = (System.currentTimeMillis() - startTime) / 1000.0;
+    LOG.info("Wrote " + written + " matches to " + tasks.size() + " files in " + seconds +
+        "s (" + (long) (written / Math.max(seconds, 0.001)) + " matches/s)");
+    return 0;
+  }
+}
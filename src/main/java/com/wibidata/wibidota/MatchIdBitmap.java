@@ -0,0 +1,256 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A compressed set of match ids in the style of a Roaring bitmap. Ids are split into their
+ * high and low 16 bits, and the low bits of the ids sharing the same high bits are stored
+ * together in a container, either a sorted array when there are few of them or a 65536 bit
+ * bitmap once there are more than 4096. Match ids must be in [0, 2^32).
+ */
+public class MatchIdBitmap {
+
+  // Largest number of values stored in an array container, past this a bitmap is smaller
+  private static final int ARRAY_MAX = 4096;
+
+  private static final int BITMAP_WORDS = (1 << 16) / 64;
+
+  private static final byte ARRAY = 0;
+  private static final byte BITMAP = 1;
+
+  // The low 16 bits of the ids sharing the same high 16 bits
+  private static abstract class Container {
+    abstract Container add(char low);
+    abstract boolean contains(char low);
+    abstract int cardinality();
+    abstract char[] values();
+    abstract void write(DataOutput out) throws IOException;
+  }
+
+  private static class ArrayContainer extends Container {
+    private char[] mValues = new char[4];
+    private int mSize = 0;
+
+    Container add(char low) {
+      final int i = Arrays.binarySearch(mValues, 0, mSize, low);
+      if(i >= 0) {
+        return this;
+      }
+      if(mSize == ARRAY_MAX) {
+        final BitmapContainer bitmap = new BitmapContainer();
+        for(int j = 0; j < mSize; j++) {
+          bitmap.add(mValues[j]);
+        }
+        return bitmap.add(low);
+      }
+      final int insert = -i - 1;
+      if(mSize == mValues.length) {
+        mValues = Arrays.copyOf(mValues, Math.min(ARRAY_MAX, mSize * 2));
+      }
+      System.arraycopy(mValues, insert, mValues, insert + 1, mSize - insert);
+      mValues[insert] = low;
+      mSize++;
+      return this;
+    }
+
+    boolean contains(char low) {
+      return Arrays.binarySearch(mValues, 0, mSize, low) >= 0;
+    }
+
+    int cardinality() {
+      return mSize;
+    }
+
+    char[] values() {
+      return Arrays.copyOf(mValues, mSize);
+    }
+
+    void write(DataOutput out) throws IOException {
+      out.writeByte(ARRAY);
+      out.writeShort(mSize - 1);
+      for(int i = 0; i < mSize; i++) {
+        out.writeChar(mValues[i]);
+      }
+    }
+
+    static ArrayContainer read(DataInput in) throws IOException {
+      final ArrayContainer container = new ArrayContainer();
+      container.mSize = in.readUnsignedShort() + 1;
+      container.mValues = new char[container.mSize];
+      for(int i = 0; i < container.mSize; i++) {
+        container.mValues[i] = in.readChar();
+      }
+      return container;
+    }
+  }
+
+  private static class BitmapContainer extends Container {
+    private final long[] mWords = new long[BITMAP_WORDS];
+    private int mCardinality = 0;
+
+    Container add(char low) {
+      final long bit = 1L << low;
+      if((mWords[low >>> 6] & bit) == 0) {
+        mWords[low >>> 6] |= bit;
+        mCardinality++;
+      }
+      return this;
+    }
+
+    boolean contains(char low) {
+      return (mWords[low >>> 6] & (1L << low)) != 0;
+    }
+
+    int cardinality() {
+      return mCardinality;
+    }
+
+    char[] values() {
+      final char[] values = new char[mCardinality];
+      int n = 0;
+      for(int w = 0; w < BITMAP_WORDS; w++) {
+        long word = mWords[w];
+        while(word != 0) {
+          values[n++] = (char) (w * 64 + Long.numberOfTrailingZeros(word));
+          word &= word - 1;
+        }
+      }
+      return values;
+    }
+
+    void write(DataOutput out) throws IOException {
+      out.writeByte(BITMAP);
+      for(long word : mWords) {
+        out.writeLong(word);
+      }
+    }
+
+    static BitmapContainer read(DataInput in) throws IOException {
+      final BitmapContainer container = new BitmapContainer();
+      for(int w = 0; w < BITMAP_WORDS; w++) {
+        container.mWords[w] = in.readLong();
+        container.mCardinality += Long.bitCount(container.mWords[w]);
+      }
+      return container;
+    }
+  }
+
+  // Sorted high 16 bits of the ids, and the container for each
+  private char[] mKeys = new char[4];
+  private Container[] mContainers = new Container[4];
+  private int mSize = 0;
+
+  private static int checkId(long matchId) {
+    if(matchId < 0 || matchId > 0xFFFFFFFFL) {
+      throw new IllegalArgumentException("Match id out of range: " + matchId);
+    }
+    return (int) matchId;
+  }
+
+  /**
+   * Adds a match id to the set.
+   */
+  public void add(long matchId) {
+    final int id = checkId(matchId);
+    final char high = (char) (id >>> 16);
+    int i = Arrays.binarySearch(mKeys, 0, mSize, high);
+    if(i < 0) {
+      i = -i - 1;
+      if(mSize == mKeys.length) {
+        mKeys = Arrays.copyOf(mKeys, mSize * 2);
+        mContainers = Arrays.copyOf(mContainers, mSize * 2);
+      }
+      System.arraycopy(mKeys, i, mKeys, i + 1, mSize - i);
+      System.arraycopy(mContainers, i, mContainers, i + 1, mSize - i);
+      mKeys[i] = high;
+      mContainers[i] = new ArrayContainer();
+      mSize++;
+    }
+    mContainers[i] = mContainers[i].add((char) id);
+  }
+
+  /**
+   * @return true if matchId is in the set.
+   */
+  public boolean contains(long matchId) {
+    if(matchId < 0 || matchId > 0xFFFFFFFFL) {
+      return false;
+    }
+    final int id = (int) matchId;
+    final int i = Arrays.binarySearch(mKeys, 0, mSize, (char) (id >>> 16));
+    return i >= 0 && mContainers[i].contains((char) id);
+  }
+
+  /**
+   * @return the number of ids in the set.
+   */
+  public long cardinality() {
+    long cardinality = 0;
+    for(int i = 0; i < mSize; i++) {
+      cardinality += mContainers[i].cardinality();
+    }
+    return cardinality;
+  }
+
+  /**
+   * Adds every id in other to this set.
+   */
+  public void or(MatchIdBitmap other) {
+    for(int i = 0; i < other.mSize; i++) {
+      final long high = ((long) other.mKeys[i]) << 16;
+      for(char low : other.mContainers[i].values()) {
+        add(high | low);
+      }
+    }
+  }
+
+  public void write(DataOutput out) throws IOException {
+    out.writeInt(mSize);
+    for(int i = 0; i < mSize; i++) {
+      out.writeChar(mKeys[i]);
+      mContainers[i].write(out);
+    }
+  }
+
+  public static MatchIdBitmap read(DataInput in) throws IOException {
+    final MatchIdBitmap bitmap = new MatchIdBitmap();
+    final int size = in.readInt();
+    bitmap.mKeys = new char[Math.max(4, size)];
+    bitmap.mContainers = new Container[Math.max(4, size)];
+    for(int i = 0; i < size; i++) {
+      bitmap.mKeys[i] = in.readChar();
+      final byte type = in.readByte();
+      if(type == ARRAY) {
+        bitmap.mContainers[i] = ArrayContainer.read(in);
+      } else if(type == BITMAP) {
+        bitmap.mContainers[i] = BitmapContainer.read(in);
+      } else {
+        throw new IOException("Unknown container type " + type);
+      }
+    }
+    bitmap.mSize = size;
+    return bitmap;
+  }
+}
@@ -0,0 +1,137 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota;
+
+import com.wibidata.wibidota.avro.MatchSummary;
+import org.apache.hadoop.conf.Configuration;
+import org.kiji.schema.KijiDataRequestBuilder;
+import org.kiji.schema.KijiRowData;
+
+import java.io.IOException;
+
+/**
+ * Reads the scalar match level values of a row in the dota_matches table from its
+ * match_summary cell. Rows imported before match_summary existed only have the individual
+ * columns (dire_towers_status, cluster, ...), which are also requested and read for rows
+ * without a match_summary unless wibidota.matches.legacy_fallback is false. Once
+ * MatchSummaryProducer has backfilled match_summary the fallback can be turned off to skip
+ * reading those columns.
+ */
+public final class MatchSummaries {
+
+  /** Configuration key for whether to fall back to the legacy columns, defaults to true. */
+  public static final String LEGACY_FALLBACK_KEY = "wibidota.matches.legacy_fallback";
+
+  private static final String[] LEGACY_COLUMNS = new String[] {
+      "dire_towers_status", "radiant_towers_status", "dire_barracks_status",
+      "radiant_barracks_status", "cluster", "season", "game_mode", "match_seq_num", "league_id",
+      "first_blood_time", "negative_votes", "duration", "radiant_win", "positive_votes",
+      "lobby_type", "human_players"
+  };
+
+  // This utility class should not be instantiated
+  private MatchSummaries() {}
+
+  /**
+   * @return whether conf asks for the legacy columns to be read when match_summary is missing.
+   */
+  public static boolean legacyFallback(Configuration conf) {
+    return conf.getBoolean(LEGACY_FALLBACK_KEY, true);
+  }
+
+  /**
+   * Adds the columns needed to read a MatchSummary to a data request, the legacy
+   * columns are only added if legacyFallback is true.
+   *
+   * @param def, the columns definition to add to.
+   * @param legacyFallback, whether to read the legacy columns of rows without a match_summary.
+   * @return def, for chaining.
+   */
+  public static KijiDataRequestBuilder.ColumnsDef addColumns(KijiDataRequestBuilder.ColumnsDef def,
+                                                             boolean legacyFallback) {
+    def.add(DotaValues.Columns.MATCH_SUMMARY.columnName());
+    if(legacyFallback) {
+      for(String column : LEGACY_COLUMNS) {
+        def.add("data", column);
+      }
+    }
+    return def;
+  }
+
+  /**
+   * Builds a MatchSummary from a RawMatch, used when importing.
+   */
+  public static MatchSummary fromRawMatch(RawMatch match) {
+    return MatchSummary.newBuilder()
+        .setDireTowersStatus(match.direTowers)
+        .setRadiantTowersStatus(match.radiantTowers)
+        .setDireBarracksStatus(match.direBarracks)
+        .setRadiantBarracksStatus(match.radiantBarracks)
+        .setCluster(match.cluster)
+        .setSeason(match.season)
+        .setGameMode(match.gameMode)
+        .setMatchSeqNum(match.seqNum)
+        .setLeagueId(match.leagueId)
+        .setFirstBloodTime(match.firstBloodTime)
+        .setNegativeVotes(match.negativeVotes)
+        .setDuration(match.duration)
+        .setRadiantWin(match.radiantWin)
+        .setPositiveVotes(match.positiveVotes)
+        .setLobbyType(match.lobbyType)
+        .setHumanPlayers(match.humanPlayers)
+        .build();
+  }
+
+  /**
+   * Reads the most recent match level values of a row from the dota_matches table, the row
+   * should have been read with a data request that included the columns from addColumns.
+   *
+   * @param row, the row to read.
+   * @return the MatchSummary for that row, or null if it has no match_summary and its legacy
+   *     columns were not read.
+   * @throws IOException if the row could not be decoded.
+   */
+  public static MatchSummary get(KijiRowData row) throws IOException {
+    if(row.containsColumn("data", "match_summary")) {
+      return row.getMostRecentValue("data", "match_summary");
+    }
+    if(!row.containsColumn("data", "game_mode")) {
+      return null;
+    }
+    return MatchSummary.newBuilder()
+        .setDireTowersStatus(row.<Integer>getMostRecentValue("data", "dire_towers_status"))
+        .setRadiantTowersStatus(row.<Integer>getMostRecentValue("data", "radiant_towers_status"))
+        .setDireBarracksStatus(row.<Integer>getMostRecentValue("data", "dire_barracks_status"))
+        .setRadiantBarracksStatus(row.<Integer>getMostRecentValue("data", "radiant_barracks_status"))
+        .setCluster(row.<Integer>getMostRecentValue("data", "cluster"))
+        .setSeason(row.<Integer>getMostRecentValue("data", "season"))
+        .setGameMode(row.<Integer>getMostRecentValue("data", "game_mode"))
+        .setMatchSeqNum(row.<Long>getMostRecentValue("data", "match_seq_num"))
+        .setLeagueId(row.<Integer>getMostRecentValue("data", "league_id"))
+        .setFirstBloodTime(row.<Integer>getMostRecentValue("data", "first_blood_time"))
+        .setNegativeVotes(row.<Integer>getMostRecentValue("data", "negative_votes"))
+        .setDuration(row.<Integer>getMostRecentValue("data", "duration"))
+        .setRadiantWin(row.<Boolean>getMostRecentValue("data", "radiant_win"))
+        .setPositiveVotes(row.<Integer>getMostRecentValue("data", "positive_votes"))
+        .setLobbyType(row.<Integer>getMostRecentValue("data", "lobby_type"))
+        .setHumanPlayers(row.<Integer>getMostRecentValue("data", "human_players"))
+        .build();
+  }
+}
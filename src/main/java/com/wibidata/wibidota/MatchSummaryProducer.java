@@ -0,0 +1,81 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota;
+
+import com.wibidata.wibidota.avro.MatchSummary;
+import org.apache.hadoop.conf.Configuration;
+import org.kiji.mapreduce.produce.KijiProducer;
+import org.kiji.mapreduce.produce.ProducerContext;
+import org.kiji.schema.KijiDataRequest;
+import org.kiji.schema.KijiDataRequestBuilder;
+import org.kiji.schema.KijiRowData;
+
+import java.io.IOException;
+
+/**
+ * Backfills data:match_summary in the dota_matches table from the individual legacy columns,
+ * for rows imported before match_summary existed. Rows that already have a match_summary are
+ * left alone. The summary is written at the match's start time, like the columns it is built
+ * from. Once run the readers can be given wibidota.matches.legacy_fallback=false and the
+ * importers wibidota.importer.legacy_columns=false.
+ */
+public class MatchSummaryProducer extends KijiProducer {
+
+  static enum Counters {
+    BACKFILLED,       // Rows given a match_summary
+    ALREADY_PRESENT,  // Rows that already had one
+    NO_COLUMNS,       // Rows without the legacy columns either
+  }
+
+  @Override
+  public void setConf(Configuration conf) {
+    conf.set("hbase.client.scanner.caching", "100");
+    super.setConf(conf);
+  }
+
+  @Override
+  public KijiDataRequest getDataRequest() {
+    KijiDataRequestBuilder builder = KijiDataRequest.builder();
+    return builder.addColumns(MatchSummaries.addColumns(builder.newColumnsDef()
+        .withMaxVersions(1), true)
+    ).build();
+  }
+
+  @Override
+  public String getOutputColumn() {
+    return "data:match_summary";
+  }
+
+  @Override
+  public void produce(KijiRowData kijiRowData, ProducerContext producerContext) throws IOException {
+    if(kijiRowData.containsColumn("data", "match_summary")) {
+      producerContext.incrementCounter(Counters.ALREADY_PRESENT);
+      return;
+    }
+    final MatchSummary summary = MatchSummaries.get(kijiRowData);
+    if(summary == null) {
+      producerContext.incrementCounter(Counters.NO_COLUMNS);
+      return;
+    }
+    final long startTime = kijiRowData.getMostRecentCell("data", "game_mode").getTimestamp();
+    producerContext.put(startTime, summary);
+    producerContext.incrementCounter(Counters.BACKFILLED);
+  }
+}
@@ -0,0 +1,194 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota;
+
+import org.apache.hadoop.conf.Configuration;
+import org.kiji.schema.KijiDataRequest;
+import org.kiji.schema.KijiDataRequestBuilder;
+import org.kiji.schema.KijiPager;
+import org.kiji.schema.KijiRowData;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Iterates over the games in a dota_players row, newest first, reading data:match_id,
+ * data:radiant_win and the game's real_match a page at a time so only a page of each column
+ * is held in memory however many games the player has. The row must come from a request
+ * built by dataRequest. The columns are paged separately and lined up by the timestamps of
+ * match_id, games missing radiant_win or real_match get null and 0.0.
+ *
+ * Real matches are read from match_derived_data:real_match, or if a RealMatchIndex is given
+ * looked up by match_id. data:player is not read here, it is much larger than the other
+ * columns so PlayerHistory only reads it for the games a job walks, with a PlayerCellReader.
+ */
+public class PagedPlayerCells implements Closeable {
+
+  /** Configuration key for the number of versions of each column to read at a time. */
+  public static final String PAGE_SIZE_KEY = "wibidota.paging.page_size";
+
+  static final int DEFAULT_PAGE_SIZE = 1000;
+
+  /**
+   * A paged column, walked newest version first.
+   */
+  private static final class Cursor<T> {
+
+    private final String mFamily;
+    private final String mQualifier;
+    private final KijiPager mPager;
+    private Iterator<Map.Entry<Long, T>> mPage;
+    private boolean mValid;
+    private long mTimestamp;
+    private T mValue;
+
+    Cursor(KijiRowData row, String family, String qualifier) throws IOException {
+      mFamily = family;
+      mQualifier = qualifier;
+      mPager = row.getPager(family, qualifier);
+      mPage = Collections.<Map.Entry<Long, T>>emptyList().iterator();
+      advance();
+    }
+
+    boolean advance() throws IOException {
+      while(!mPage.hasNext()) {
+        if(!mPager.hasNext()) {
+          mValid = false;
+          return false;
+        }
+        mPage = mPager.next().<T>getValues(mFamily, mQualifier).entrySet().iterator();
+      }
+      final Map.Entry<Long, T> entry = mPage.next();
+      mTimestamp = entry.getKey();
+      mValue = entry.getValue();
+      mValid = true;
+      return true;
+    }
+
+    // The value at timestamp, skipping any newer versions, or null if there is none
+    T valueAt(long timestamp) throws IOException {
+      while(mValid && mTimestamp > timestamp) {
+        advance();
+      }
+      return mValid && mTimestamp == timestamp ? mValue : null;
+    }
+
+    void close() throws IOException {
+      mPager.close();
+    }
+  }
+
+  private final Cursor<Long> mMatchIds;
+  private final Cursor<Boolean> mRadiantWins;
+  private final Cursor<Double> mRealMatches;
+  private final RealMatchIndex mIndex;
+  private boolean mStarted = false;
+  private Boolean mRadiantWin;
+  private double mRealMatch;
+
+  /**
+   * @param row, a row of dota_players read with dataRequest.
+   * @param index, the index to find real matches with, null to read real_match.
+   */
+  public PagedPlayerCells(KijiRowData row, RealMatchIndex index) throws IOException {
+    mIndex = index;
+    mMatchIds = new Cursor<Long>(row, "data", "match_id");
+    mRadiantWins = new Cursor<Boolean>(row, "data", "radiant_win");
+    mRealMatches = index == null ?
+        new Cursor<Double>(row, "match_derived_data", "real_match") : null;
+  }
+
+  /**
+   * @return a request paging through every version of the columns read, which do not
+   *     include real_match if wibidota.realmatch.index is set.
+   */
+  public static KijiDataRequest dataRequest(Configuration conf) {
+    KijiDataRequestBuilder builder = KijiDataRequest.builder();
+    KijiDataRequestBuilder.ColumnsDef def = builder.newColumnsDef();
+    def.withMaxVersions(Integer.MAX_VALUE)
+        .withPageSize(conf.getInt(PAGE_SIZE_KEY, DEFAULT_PAGE_SIZE))
+        .add("data", "match_id")
+        .add("data", "radiant_win");
+    if(conf.get(RealMatchIndex.INDEX_KEY) == null) {
+      def.add("match_derived_data", "real_match");
+    }
+    return builder.addColumns(def).build();
+  }
+
+  /**
+   * Moves to the next older game.
+   *
+   * @return false once there are no more games.
+   */
+  public boolean next() throws IOException {
+    if(mStarted && !mMatchIds.advance()) {
+      return false;
+    }
+    mStarted = true;
+    if(!mMatchIds.mValid) {
+      return false;
+    }
+    final long time = mMatchIds.mTimestamp;
+    mRadiantWin = mRadiantWins.valueAt(time);
+    if(mIndex != null) {
+      mRealMatch = mIndex.realMatch(mMatchIds.mValue);
+    } else {
+      final Double realMatch = mRealMatches.valueAt(time);
+      mRealMatch = realMatch == null ? 0.0 : realMatch;
+    }
+    return true;
+  }
+
+  /**
+   * @return the timestamp, the start time, of the current game.
+   */
+  public long getTimestamp() {
+    return mMatchIds.mTimestamp;
+  }
+
+  public long getMatchId() {
+    return mMatchIds.mValue;
+  }
+
+  /**
+   * @return whether the radiant won the current game, null if that is missing.
+   */
+  public Boolean getRadiantWin() {
+    return mRadiantWin;
+  }
+
+  /**
+   * @return the real_match value of the current game, 0.0 if it has none.
+   */
+  public double getRealMatch() {
+    return mRealMatch;
+  }
+
+  public void close() throws IOException {
+    mMatchIds.close();
+    mRadiantWins.close();
+    if(mRealMatches != null) {
+      mRealMatches.close();
+    }
+  }
+}
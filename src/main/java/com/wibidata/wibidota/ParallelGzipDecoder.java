@@ -0,0 +1,176 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.util.LineReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decodes match dumps on a single machine using a pool of threads. Each gzip member of an
+ * indexed dump (see RechunkMatchDumps) is decoded by its own task, dumps without an index are
+ * decoded whole by a single task. Lines are passed to a LineHandler from the decoding threads,
+ * so the handler has to be thread safe, and lines from different members arrive in no
+ * particular order.
+ *
+ * ex. java -cp ... com.wibidata.wibidota.ParallelGzipDecoder /path/to/match/files/directory/ [threads]
+ */
+public class ParallelGzipDecoder {
+
+  /**
+   * Receives the decoded lines. The Text passed is reused once handle returns.
+   */
+  public static interface LineHandler {
+    void handle(Text line) throws IOException, InterruptedException;
+  }
+
+  private final Configuration mConf;
+  private final int mThreads;
+
+  public ParallelGzipDecoder(Configuration conf, int threads) {
+    mConf = conf;
+    mThreads = threads;
+  }
+
+  // Decodes a single member, or the whole dump if member is null
+  private Callable<Long> decodeTask(final Path dump, final GzipChunkIndex.Member member,
+                                    final LineHandler handler) {
+    return new Callable<Long>() {
+      public Long call() throws Exception {
+        final FSDataInputStream in = dump.getFileSystem(mConf).open(dump);
+        try {
+          final InputStream decoded;
+          if(member != null) {
+            decoded = GzipChunkIndex.openMember(in, member);
+          } else {
+            final CompressionCodec codec = new CompressionCodecFactory(mConf).getCodec(dump);
+            decoded = (codec == null ? in : codec.createInputStream(in));
+          }
+          final LineReader reader = new LineReader(decoded, mConf);
+          final Text line = new Text();
+          long lines = 0;
+          while(reader.readLine(line) > 0) {
+            handler.handle(line);
+            lines++;
+          }
+          reader.close();
+          return lines;
+        } finally {
+          in.close();
+        }
+      }
+    };
+  }
+
+  /**
+   * Lists the dumps in a file or directory, skipping index files.
+   */
+  public List<Path> listDumps(Path input) throws IOException {
+    final FileSystem fs = input.getFileSystem(mConf);
+    final List<Path> dumps = new ArrayList<Path>();
+    for(FileStatus status : fs.listStatus(input)) {
+      if(!status.isDir() && !GzipChunkIndex.isIndex(status.getPath())) {
+        dumps.add(status.getPath());
+      }
+    }
+    return dumps;
+  }
+
+  /**
+   * Decodes every line of the given dumps, blocking until all have been handled.
+   *
+   * @param dumps, the dumps to decode.
+   * @param handler, the handler to pass the lines to.
+   * @return the number of lines decoded.
+   * @throws IOException if a dump could not be read or the handler failed.
+   * @throws InterruptedException if interrupted while waiting for the decoding threads.
+   */
+  public long decode(List<Path> dumps, LineHandler handler)
+      throws IOException, InterruptedException {
+    final List<Callable<Long>> tasks = new ArrayList<Callable<Long>>();
+    for(Path dump : dumps) {
+      final GzipChunkIndex index = GzipChunkIndex.load(dump.getFileSystem(mConf), dump);
+      if(index == null) {
+        tasks.add(decodeTask(dump, null, handler));
+      } else {
+        for(GzipChunkIndex.Member member : index.getMembers()) {
+          tasks.add(decodeTask(dump, member, handler));
+        }
+      }
+    }
+
+    final ExecutorService pool = Executors.newFixedThreadPool(mThreads);
+    try {
+      long lines = 0;
+      for(Future<Long> result : pool.invokeAll(tasks)) {
+        try {
+          lines += result.get();
+        } catch (ExecutionException e) {
+          if(e.getCause() instanceof IOException) {
+            throw (IOException) e.getCause();
+          }
+          throw new IOException("Failed decoding a dump", e.getCause());
+        }
+      }
+      return lines;
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * Decodes the dumps in a directory and reports the number of lines and time taken.
+   */
+  public static void main(String[] args) throws Exception {
+    if(args.length < 1) {
+      System.err.println("Usage: ParallelGzipDecoder <input file or directory> [threads]");
+      System.exit(1);
+    }
+    final int threads = (args.length > 1 ? Integer.parseInt(args[1]) :
+        Runtime.getRuntime().availableProcessors());
+    final ParallelGzipDecoder decoder = new ParallelGzipDecoder(new Configuration(), threads);
+    final AtomicLong bytes = new AtomicLong();
+    final long start = System.currentTimeMillis();
+    final long lines = decoder.decode(decoder.listDumps(new Path(args[0])), new LineHandler() {
+      public void handle(Text line) {
+        bytes.addAndGet(line.getLength());
+      }
+    });
+    System.out.println("Decoded " + lines + " lines (" + bytes.get() + " bytes) in " +
+        (System.currentTimeMillis() - start) + "ms using " + threads + " threads");
+  }
+}
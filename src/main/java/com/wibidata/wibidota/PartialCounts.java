@@ -0,0 +1,113 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota;
+
+import org.apache.hadoop.conf.Configuration;
+import org.kiji.mapreduce.KijiContext;
+
+import java.io.IOException;
+
+/**
+ * In-mapper partial aggregation of int keyed counts. Counts are added to an IntCountsMap and
+ * handed to an Emitter whenever the map grows past wibidota.combiner.max_bytes, and when the
+ * task flushes at the end, so memory stays bounded however many distinct keys a task sees. The
+ * reducer has to sum the counts of each key, as a key can be emitted once per spill.
+ *
+ * ex. A gatherer creates one in setup with an Emitter writing a CountsWritable to its context,
+ * calls add for each value in gather, and flush then reportCounters in cleanup. The
+ * TimelineAccumulators using it do the same from their cleanup.
+ */
+public class PartialCounts {
+
+  /** Configuration key for the memory the counts can take before they are spilled. */
+  public static final String MAX_BYTES_KEY = "wibidota.combiner.max_bytes";
+
+  static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+  static enum Counters {
+    COMBINER_SPILLS,      // Times the counts were emitted, including the final flush
+    COMBINER_EMITTED_KEYS // Keys emitted over all spills
+  }
+
+  /**
+   * Receives the counts of each key when they are spilled. counts is reused between calls.
+   */
+  public interface Emitter {
+    public void emit(int key, long[] counts) throws IOException;
+  }
+
+  private final IntCountsMap mCounts;
+  private final Emitter mEmitter;
+  private final long mMaxBytes;
+  private final IntCountsMap.Visitor mSpiller;
+  private long mSpills = 0;
+  private long mEmittedKeys = 0;
+
+  /**
+   * @param conf, the task's configuration.
+   * @param width, the number of counts per key.
+   * @param denseMin, the smallest key expected to be common, see IntCountsMap.
+   * @param denseMax, the largest key expected to be common.
+   * @param emitter, where spilled counts are sent.
+   */
+  public PartialCounts(Configuration conf, int width, int denseMin, int denseMax,
+                       Emitter emitter) {
+    mCounts = new IntCountsMap(width, denseMin, denseMax);
+    mEmitter = emitter;
+    mMaxBytes = conf.getLong(MAX_BYTES_KEY, DEFAULT_MAX_BYTES);
+    mSpiller = new IntCountsMap.Visitor() {
+      public void visit(int key, long[] counts) throws IOException {
+        mEmitter.emit(key, counts);
+      }
+    };
+  }
+
+  /**
+   * Adds delta to a count of key, spilling if the counts have grown too large.
+   */
+  public void add(int key, int column, long delta) throws IOException {
+    mCounts.add(key, column, delta);
+    if(mCounts.estimatedBytes() > mMaxBytes) {
+      flush();
+    }
+  }
+
+  /**
+   * Emits and clears all the counts.
+   */
+  public void flush() throws IOException {
+    if(mCounts.size() == 0) {
+      return;
+    }
+    mSpills++;
+    mEmittedKeys += mCounts.size();
+    mCounts.forEach(mSpiller);
+    mCounts.clear();
+  }
+
+  /**
+   * Adds the spill statistics to the counters of context, should be called once after the
+   * final flush.
+   */
+  public void reportCounters(KijiContext context) {
+    context.incrementCounter(Counters.COMBINER_SPILLS, mSpills);
+    context.incrementCounter(Counters.COMBINER_EMITTED_KEYS, mEmittedKeys);
+  }
+}
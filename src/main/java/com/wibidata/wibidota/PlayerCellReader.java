@@ -0,0 +1,162 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota;
+
+import org.apache.avro.generic.GenericRecord;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.filter.TimestampsFilter;
+import org.kiji.mapreduce.framework.KijiConfKeys;
+import org.kiji.schema.EntityId;
+import org.kiji.schema.Kiji;
+import org.kiji.schema.KijiColumnName;
+import org.kiji.schema.KijiDataRequest;
+import org.kiji.schema.KijiDataRequestBuilder;
+import org.kiji.schema.KijiRowData;
+import org.kiji.schema.KijiTable;
+import org.kiji.schema.KijiTableReader;
+import org.kiji.schema.KijiURI;
+import org.kiji.schema.filter.KijiColumnFilter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the data:player cells of chosen games of a dota_players row, so jobs only fetch and
+ * decode the players of the games they walk rather than every game in the row. Games are
+ * picked by timestamp and fetched up to wibidota.paging.page_size at a time, each fetch a get
+ * of the row limited to those timestamps with a TimestampsFilter, so the cells of other games
+ * are never sent by the region servers. Players are decoded with a PlayerProjection of
+ * player_slot and hero_id, so Avro skips over the rest of each record (items, ability upgrades,
+ * ...) rather than materializing it.
+ *
+ * The readers Kiji MapReduce opens for gatherers and producers take neither such gets nor cell
+ * spec overrides, so this opens its own reader of the task's input table. Open one in setup
+ * and close it in cleanup.
+ */
+public class PlayerCellReader implements Closeable {
+
+  /**
+   * Receives the player_slot and hero_id of each game read.
+   */
+  public interface Visitor {
+    public void visit(long timestamp, int playerSlot, int heroId);
+  }
+
+  // Keeps only the cells at the given timestamps
+  private static class TimestampsColumnFilter extends KijiColumnFilter {
+    private static final long serialVersionUID = 1L;
+
+    private final List<Long> mTimestamps;
+
+    TimestampsColumnFilter(List<Long> timestamps) {
+      mTimestamps = timestamps;
+    }
+
+    @Override
+    public Filter toHBaseFilter(KijiColumnName kijiColumnName, Context context) {
+      return new TimestampsFilter(mTimestamps);
+    }
+  }
+
+  private final Kiji mKiji;
+  private final KijiTable mTable;
+  private final KijiTableReader mReader;
+  private final int mBatchSize;
+
+  /**
+   * Opens a reader of the table given by kiji.input.table.uri, the dota_players table a
+   * gatherer or producer is run over.
+   */
+  public PlayerCellReader(Configuration conf) throws IOException {
+    this(KijiURI.newBuilder(conf.get(KijiConfKeys.KIJI_INPUT_TABLE_URI)).build(),
+        conf.getInt(PagedPlayerCells.PAGE_SIZE_KEY, PagedPlayerCells.DEFAULT_PAGE_SIZE));
+  }
+
+  /**
+   * @param uri, the uri of the dota_players table.
+   * @param batchSize, the number of games to fetch in each get.
+   */
+  public PlayerCellReader(KijiURI uri, int batchSize) throws IOException {
+    mBatchSize = batchSize;
+    mKiji = Kiji.Factory.open(uri);
+    KijiTable table = null;
+    try {
+      table = mKiji.openTable(uri.getTable());
+      mReader = PlayerProjection.openReader(table, PlayerProjection.PLAYER,
+          PlayerProjection.playerSchema("player_slot", "hero_id"));
+    } catch (IOException e) {
+      if(table != null) {
+        table.release();
+      }
+      mKiji.release();
+      throw e;
+    }
+    mTable = table;
+  }
+
+  /**
+   * Reads the players of the games at timestamps[0, count) in the row eid, games without a
+   * player cell are skipped.
+   *
+   * @param eid, the row to read.
+   * @param timestamps, the timestamps of the games to read, in ascending order.
+   * @param count, the number of timestamps.
+   * @param visitor, called with each player read.
+   * @throws IOException if the row could not be read.
+   */
+  public void read(EntityId eid, long[] timestamps, int count, Visitor visitor)
+      throws IOException {
+    for(int start = 0; start < count; start += mBatchSize) {
+      final int end = Math.min(count, start + mBatchSize);
+      final List<Long> batch = new ArrayList<Long>(end - start);
+      for(int i = start; i < end; i++) {
+        batch.add(timestamps[i]);
+      }
+      final KijiDataRequestBuilder builder = KijiDataRequest.builder()
+          .withTimeRange(timestamps[start], timestamps[end - 1] + 1);
+      final KijiDataRequestBuilder.ColumnsDef def = builder.newColumnsDef();
+      def.withMaxVersions(end - start)
+          .withFilter(new TimestampsColumnFilter(batch))
+          .add(PlayerProjection.PLAYER);
+      final KijiRowData row = mReader.get(eid, builder.addColumns(def).build());
+      if(!row.containsColumn("data", "player")) {
+        continue;
+      }
+      final Map<Long, GenericRecord> players = row.<GenericRecord>getValues("data", "player");
+      for(Map.Entry<Long, GenericRecord> entry : players.entrySet()) {
+        visitor.visit(entry.getKey(), (Integer) entry.getValue().get("player_slot"),
+            (Integer) entry.getValue().get("hero_id"));
+      }
+    }
+  }
+
+  public void close() throws IOException {
+    try {
+      mReader.close();
+    } finally {
+      mTable.release();
+      mKiji.release();
+    }
+  }
+}
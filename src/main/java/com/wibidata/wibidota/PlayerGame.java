@@ -0,0 +1,100 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota;
+
+/**
+ * A single real match in a player's timeline, as handed to each TimelineAccumulator by
+ * PlayerTimeline. The same instance is reused for every game, accumulators should copy
+ * anything they need to keep.
+ */
+public class PlayerGame {
+
+  int mAccountId;
+  long mTimestamp;
+  int mGameNumber;
+  int mCellNumber;
+  boolean mBurnIn;
+  boolean mWin;
+  double mRealMatch;
+  int mHeroId;
+  int mPlayerSlot;
+
+  /**
+   * @return the player's account_id.
+   */
+  public int getAccountId() {
+    return mAccountId;
+  }
+
+  /**
+   * @return the start time of the match.
+   */
+  public long getTimestamp() {
+    return mTimestamp;
+  }
+
+  /**
+   * @return the number of this game among the player's real matches, starting from 1.
+   */
+  public int getGameNumber() {
+    return mGameNumber;
+  }
+
+  /**
+   * @return the number of this game among all of the player's games, real or not, starting
+   *     from 1.
+   */
+  public int getCellNumber() {
+    return mCellNumber;
+  }
+
+  /**
+   * @return true if this game is in the player's burn in, accumulators should update their
+   *     state but not count it.
+   */
+  public boolean isBurnIn() {
+    return mBurnIn;
+  }
+
+  /**
+   * @return true if the player won.
+   */
+  public boolean isWin() {
+    return mWin;
+  }
+
+  /**
+   * @return the real_match value of the match.
+   */
+  public double getRealMatch() {
+    return mRealMatch;
+  }
+
+  public int getHeroId() {
+    return mHeroId;
+  }
+
+  /**
+   * @return the raw player_slot, see DotaValues.playerSlot.
+   */
+  public int getPlayerSlot() {
+    return mPlayerSlot;
+  }
+}
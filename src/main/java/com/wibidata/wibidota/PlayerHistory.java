@@ -0,0 +1,208 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota;
+
+import org.kiji.schema.KijiRowData;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * The games of a dota_players row as parallel primitive arrays, indexed oldest first, so
+ * jobs walking a player's history index arrays rather than looking up each column's
+ * NavigableMap by timestamp and unboxing the values. Built with a single pass over the
+ * columns with PagedPlayerCells, the row must come from PagedPlayerCells.dataRequest.
+ *
+ * Only the fields jobs walking histories use are kept: the timestamp, radiant_win,
+ * real_match, player_slot and hero_id. Games missing radiant_win are kept with a real_match
+ * of 0 since no analysis can use them. real_match is kept in a byte, it only takes the whole
+ * values RealMatchClassifier gives (0 to 3) and read throws an IllegalArgumentException on any
+ * other. Instances are reused by calling read for each row.
+ *
+ * data:player is only read, with a PlayerCellReader, for the games a GameFilter accepts, so
+ * the players of games a job skips (most often those that aren't real matches) are neither
+ * fetched nor decoded. hasPlayer tells which games have a player_slot and hero_id.
+ */
+public class PlayerHistory {
+
+  /**
+   * Picks the games whose player is read.
+   */
+  public interface GameFilter {
+    /**
+     * @param matchId, the game's match id.
+     * @param realMatch, the game's real_match value, 0 if it has none.
+     * @return whether to read the player of the game.
+     */
+    public boolean accept(long matchId, int realMatch);
+  }
+
+  private static final int INITIAL_GAMES = 256;
+
+  private int mSize = 0;
+  private long[] mTimestamps = new long[INITIAL_GAMES];
+  private final BitSet mRadiantWins = new BitSet();
+  private byte[] mRealMatches = new byte[INITIAL_GAMES];
+  private final BitSet mHasPlayers = new BitSet();
+  private int[] mPlayerSlots = new int[INITIAL_GAMES];
+  private int[] mHeroIds = new int[INITIAL_GAMES];
+
+  // radiant_win and the accepted games as read, newest first
+  private final BitSet mReadWins = new BitSet();
+  private final BitSet mReadAccepted = new BitSet();
+  // The timestamps of the accepted games, oldest first
+  private long[] mAccepted = new long[INITIAL_GAMES];
+
+  private final PlayerCellReader.Visitor mPlayerSetter = new PlayerCellReader.Visitor() {
+    public void visit(long timestamp, int playerSlot, int heroId) {
+      final int game = Arrays.binarySearch(mTimestamps, 0, mSize, timestamp);
+      if(game >= 0) {
+        mPlayerSlots[game] = playerSlot;
+        mHeroIds[game] = heroId;
+        mHasPlayers.set(game);
+      }
+    }
+  };
+
+  /**
+   * Replaces the history with the games in row.
+   *
+   * @param row, a row of dota_players read with PagedPlayerCells.dataRequest.
+   * @param index, the index to find real matches with, null to read real_match.
+   * @param filter, picks the games whose player is read.
+   * @param players, reads the players of the picked games.
+   */
+  public void read(KijiRowData row, RealMatchIndex index, GameFilter filter,
+                   PlayerCellReader players) throws IOException {
+    mSize = 0;
+    mReadWins.clear();
+    mReadAccepted.clear();
+    mHasPlayers.clear();
+    final PagedPlayerCells cells = new PagedPlayerCells(row, index);
+    try {
+      while(cells.next()) {
+        if(mSize == mTimestamps.length) {
+          grow();
+        }
+        final Boolean radiantWin = cells.getRadiantWin();
+        final double realMatch = cells.getRealMatch();
+        if(realMatch != (byte) realMatch) {
+          throw new IllegalArgumentException("Unexpected real_match value " + realMatch);
+        }
+        mTimestamps[mSize] = cells.getTimestamp();
+        mRealMatches[mSize] = radiantWin == null ? 0 : (byte) realMatch;
+        if(radiantWin != null && radiantWin) {
+          mReadWins.set(mSize);
+        }
+        if(radiantWin != null && filter.accept(cells.getMatchId(), mRealMatches[mSize])) {
+          mReadAccepted.set(mSize);
+        }
+        mSize++;
+      }
+    } finally {
+      cells.close();
+    }
+    reverse();
+    // The accepted games were read newest first, fill their timestamps in from the end
+    final int accepted = mReadAccepted.cardinality();
+    int next = accepted;
+    for(int i = mReadAccepted.nextSetBit(0); i >= 0; i = mReadAccepted.nextSetBit(i + 1)) {
+      mAccepted[--next] = mTimestamps[mSize - 1 - i];
+    }
+    players.read(row.getEntityId(), mAccepted, accepted, mPlayerSetter);
+  }
+
+  private void grow() {
+    final int size = mTimestamps.length * 2;
+    mTimestamps = Arrays.copyOf(mTimestamps, size);
+    mRealMatches = Arrays.copyOf(mRealMatches, size);
+    mPlayerSlots = Arrays.copyOf(mPlayerSlots, size);
+    mHeroIds = Arrays.copyOf(mHeroIds, size);
+    mAccepted = Arrays.copyOf(mAccepted, size);
+  }
+
+  // Pages are read newest first, put the games oldest first
+  private void reverse() {
+    for(int i = 0, j = mSize - 1; i < j; i++, j--) {
+      final long time = mTimestamps[i];
+      mTimestamps[i] = mTimestamps[j];
+      mTimestamps[j] = time;
+      final byte realMatch = mRealMatches[i];
+      mRealMatches[i] = mRealMatches[j];
+      mRealMatches[j] = realMatch;
+    }
+    mRadiantWins.clear();
+    for(int i = mReadWins.nextSetBit(0); i >= 0; i = mReadWins.nextSetBit(i + 1)) {
+      mRadiantWins.set(mSize - 1 - i);
+    }
+  }
+
+  /**
+   * @return the number of games.
+   */
+  public int size() {
+    return mSize;
+  }
+
+  /**
+   * @return the timestamp, the start time, of the game.
+   */
+  public long getTimestamp(int game) {
+    return mTimestamps[game];
+  }
+
+  public boolean isRadiantWin(int game) {
+    return mRadiantWins.get(game);
+  }
+
+  /**
+   * @return the real_match value of the game, 0 if it has none.
+   */
+  public int getRealMatch(int game) {
+    return mRealMatches[game];
+  }
+
+  /**
+   * @return true if the player of the game was read, only then are getPlayerSlot, getHeroId
+   *     and isWin valid.
+   */
+  public boolean hasPlayer(int game) {
+    return mHasPlayers.get(game);
+  }
+
+  /**
+   * @return true if the player won the game.
+   */
+  public boolean isWin(int game) {
+    return mRadiantWins.get(game) == DotaValues.radiantPlayer(mPlayerSlots[game]);
+  }
+
+  /**
+   * @return the raw player_slot of the player, see DotaValues.playerSlot.
+   */
+  public int getPlayerSlot(int game) {
+    return mPlayerSlots[game];
+  }
+
+  public int getHeroId(int game) {
+    return mHeroIds[game];
+  }
+}
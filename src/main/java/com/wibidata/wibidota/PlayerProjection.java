@@ -0,0 +1,132 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota;
+
+import com.wibidata.wibidota.avro.Player;
+import com.wibidata.wibidota.avro.Players;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.kiji.schema.KijiColumnName;
+import org.kiji.schema.KijiTable;
+import org.kiji.schema.KijiTableReader;
+import org.kiji.schema.layout.CellSpec;
+import org.kiji.schema.layout.KijiTableLayout;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds trimmed reader schemas for Player and Players that only hold some of Player's fields,
+ * so decoding player data only materializes those fields and Avro's schema resolution skips
+ * over the rest (ability upgrades, items, ...). The projected records are named ProjectedPlayer
+ * and ProjectedPlayers, with aliases to the full records, so they are decoded as
+ * GenericRecords rather than into the generated classes.
+ *
+ * Projections can be used by any KijiTableReader opened with openReader. The readers the Kiji
+ * MapReduce framework opens for producers and gatherers do not take cell spec overrides, so
+ * jobs read the projected columns with a reader of their own, see PlayerCellReader.
+ *
+ * ex. openReader(table, PLAYER, playerSchema("player_slot", "hero_id"))
+ */
+public final class PlayerProjection {
+
+  /** The column holding a match's Players in the dota_matches table. */
+  public static final KijiColumnName PLAYER_DATA = new KijiColumnName("data", "player_data");
+
+  /** The column holding a Player in the dota_players table. */
+  public static final KijiColumnName PLAYER = new KijiColumnName("data", "player");
+
+  private static final String NAMESPACE = "com.wibidata.wibidota.avro";
+
+  // This utility class should not be instantiated
+  private PlayerProjection() {}
+
+  private static Schema project(Schema full, String name, List<Schema.Field> fields) {
+    final Schema projected = Schema.createRecord(name, full.getDoc(), NAMESPACE, false);
+    projected.setFields(fields);
+    projected.addAlias(full.getFullName());
+    return projected;
+  }
+
+  /**
+   * @param fields, the names of the Player fields to keep.
+   * @return a reader schema for Player holding only the given fields.
+   * @throws IllegalArgumentException if Player has no field with one of the names.
+   */
+  public static Schema playerSchema(String... fields) {
+    final List<Schema.Field> kept = new ArrayList<Schema.Field>(fields.length);
+    for(String name : fields) {
+      final Schema.Field field = Player.SCHEMA$.getField(name);
+      if(field == null) {
+        throw new IllegalArgumentException("Player has no field " + name);
+      }
+      kept.add(new Schema.Field(field.name(), field.schema(), field.doc(), field.defaultValue()));
+    }
+    return project(Player.SCHEMA$, "ProjectedPlayer", kept);
+  }
+
+  /**
+   * @param fields, the names of the Player fields to keep.
+   * @return a reader schema for Players whose players hold only the given fields.
+   */
+  public static Schema playersSchema(String... fields) {
+    final Schema.Field players = Players.SCHEMA$.getField("players");
+    final List<Schema.Field> kept = new ArrayList<Schema.Field>(1);
+    kept.add(new Schema.Field(players.name(), Schema.createArray(playerSchema(fields)),
+        players.doc(), players.defaultValue()));
+    return project(Players.SCHEMA$, "ProjectedPlayers", kept);
+  }
+
+  /**
+   * @return a reader that decodes Avro binary Players with a schema from playersSchema.
+   */
+  public static GenericDatumReader<GenericRecord> playersReader(Schema projected) {
+    return new GenericDatumReader<GenericRecord>(Players.SCHEMA$, projected);
+  }
+
+  /**
+   * @return the cell spec of column in layout, reading with readerSchema.
+   */
+  public static CellSpec cellSpec(KijiTableLayout layout, KijiColumnName column,
+                                  Schema readerSchema) throws IOException {
+    return layout.getCellSpec(column).setReaderSchema(readerSchema);
+  }
+
+  /**
+   * Opens a reader of table that decodes column with a projected schema, values of the column
+   * are returned as GenericRecords.
+   *
+   * @param table, the table to read.
+   * @param column, the column to project, such as PLAYER_DATA or PLAYER.
+   * @param readerSchema, the projected schema from playersSchema or playerSchema.
+   * @return the reader, the caller should close it.
+   * @throws IOException if the reader could not be opened.
+   */
+  public static KijiTableReader openReader(KijiTable table, KijiColumnName column,
+                                           Schema readerSchema) throws IOException {
+    final Map<KijiColumnName, CellSpec> overrides = new HashMap<KijiColumnName, CellSpec>();
+    overrides.put(column, cellSpec(table.getLayout(), column, readerSchema));
+    return table.getReaderFactory().openTableReader(overrides);
+  }
+}
@@ -0,0 +1,195 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.kiji.mapreduce.KijiContext;
+import org.kiji.schema.KijiDataRequest;
+import org.kiji.schema.KijiRowData;
+
+import java.io.IOException;
+
+/**
+ * Walks each player's real matches in a dota_players row once, oldest first, and feeds every
+ * game to a set of TimelineAccumulators so several analyses share a single scan of the table.
+ *
+ * The accumulators are the comma separated class names in wibidota.timeline.accumulators
+ * (StreakAccumulator and WinRateWindowAccumulator by default). HeroCountsAccumulator emits a
+ * record per player and hero, far more than the aggregate statistics, so it is only run when
+ * listed and is best run on its own into a separate output.
+ *
+ * Games are real matches if their real_match is at least wibidota.timeline.min_real_match (2, a
+ * whole number since real_match only takes the values 0 to 3), read from a RealMatchIndex if
+ * wibidota.realmatch.index is set and match_derived_data:real_match otherwise. The first
+ * wibidota.timeline.burn_in (0) real matches of each player are marked as burn in, accumulators
+ * use them to build up state but do not count them.
+ *
+ * With a RealMatchIndex the games walked can also be limited to some game modes and lobby
+ * types, the comma separated values of wibidota.timeline.game_modes and
+ * wibidota.timeline.lobby_types (all of them by default), found with the index's bitmaps.
+ *
+ * Each row is read into a PlayerHistory, which pages through the columns and keeps only the
+ * few fields accumulators see of each game. Whether a game is walked is decided from its
+ * match id and real_match alone, only the players of walked games are read.
+ */
+public class PlayerTimeline {
+
+  /** Configuration key for the class names of the accumulators to run. */
+  public static final String ACCUMULATORS_KEY = "wibidota.timeline.accumulators";
+
+  /** Configuration key for the smallest real_match value of the games walked. */
+  public static final String MIN_REAL_MATCH_KEY = "wibidota.timeline.min_real_match";
+
+  /** Configuration key for the number of each player's first real matches to burn in. */
+  public static final String BURN_IN_KEY = "wibidota.timeline.burn_in";
+
+  /** Configuration key for the game modes walked, needs wibidota.realmatch.index. */
+  public static final String GAME_MODES_KEY = "wibidota.timeline.game_modes";
+
+  /** Configuration key for the lobby types walked, needs wibidota.realmatch.index. */
+  public static final String LOBBY_TYPES_KEY = "wibidota.timeline.lobby_types";
+
+  private static final Class<?>[] DEFAULT_ACCUMULATORS = new Class<?>[] {
+      StreakAccumulator.class, WinRateWindowAccumulator.class
+  };
+
+  private static final int DEFAULT_MIN_REAL_MATCH = 2;
+
+  private final TimelineAccumulator[] mAccumulators;
+  private final int mMinRealMatch;
+  private final int mBurnIn;
+  private final RealMatchIndex mIndex;
+  // The matches with each game mode and lobby type walked, empty to walk them all
+  private final MatchIdBitmap[] mGameModes;
+  private final MatchIdBitmap[] mLobbyTypes;
+  private final PlayerCellReader mPlayers;
+  private final PlayerGame mGame = new PlayerGame();
+  private final PlayerHistory mHistory = new PlayerHistory();
+
+  private final PlayerHistory.GameFilter mFilter = new PlayerHistory.GameFilter() {
+    public boolean accept(long matchId, int realMatch) {
+      return realMatch >= mMinRealMatch && anyContains(mGameModes, matchId) &&
+          anyContains(mLobbyTypes, matchId);
+    }
+  };
+
+  public PlayerTimeline(Configuration conf, TimelineAccumulator.Output out) throws IOException {
+    final Class<?>[] classes = conf.getClasses(ACCUMULATORS_KEY, DEFAULT_ACCUMULATORS);
+    mAccumulators = new TimelineAccumulator[classes.length];
+    for(int i = 0; i < classes.length; i++) {
+      if(!TimelineAccumulator.class.isAssignableFrom(classes[i])) {
+        throw new IllegalArgumentException(classes[i].getName() + " in " + ACCUMULATORS_KEY +
+            " is not a TimelineAccumulator");
+      }
+      mAccumulators[i] = (TimelineAccumulator) ReflectionUtils.newInstance(classes[i], conf);
+      mAccumulators[i].setup(conf, out);
+    }
+    final float minRealMatch = conf.getFloat(MIN_REAL_MATCH_KEY, DEFAULT_MIN_REAL_MATCH);
+    if(minRealMatch != (int) minRealMatch) {
+      throw new IllegalArgumentException(MIN_REAL_MATCH_KEY + " must be a whole number, was " +
+          minRealMatch);
+    }
+    mMinRealMatch = (int) minRealMatch;
+    mBurnIn = conf.getInt(BURN_IN_KEY, 0);
+    mIndex = RealMatchIndex.fromConf(conf);
+    final int[] gameModes = conf.getInts(GAME_MODES_KEY);
+    final int[] lobbyTypes = conf.getInts(LOBBY_TYPES_KEY);
+    if(mIndex == null && (gameModes.length > 0 || lobbyTypes.length > 0)) {
+      throw new IllegalArgumentException(GAME_MODES_KEY + " and " + LOBBY_TYPES_KEY +
+          " need " + RealMatchIndex.INDEX_KEY + " to be set");
+    }
+    mGameModes = new MatchIdBitmap[gameModes.length];
+    for(int i = 0; i < gameModes.length; i++) {
+      mGameModes[i] = mIndex.withGameMode(gameModes[i]);
+    }
+    mLobbyTypes = new MatchIdBitmap[lobbyTypes.length];
+    for(int i = 0; i < lobbyTypes.length; i++) {
+      mLobbyTypes[i] = mIndex.withLobbyType(lobbyTypes[i]);
+    }
+    mPlayers = new PlayerCellReader(conf);
+  }
+
+  // True if bitmaps is empty, meaning every match, or one of them holds matchId
+  private static boolean anyContains(MatchIdBitmap[] bitmaps, long matchId) {
+    if(bitmaps.length == 0) {
+      return true;
+    }
+    for(MatchIdBitmap bitmap : bitmaps) {
+      if(bitmap.contains(matchId)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return a request paging through the columns the timeline reads.
+   */
+  public static KijiDataRequest dataRequest(Configuration conf) {
+    return PagedPlayerCells.dataRequest(conf);
+  }
+
+  /**
+   * Feeds the real matches in row, a row of dota_players, to the accumulators.
+   */
+  public void walk(KijiRowData row) throws IOException {
+    final int accountId = row.getEntityId().<Integer>getComponentByIndex(0);
+    mHistory.read(row, mIndex, mFilter, mPlayers);
+    for(TimelineAccumulator accumulator : mAccumulators) {
+      accumulator.startPlayer(accountId);
+    }
+    mGame.mAccountId = accountId;
+    mGame.mGameNumber = 0;
+    for(int i = 0; i < mHistory.size(); i++) {
+      if(!mHistory.hasPlayer(i)) {
+        continue;
+      }
+      mGame.mTimestamp = mHistory.getTimestamp(i);
+      mGame.mGameNumber++;
+      mGame.mCellNumber = i + 1;
+      mGame.mBurnIn = mGame.mGameNumber <= mBurnIn;
+      mGame.mWin = mHistory.isWin(i);
+      mGame.mRealMatch = mHistory.getRealMatch(i);
+      mGame.mHeroId = mHistory.getHeroId(i);
+      mGame.mPlayerSlot = mHistory.getPlayerSlot(i);
+      for(TimelineAccumulator accumulator : mAccumulators) {
+        accumulator.game(mGame);
+      }
+    }
+    for(TimelineAccumulator accumulator : mAccumulators) {
+      accumulator.endPlayer();
+    }
+  }
+
+  /**
+   * Lets the accumulators emit what they aggregated and report their counters to context, call
+   * once after the last row. Closes the reader of players.
+   */
+  public void cleanup(KijiContext context) throws IOException {
+    try {
+      for(TimelineAccumulator accumulator : mAccumulators) {
+        accumulator.cleanup(context);
+      }
+    } finally {
+      mPlayers.close();
+    }
+  }
+}
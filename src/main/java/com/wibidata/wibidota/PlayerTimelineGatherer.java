@@ -0,0 +1,86 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota;
+
+import org.apache.hadoop.io.Text;
+import org.kiji.mapreduce.gather.GathererContext;
+import org.kiji.mapreduce.gather.KijiGatherer;
+import org.kiji.schema.KijiDataRequest;
+import org.kiji.schema.KijiRowData;
+
+import java.io.IOException;
+
+/**
+ * Runs a PlayerTimeline over dota_players, computing every configured TimelineAccumulator's
+ * statistic in a single scan of the table. Emits keys of the form "<statistic>\t<key>"
+ * along with CountsWritables of that key's counts. Use with SumCountsReducer, which can also
+ * be used as the combiner.
+ */
+public class PlayerTimelineGatherer extends KijiGatherer<Text, CountsWritable> {
+
+  private PlayerTimeline mTimeline = null;
+
+  private TaskMetrics mMetrics = null;
+
+  @Override
+  public void setup(final GathererContext<Text, CountsWritable> context) throws IOException {
+    final Text outKey = new Text();
+    final CountsWritable outCounts = new CountsWritable();
+    mTimeline = new PlayerTimeline(getConf(), new TimelineAccumulator.Output() {
+      public void emit(String statistic, String key, long[] counts) throws IOException {
+        outKey.set(statistic + "\t" + key);
+        outCounts.set(counts);
+        context.write(outKey, outCounts);
+      }
+    });
+    mMetrics = new TaskMetrics(getConf(), "PlayerTimelineGatherer");
+    super.setup(context);
+  }
+
+  @Override
+  public void gather(KijiRowData input, GathererContext<Text, CountsWritable> context)
+      throws IOException {
+    final long gatherStart = TaskMetrics.start();
+    mTimeline.walk(input);
+    mMetrics.stop(TaskMetrics.Metric.GATHER_NANOS, gatherStart);
+  }
+
+  @Override
+  public void cleanup(GathererContext<Text, CountsWritable> context) throws IOException {
+    mTimeline.cleanup(context);
+    mMetrics.reportCounters(context);
+    mMetrics.close();
+  }
+
+  @Override
+  public KijiDataRequest getDataRequest() {
+    return PlayerTimeline.dataRequest(getConf());
+  }
+
+  @Override
+  public Class<?> getOutputKeyClass() {
+    return Text.class;
+  }
+
+  @Override
+  public Class<?> getOutputValueClass() {
+    return CountsWritable.class;
+  }
+}
@@ -36,39 +36,57 @@ import java.util.NavigableMap;
 
 /**
  * Class to transfer derived data from the dota_matches table to the
- * dota_players table. Issue buffered puts to the dota_players table.
+ * dota_players table. Puts are batched by region of the dota_players table and written
+ * from a background thread (see AsyncTableWriter) so the scan is not blocked by each flush.
+ * The batch size and number of batches that can be queued are set with
+ * wibidota.port.batch_size and wibidota.port.queued_batches.
  */
 public class PortDerivedData extends KijiGatherer<LongWritable, Text> {
 
-  private static final Logger LOG = LoggerFactory.getLogger(DotaGatherExampleValues.class);
+  private static final Logger LOG = LoggerFactory.getLogger(PortDerivedData.class);
+
+  /** Configuration key for the number of cells written per a flush. */
+  public static final String BATCH_SIZE_KEY = "wibidota.port.batch_size";
+
+  /** Configuration key for the number of full batches that can wait to be written. */
+  public static final String QUEUED_BATCHES_KEY = "wibidota.port.queued_batches";
+
+  private static final int DEFAULT_BATCH_SIZE = 1000;
+
+  private static final int DEFAULT_QUEUED_BATCHES = 4;
 
   private static final KijiURI kijiURI = KijiURI.newBuilder()
       .withInstanceName("wibidota").build();
-  private static KijiTable mTable;
-  private static KijiBufferedWriter mWriter;
-  private static Kiji mKiji;
-  private static int writes = 0;
+  private KijiTable mTable;
+  private AsyncTableWriter mWriter;
+  private Kiji mKiji;
+  private TaskMetrics mMetrics;
 
   @Override
-  public void setup(GathererContext context) {
+  public void setup(GathererContext context) throws IOException {
+    final int batchSize = getConf().getInt(BATCH_SIZE_KEY, DEFAULT_BATCH_SIZE);
+    final int queuedBatches = getConf().getInt(QUEUED_BATCHES_KEY, DEFAULT_QUEUED_BATCHES);
+    LOG.info("Writing batches of " + batchSize + " with up to " + queuedBatches + " queued");
     try {
       mKiji = Kiji.Factory.open(kijiURI);
       mTable = mKiji.openTable("dota_players");
-      mWriter = mTable.getWriterFactory().openBufferedWriter();
+      mWriter = new AsyncTableWriter(mTable, batchSize, queuedBatches);
+      mMetrics = new TaskMetrics(getConf(), "PortDerivedData");
     } catch (IOException e) {
-      throw new RuntimeException("Unable to open mTable: " + kijiURI.toString());
+      throw new IOException("Unable to open mTable: " + kijiURI.toString(), e);
     }
   }
 
   @Override
-  public void cleanup(GathererContext context) {
+  public void cleanup(GathererContext context) throws IOException {
     try {
-      mWriter.flush();
       mWriter.close();
+      mWriter.reportCounters(context);
+      mMetrics.reportCounters(context);
+      mMetrics.close();
+    } finally {
       mTable.release();
       mKiji.release();
-    } catch (IOException e) {
-      throw new RuntimeException("Unable to release table: " + kijiURI.toString());
     }
   }
 
@@ -91,26 +109,27 @@ public class PortDerivedData extends KijiGatherer<LongWritable, Text> {
   @Override
   public void gather(KijiRowData kijiRowData,
                      GathererContext<LongWritable, Text> gathererContext) throws IOException {
+    final long gatherStart = TaskMetrics.start();
     Players players = kijiRowData.getMostRecentValue("data", "player_data");
     NavigableMap<String, Double> data = kijiRowData.getMostRecentValues("derived_data");
     if(data.size() == 0) {
       return;
     }
-    if(writes > 200) {
-      writes = 0;
-      mWriter.flush();
-    }
     long time = kijiRowData.getMostRecentCell("data", "player_data").getTimestamp();
+    int cells = 0;
     for(Player player : players.getPlayers()) {
       Integer accountId = player.getAccountId();
       if(DotaValues.nonAnonPlayer(accountId)) {
         EntityId id = mTable.getEntityId(accountId);
         for(Map.Entry<String, Double> entry : data.entrySet()) {
-          writes++;
           mWriter.put(id, "match_derived_data", entry.getKey(), time, entry.getValue());
+          cells++;
         }
       }
     }
+    mWriter.reportCounters(gathererContext);
+    mMetrics.record(TaskMetrics.Metric.CELLS_PER_ROW, cells);
+    mMetrics.stop(TaskMetrics.Metric.GATHER_NANOS, gatherStart);
   }
 
   @Override
@@ -0,0 +1,204 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A mergeable sketch of a distribution of values for approximating its quantiles, in the
+ * style of DDSketch. Positive values are counted in logarithmically sized bins, so any
+ * quantile is returned to within a relative accuracy (1% by default) of the true value,
+ * and sketches built in separate tasks merge exactly by adding their bins. Values at or
+ * below 0 are counted together and reported as 0.
+ */
+public class QuantileSketch implements Writable {
+
+  public static final double DEFAULT_ACCURACY = 0.01;
+
+  // Bins up to this index, values up to about 27,000 at 1% accuracy, are held in dense arrays
+  private static final int DENSE_BINS = 511;
+
+  private double mAccuracy;
+  private double mGamma;
+  private double mLogGamma;
+
+  private final IntCountsMap mBins = new IntCountsMap(1, 0, DENSE_BINS);
+  private long mZeros = 0;
+  private long mCount = 0;
+  private double mMin = Double.POSITIVE_INFINITY;
+  private double mMax = Double.NEGATIVE_INFINITY;
+
+  private final IntCountsMap.Visitor mMerger = new IntCountsMap.Visitor() {
+    public void visit(int bin, long[] counts) {
+      mBins.add(bin, 0, counts[0]);
+    }
+  };
+
+  public QuantileSketch() {
+    this(DEFAULT_ACCURACY);
+  }
+
+  /**
+   * @param accuracy, the relative accuracy of the quantiles, between 0 and 1.
+   */
+  public QuantileSketch(double accuracy) {
+    reset(accuracy);
+  }
+
+  /**
+   * Empties the sketch and changes its accuracy.
+   */
+  public void reset(double accuracy) {
+    if(accuracy <= 0.0 || accuracy >= 1.0) {
+      throw new IllegalArgumentException("Accuracy must be between 0 and 1, got " + accuracy);
+    }
+    mAccuracy = accuracy;
+    mGamma = (1 + accuracy) / (1 - accuracy);
+    mLogGamma = Math.log(mGamma);
+    clear();
+  }
+
+  public void clear() {
+    mBins.clear();
+    mZeros = 0;
+    mCount = 0;
+    mMin = Double.POSITIVE_INFINITY;
+    mMax = Double.NEGATIVE_INFINITY;
+  }
+
+  public void add(double value) {
+    if(value > 0.0) {
+      mBins.add((int) Math.ceil(Math.log(value) / mLogGamma), 0, 1);
+    } else {
+      mZeros++;
+    }
+    mCount++;
+    mMin = Math.min(mMin, value);
+    mMax = Math.max(mMax, value);
+  }
+
+  /**
+   * Adds the values of other, which must have the same accuracy, to this sketch.
+   */
+  public void merge(QuantileSketch other) throws IOException {
+    if(other.mAccuracy != mAccuracy) {
+      throw new IllegalArgumentException("Can not merge sketches with accuracies " +
+          mAccuracy + " and " + other.mAccuracy);
+    }
+    other.mBins.forEach(mMerger);
+    mZeros += other.mZeros;
+    mCount += other.mCount;
+    mMin = Math.min(mMin, other.mMin);
+    mMax = Math.max(mMax, other.mMax);
+  }
+
+  /**
+   * @param q, the quantile between 0 and 1, 0.5 for the median.
+   * @return the approximate value at quantile q, NaN if the sketch is empty.
+   */
+  public double quantile(double q) throws IOException {
+    if(mCount == 0) {
+      return Double.NaN;
+    }
+    long rank = (long) (q * (mCount - 1));
+    if(rank < mZeros) {
+      return Math.max(mMin, Math.min(0.0, mMax));
+    }
+    rank -= mZeros;
+    for(int bin : sortedBins()) {
+      rank -= mBins.get(bin, 0);
+      if(rank < 0) {
+        // The middle of the bin, within the accuracy of any value in it
+        final double value = 2 * Math.pow(mGamma, bin) / (mGamma + 1);
+        return Math.max(mMin, Math.min(value, mMax));
+      }
+    }
+    return mMax;
+  }
+
+  private int[] sortedBins() throws IOException {
+    final int[] bins = new int[mBins.size()];
+    mBins.forEach(new IntCountsMap.Visitor() {
+      private int mNext = 0;
+      public void visit(int bin, long[] counts) {
+        bins[mNext++] = bin;
+      }
+    });
+    Arrays.sort(bins);
+    return bins;
+  }
+
+  public double getAccuracy() {
+    return mAccuracy;
+  }
+
+  public long getCount() {
+    return mCount;
+  }
+
+  public double getMin() {
+    return mMin;
+  }
+
+  public double getMax() {
+    return mMax;
+  }
+
+  /**
+   * @return roughly the number of bytes the sketch takes up.
+   */
+  public long estimatedBytes() {
+    return mBins.estimatedBytes();
+  }
+
+  public void write(final DataOutput out) throws IOException {
+    out.writeDouble(mAccuracy);
+    WritableUtils.writeVLong(out, mCount);
+    WritableUtils.writeVLong(out, mZeros);
+    out.writeDouble(mMin);
+    out.writeDouble(mMax);
+    WritableUtils.writeVInt(out, mBins.size());
+    mBins.forEach(new IntCountsMap.Visitor() {
+      public void visit(int bin, long[] counts) throws IOException {
+        WritableUtils.writeVInt(out, bin);
+        WritableUtils.writeVLong(out, counts[0]);
+      }
+    });
+  }
+
+  public void readFields(DataInput in) throws IOException {
+    reset(in.readDouble());
+    mCount = WritableUtils.readVLong(in);
+    mZeros = WritableUtils.readVLong(in);
+    mMin = in.readDouble();
+    mMax = in.readDouble();
+    final int bins = WritableUtils.readVInt(in);
+    for(int i = 0; i < bins; i++) {
+      final int bin = WritableUtils.readVInt(in);
+      mBins.add(bin, 0, WritableUtils.readVLong(in));
+    }
+  }
+}
@@ -0,0 +1,113 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota;
+
+import com.google.gson.JsonObject;
+import com.wibidata.wibidota.avro.Players;
+
+/**
+ * The match level values of a single line of the raw match JSON along with
+ * the per-player stats, as they are stored in the dota_matches and dota_players tables.
+ * Can be filled either from a parsed JsonObject or by the StreamingMatchParser.
+ */
+public class RawMatch {
+
+  public long matchId;
+  public int gameMode;
+  public int lobbyType;
+  public int direTowers;
+  public int radiantTowers;
+  public int direBarracks;
+  public int radiantBarracks;
+  public int cluster;
+  public Integer season;
+  public long startTime; // In milliseconds
+  public long seqNum;
+  public int leagueId;
+  public int firstBloodTime;
+  public int negativeVotes;
+  public int positiveVotes;
+  public int duration;
+  public boolean radiantWin;
+  public int humanPlayers;
+  public Players players;
+
+  /**
+   * Reads a RawMatch from a JsonObject holding a complete match.
+   *
+   * @param matchData, the match.
+   * @return the RawMatch with matchData's content.
+   */
+  public static RawMatch fromJson(JsonObject matchData) {
+    RawMatch match = new RawMatch();
+    match.matchId = matchData.get("match_id").getAsLong();
+    match.gameMode = matchData.get("game_mode").getAsInt();
+    match.lobbyType = matchData.get("lobby_type").getAsInt();
+    match.direTowers = matchData.get("tower_status_dire").getAsInt();
+    match.radiantTowers = matchData.get("tower_status_radiant").getAsInt();
+    match.direBarracks = matchData.get("barracks_status_dire").getAsInt();
+    match.radiantBarracks = matchData.get("barracks_status_radiant").getAsInt();
+    match.cluster = matchData.get("cluster").getAsInt();
+    match.season = DotaMatchBulkImporter.getNullableInt(matchData.get("season"));
+    match.startTime = matchData.get("start_time").getAsLong() * 1000; // convert to milliseconds
+    match.seqNum = matchData.get("match_seq_num").getAsLong();
+    match.leagueId = matchData.get("leagueid").getAsInt();
+    match.firstBloodTime = matchData.get("first_blood_time").getAsInt();
+    match.negativeVotes = matchData.get("negative_votes").getAsInt();
+    match.positiveVotes = matchData.get("positive_votes").getAsInt();
+    match.duration = matchData.get("duration").getAsInt();
+    match.radiantWin = matchData.get("radiant_win").getAsBoolean();
+    match.humanPlayers = matchData.get("human_players").getAsInt();
+    match.players = DotaMatchBulkImporter.extractPlayers(matchData);
+    return match;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if(!(o instanceof RawMatch)) {
+      return false;
+    }
+    RawMatch other = (RawMatch) o;
+    return matchId == other.matchId
+        && gameMode == other.gameMode
+        && lobbyType == other.lobbyType
+        && direTowers == other.direTowers
+        && radiantTowers == other.radiantTowers
+        && direBarracks == other.direBarracks
+        && radiantBarracks == other.radiantBarracks
+        && cluster == other.cluster
+        && (season == null ? other.season == null : season.equals(other.season))
+        && startTime == other.startTime
+        && seqNum == other.seqNum
+        && leagueId == other.leagueId
+        && firstBloodTime == other.firstBloodTime
+        && negativeVotes == other.negativeVotes
+        && positiveVotes == other.positiveVotes
+        && duration == other.duration
+        && radiantWin == other.radiantWin
+        && humanPlayers == other.humanPlayers
+        && (players == null ? other.players == null : players.equals(other.players));
+  }
+
+  @Override
+  public int hashCode() {
+    return (int) (matchId ^ (matchId >>> 32));
+  }
+}
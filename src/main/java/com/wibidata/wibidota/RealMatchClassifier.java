@@ -0,0 +1,153 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota;
+
+import com.wibidata.wibidota.DotaValues.GameMode;
+import com.wibidata.wibidota.DotaValues.LobbyType;
+import com.wibidata.wibidota.avro.Player;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The rules deciding the 'real_match' value of a match, shared by RealMatchProducer,
+ * RealMatchDerivation and the DeriveRealMatch Express job. The game mode, lobby type and
+ * leaver status checks are precomputed into tables indexed by the raw values so classifying
+ * a match is a few array reads. Values outside the tables are treated as not serious.
+ *
+ * A match is real if it was played in a serious game mode and lobby with 10 human players, its
+ * value is then 3.0 if all players stayed, 2.0 if some safely left and 1.0 if any abandoned.
+ */
+public final class RealMatchClassifier {
+
+  /** Leaver severity of a player who stayed the whole game. */
+  public static final int STAYED = 0;
+
+  /** Leaver severity of a player who safely left or disconnected near the end. */
+  public static final int SAFE_LEAVE = 1;
+
+  /** Leaver severity of a player who abandoned, or any other status (including bots). */
+  public static final int ABANDONED = 2;
+
+  /** Value of a match that is not real. */
+  public static final double NOT_REAL = 0.0;
+
+  // Indexed by the raw game_mode
+  private static final boolean[] SERIOUS_GAME_MODES = new boolean[GameMode.values().length];
+
+  // Indexed by the raw lobby_type + 1 (lobby types start at -1)
+  private static final boolean[] SERIOUS_LOBBIES = new boolean[LobbyType.values().length];
+
+  // Indexed by the raw leaver_status
+  private static final int[] LEAVER_SEVERITY = new int[8];
+
+  // Indexed by the worst leaver severity
+  private static final double[] REAL_MATCH_VALUES = new double[] {3.0, 2.0, 1.0};
+
+  static {
+    for(GameMode gameMode : GameMode.values()) {
+      SERIOUS_GAME_MODES[gameMode.getEncoding()] = GameMode.seriousGame(gameMode);
+    }
+    for(LobbyType lobbyType : LobbyType.values()) {
+      SERIOUS_LOBBIES[lobbyType.getEncoding() + 1] = LobbyType.seriousLobby(lobbyType);
+    }
+    Arrays.fill(LEAVER_SEVERITY, ABANDONED);
+    LEAVER_SEVERITY[0] = STAYED;
+    LEAVER_SEVERITY[1] = SAFE_LEAVE;
+  }
+
+  // This utility class should not be instantiated
+  private RealMatchClassifier() {}
+
+  /**
+   * @param gameMode, the raw game_mode.
+   * @return true iff the game mode counts towards a real match.
+   */
+  public static boolean seriousGameMode(int gameMode) {
+    return gameMode >= 0 && gameMode < SERIOUS_GAME_MODES.length && SERIOUS_GAME_MODES[gameMode];
+  }
+
+  /**
+   * @param lobbyType, the raw lobby_type.
+   * @return true iff the lobby type counts towards a real match.
+   */
+  public static boolean seriousLobby(int lobbyType) {
+    final int i = lobbyType + 1;
+    return i >= 0 && i < SERIOUS_LOBBIES.length && SERIOUS_LOBBIES[i];
+  }
+
+  /**
+   * @param leaverStatus, the raw leaver_status.
+   * @return STAYED, SAFE_LEAVE or ABANDONED.
+   */
+  public static int leaverSeverity(int leaverStatus) {
+    return (leaverStatus >= 0 && leaverStatus < LEAVER_SEVERITY.length) ?
+        LEAVER_SEVERITY[leaverStatus] : ABANDONED;
+  }
+
+  /**
+   * @param leaverStatus, the raw leaver_status, null for bots.
+   * @return STAYED, SAFE_LEAVE or ABANDONED.
+   */
+  public static int leaverSeverity(Integer leaverStatus) {
+    return leaverStatus == null ? ABANDONED : leaverSeverity(leaverStatus.intValue());
+  }
+
+  /**
+   * @param players, the players of a match.
+   * @return the highest leaver severity of any of the players.
+   */
+  public static int worstLeaver(List<Player> players) {
+    int worst = STAYED;
+    for(int i = 0; i < players.size() && worst < ABANDONED; i++) {
+      final int severity = leaverSeverity(players.get(i).getLeaverStatus());
+      if(severity > worst) {
+        worst = severity;
+      }
+    }
+    return worst;
+  }
+
+  /**
+   * @return true iff a match with these values is real, ignoring leavers.
+   */
+  public static boolean isReal(int gameMode, int lobbyType, int humanPlayers) {
+    return seriousGameMode(gameMode) && seriousLobby(lobbyType) && humanPlayers == 10;
+  }
+
+  /**
+   * @param worstLeaver, the highest leaver severity of the match's players.
+   * @return the real_match value of a real match.
+   */
+  public static double realMatchValue(int worstLeaver) {
+    return REAL_MATCH_VALUES[worstLeaver];
+  }
+
+  /**
+   * @return the real_match value of a match, or NOT_REAL.
+   */
+  public static double classify(int gameMode, int lobbyType, int humanPlayers,
+                                List<Player> players) {
+    if(!isReal(gameMode, lobbyType, humanPlayers)) {
+      return NOT_REAL;
+    }
+    return realMatchValue(worstLeaver(players));
+  }
+}
@@ -0,0 +1,36 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota;
+
+/**
+ * Derives the 'real_match' value of RealMatchProducer while importing a match.
+ */
+public class RealMatchDerivation implements MatchDerivation {
+
+  public String getQualifier() {
+    return "real_match";
+  }
+
+  public Double derive(RawMatch match) {
+    final double value = RealMatchClassifier.classify(match.gameMode, match.lobbyType,
+        match.humanPlayers, match.players.getPlayers());
+    return value == RealMatchClassifier.NOT_REAL ? null : value;
+  }
+}
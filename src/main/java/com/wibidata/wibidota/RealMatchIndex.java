@@ -0,0 +1,269 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An in-memory index of the matches RealMatchProducer has classified, made of MatchIdBitmaps of
+ * the match ids at each real_match level, with each game mode and with each lobby type. Jobs can
+ * load it to filter matches by id before decoding anything else about them.
+ *
+ * RealMatchProducer writes a part of the index per task to the directory given by
+ * wibidota.realmatch.index_dir, jobs load an index from the file or directory of parts given
+ * by wibidota.realmatch.index. Running this class merges a directory of parts into one file:
+ *
+ * ex. kiji jar $WIBIDOTA/lib/wibi-dota-0.0.1.jar com.wibidata.wibidota.RealMatchIndex \
+ *   hdfs://path/to/index/parts hdfs://path/to/real_match.idx
+ */
+public class RealMatchIndex extends Configured implements Tool {
+
+  private static final Logger LOG = LoggerFactory.getLogger(RealMatchIndex.class);
+
+  /** Configuration key for the directory RealMatchProducer writes index parts to. */
+  public static final String INDEX_DIR_KEY = "wibidota.realmatch.index_dir";
+
+  /** Configuration key for the index file, or directory of parts, for jobs to load. */
+  public static final String INDEX_KEY = "wibidota.realmatch.index";
+
+  // real_match values are 1.0, 2.0 or 3.0
+  private static final int MAX_LEVEL = 3;
+
+  // Every match added, real or not
+  private MatchIdBitmap mIndexed = new MatchIdBitmap();
+  // Real matches by level, index 0 is unused
+  private final MatchIdBitmap[] mLevels = new MatchIdBitmap[MAX_LEVEL + 1];
+  private final Map<Integer, MatchIdBitmap> mGameModes = new TreeMap<Integer, MatchIdBitmap>();
+  private final Map<Integer, MatchIdBitmap> mLobbyTypes = new TreeMap<Integer, MatchIdBitmap>();
+
+  public RealMatchIndex() {
+    for(int i = 1; i <= MAX_LEVEL; i++) {
+      mLevels[i] = new MatchIdBitmap();
+    }
+  }
+
+  private static MatchIdBitmap bitmapFor(Map<Integer, MatchIdBitmap> bitmaps, int value) {
+    MatchIdBitmap bitmap = bitmaps.get(value);
+    if(bitmap == null) {
+      bitmap = new MatchIdBitmap();
+      bitmaps.put(value, bitmap);
+    }
+    return bitmap;
+  }
+
+  /**
+   * Adds a classified match.
+   *
+   * @param matchId, the match's id.
+   * @param gameMode, the match's game_mode.
+   * @param lobbyType, the match's lobby_type.
+   * @param realMatch, the match's real_match value, 0.0 if it is not a real match.
+   */
+  public void add(long matchId, int gameMode, int lobbyType, double realMatch) {
+    mIndexed.add(matchId);
+    final int level = (int) realMatch;
+    if(level > 0) {
+      if(level > MAX_LEVEL) {
+        throw new IllegalArgumentException("Unexpected real_match value " + realMatch);
+      }
+      mLevels[level].add(matchId);
+    }
+    bitmapFor(mGameModes, gameMode).add(matchId);
+    bitmapFor(mLobbyTypes, lobbyType).add(matchId);
+  }
+
+  /**
+   * @return true if matchId has been classified and is in this index.
+   */
+  public boolean contains(long matchId) {
+    return mIndexed.contains(matchId);
+  }
+
+  /**
+   * @return the real_match value of matchId, 0.0 if it is not a real match or not in the index.
+   */
+  public double realMatch(long matchId) {
+    for(int level = MAX_LEVEL; level > 0; level--) {
+      if(mLevels[level].contains(matchId)) {
+        return level;
+      }
+    }
+    return 0.0;
+  }
+
+  /**
+   * @return true if matchId is a real match with a real_match value of at least minLevel.
+   */
+  public boolean isRealMatch(long matchId, double minLevel) {
+    final double level = realMatch(matchId);
+    return level > 0.0 && level >= minLevel;
+  }
+
+  /**
+   * @return the ids of the matches with the given game_mode.
+   */
+  public MatchIdBitmap withGameMode(int gameMode) {
+    final MatchIdBitmap bitmap = mGameModes.get(gameMode);
+    return bitmap == null ? new MatchIdBitmap() : bitmap;
+  }
+
+  /**
+   * @return the ids of the matches with the given lobby_type.
+   */
+  public MatchIdBitmap withLobbyType(int lobbyType) {
+    final MatchIdBitmap bitmap = mLobbyTypes.get(lobbyType);
+    return bitmap == null ? new MatchIdBitmap() : bitmap;
+  }
+
+  /**
+   * Adds every match in other to this index.
+   */
+  public void merge(RealMatchIndex other) {
+    mIndexed.or(other.mIndexed);
+    for(int i = 1; i <= MAX_LEVEL; i++) {
+      mLevels[i].or(other.mLevels[i]);
+    }
+    for(Map.Entry<Integer, MatchIdBitmap> entry : other.mGameModes.entrySet()) {
+      bitmapFor(mGameModes, entry.getKey()).or(entry.getValue());
+    }
+    for(Map.Entry<Integer, MatchIdBitmap> entry : other.mLobbyTypes.entrySet()) {
+      bitmapFor(mLobbyTypes, entry.getKey()).or(entry.getValue());
+    }
+  }
+
+  private static void writeBitmaps(DataOutput out, Map<Integer, MatchIdBitmap> bitmaps)
+      throws IOException {
+    out.writeInt(bitmaps.size());
+    for(Map.Entry<Integer, MatchIdBitmap> entry : bitmaps.entrySet()) {
+      out.writeInt(entry.getKey());
+      entry.getValue().write(out);
+    }
+  }
+
+  private static void readBitmaps(DataInput in, Map<Integer, MatchIdBitmap> bitmaps)
+      throws IOException {
+    final int size = in.readInt();
+    for(int i = 0; i < size; i++) {
+      bitmaps.put(in.readInt(), MatchIdBitmap.read(in));
+    }
+  }
+
+  public void write(DataOutput out) throws IOException {
+    mIndexed.write(out);
+    for(int i = 1; i <= MAX_LEVEL; i++) {
+      mLevels[i].write(out);
+    }
+    writeBitmaps(out, mGameModes);
+    writeBitmaps(out, mLobbyTypes);
+  }
+
+  public static RealMatchIndex read(DataInput in) throws IOException {
+    final RealMatchIndex index = new RealMatchIndex();
+    index.mIndexed = MatchIdBitmap.read(in);
+    for(int i = 1; i <= MAX_LEVEL; i++) {
+      index.mLevels[i] = MatchIdBitmap.read(in);
+    }
+    readBitmaps(in, index.mGameModes);
+    readBitmaps(in, index.mLobbyTypes);
+    return index;
+  }
+
+  /**
+   * Writes this index to a file.
+   */
+  public void save(Configuration conf, Path path) throws IOException {
+    final FSDataOutputStream out = path.getFileSystem(conf).create(path, true);
+    try {
+      write(out);
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Loads an index from a file, or from every file in a directory of parts.
+   */
+  public static RealMatchIndex load(Configuration conf, Path path) throws IOException {
+    final FileSystem fs = path.getFileSystem(conf);
+    if(!fs.getFileStatus(path).isDir()) {
+      final FSDataInputStream in = fs.open(path);
+      try {
+        return read(in);
+      } finally {
+        in.close();
+      }
+    }
+    final RealMatchIndex index = new RealMatchIndex();
+    for(FileStatus status : fs.listStatus(path)) {
+      if(!status.isDir() && !status.getPath().getName().startsWith("_")) {
+        index.merge(load(conf, status.getPath()));
+      }
+    }
+    return index;
+  }
+
+  /**
+   * @return the index given by wibidota.realmatch.index, or null if it is not set.
+   */
+  public static RealMatchIndex fromConf(Configuration conf) throws IOException {
+    final String path = conf.get(INDEX_KEY);
+    if(path == null) {
+      return null;
+    }
+    final RealMatchIndex index = load(conf, new Path(path));
+    LOG.info("Loaded real match index of " + index.mIndexed.cardinality() + " matches from " +
+        path);
+    return index;
+  }
+
+  public static void main(String args[]) throws Exception {
+    Configuration conf = new Configuration();
+    int res = ToolRunner.run(conf, new RealMatchIndex(), args);
+    System.exit(res);
+  }
+
+  public final int run(final String[] args) throws Exception {
+    if(args.length != 2) {
+      System.err.println("Usage: RealMatchIndex <index parts directory> <output file>");
+      return -1;
+    }
+    final RealMatchIndex index = load(getConf(), new Path(args[0]));
+    index.save(getConf(), new Path(args[1]));
+    System.out.println("Merged index of " + index.mIndexed.cardinality() + " matches, " +
+        index.mLevels[MAX_LEVEL].cardinality() + " with no leavers");
+    return 0;
+  }
+}
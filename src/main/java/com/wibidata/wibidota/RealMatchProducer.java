@@ -20,13 +20,13 @@
 package com.wibidata.wibidota;
 
 import com.wibidata.wibidota.DotaValues.Columns;
-import com.wibidata.wibidota.DotaValues.LeaverStatus;
-import com.wibidata.wibidota.DotaValues.LobbyType;
-import com.wibidata.wibidota.avro.Player;
+import com.wibidata.wibidota.avro.MatchSummary;
 import com.wibidata.wibidota.avro.Players;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
 import org.kiji.mapreduce.produce.KijiProducer;
 import org.kiji.mapreduce.produce.ProducerContext;
+import org.kiji.schema.KijiCell;
 import org.kiji.schema.KijiDataRequest;
 import org.kiji.schema.KijiDataRequestBuilder;
 import org.kiji.schema.KijiRowData;
@@ -34,7 +34,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.util.List;
 
 /**
  * Adds a 'serious_match' column to the derived data field that is non null iff the match is a
@@ -44,6 +43,12 @@ import java.util.List;
  * 3.0 -> all players stayed
  * 2.0 -> Some players 'safe abandon' (often means they disconnected slightly before the match ended)
  * 1.0 -> One or more players abandoned the game
+ * The rules are those of RealMatchClassifier.
+ *
+ * If wibidota.changelog.dir is set the values written are also logged so they can be copied
+ * to dota_players with ApplyDerivedDataChanges, see DerivedDataChangeLog. If
+ * wibidota.realmatch.index_dir is set every match is also added to a RealMatchIndex, written
+ * as a part per task to that directory.
  */
 public class RealMatchProducer extends KijiProducer {
 
@@ -59,17 +64,39 @@ public class RealMatchProducer extends KijiProducer {
     REAL_MATCH_WITH_SAFE_LEAVERS, // Matches valid except for the presence of leavers
     BAD_MATCHES,   // Number  of matches not considered real
     UNDER_TEN_PLAYERS,   // Number  of matches with less than 10 players
+    NO_MATCH_SUMMARY,    // Matches skipped since they have no match_summary or legacy columns
+  }
+
+  private DerivedDataChangeLog mChangeLog = null;
+
+  // Null unless building an index
+  private RealMatchIndex mIndex = null;
+
+  @Override
+  public void setup(ProducerContext context) throws IOException {
+    mChangeLog = new DerivedDataChangeLog(getConf());
+    if(getConf().get(RealMatchIndex.INDEX_DIR_KEY) != null) {
+      mIndex = new RealMatchIndex();
+    }
+    super.setup(context);
+  }
+
+  @Override
+  public void cleanup(ProducerContext context) throws IOException {
+    mChangeLog.close();
+    if(mIndex != null) {
+      mIndex.save(getConf(), TaskFiles.taskFile(getConf(),
+          new Path(getConf().get(RealMatchIndex.INDEX_DIR_KEY))));
+    }
+    super.cleanup(context);
   }
 
   @Override
   public KijiDataRequest getDataRequest() {
     KijiDataRequestBuilder builder = KijiDataRequest.builder();
-    return builder.addColumns(builder.newColumnsDef()
+    return builder.addColumns(MatchSummaries.addColumns(builder.newColumnsDef()
         .withMaxVersions(1)
-        .add(Columns.GAME_MODE.columnName())
-        .add(Columns.HUMAN_PLAYERS.columnName())
-        .add(Columns.LOBBY_TYPE.columnName())
-        .add(Columns.PLAYER_DATA.columnName())
+        .add(Columns.PLAYER_DATA.columnName()), MatchSummaries.legacyFallback(getConf()))
     ).build();
   }
 
@@ -90,41 +117,36 @@ public class RealMatchProducer extends KijiProducer {
     boolean realMatch = true;
 
     // Check if this match passes
-    int gameMode = (Integer) kijiRowData.getMostRecentCell("data", "game_mode").getData();
-    if(!DotaValues.GameMode.seriousGame(DotaValues.GameMode.fromInt(gameMode))) {
+    MatchSummary summary = MatchSummaries.get(kijiRowData);
+    if(summary == null) {
+      producerContext.incrementCounter(Counters.NO_MATCH_SUMMARY);
+      return;
+    }
+    int gameMode = summary.getGameMode();
+    int lobbyType = summary.getLobbyType();
+    if(!RealMatchClassifier.seriousGameMode(gameMode)) {
       producerContext.incrementCounter(Counters.BAD_GAME_MODE);
       realMatch = false;
     }
-    LobbyType lobbyType = LobbyType.fromInt((Integer) kijiRowData.getMostRecentValue("data", "lobby_type"));
-    if(!LobbyType.seriousLobby(lobbyType)) {
+    if(!RealMatchClassifier.seriousLobby(lobbyType)) {
       producerContext.incrementCounter(Counters.BAD_LOBBY);
       realMatch = false;
     }
-    if(((Integer) kijiRowData.getMostRecentValue("data", "human_players")) != 10) {
+    if(summary.getHumanPlayers() != 10) {
       producerContext.incrementCounter(Counters.UNDER_TEN_PLAYERS);
       realMatch = false;
     }
 
     // Check for leavers
-    boolean leavers = false;
-    boolean safeLeavers = false;
-    Players player_data = kijiRowData.getMostRecentValue("data", "player_data");
-    List<Player> players = player_data.getPlayers();
-    for(Player player : players) {
-      LeaverStatus ls = LeaverStatus.fromInt(player.getLeaverStatus());
-      if(ls == LeaverStatus.SAFE_LEAVE) {
-        safeLeavers = true;
-       } else if(ls != LeaverStatus.STAYED) {
-        leavers = true;
-      }
-    }
-
-    if(leavers) {
+    KijiCell<Players> playerCell = kijiRowData.getMostRecentCell("data", "player_data");
+    Players player_data = playerCell.getData();
+    int worstLeaver = RealMatchClassifier.worstLeaver(player_data.getPlayers());
+    if(worstLeaver == RealMatchClassifier.ABANDONED) {
       producerContext.incrementCounter(Counters.LEAVERS);
       if(realMatch) {
         producerContext.incrementCounter(Counters.REAL_MATCH_WITH_LEAVERS);
       }
-    } else if(safeLeavers) {
+    } else if(worstLeaver == RealMatchClassifier.SAFE_LEAVE) {
       producerContext.incrementCounter(Counters.SAFE_LEAVERS);
       if(realMatch) {
         producerContext.incrementCounter(Counters.REAL_MATCH_WITH_SAFE_LEAVERS);
@@ -132,19 +154,18 @@ public class RealMatchProducer extends KijiProducer {
     }
 
     // Write the result
+    final long matchId = kijiRowData.getEntityId().<Long>getComponentByIndex(0);
+    double result = RealMatchClassifier.NOT_REAL;
     if(realMatch) {
-      double result;
-      if(leavers) {
-        result = 1.0;
-      } else if(safeLeavers) {
-        result = 2.0;
-      } else {
-        result = 3.0;
-      }
+      result = RealMatchClassifier.realMatchValue(worstLeaver);
       producerContext.incrementCounter(Counters.GOOD_MATCHES);
       producerContext.put("real_match", result);
+      mChangeLog.record(matchId, playerCell.getTimestamp(), "real_match", result, player_data);
     } else {
       producerContext.incrementCounter(Counters.BAD_MATCHES);
     }
+    if(mIndex != null) {
+      mIndex.add(matchId, gameMode, lobbyType, result);
+    }
   }
 }
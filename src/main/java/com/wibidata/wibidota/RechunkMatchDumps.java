@@ -0,0 +1,161 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Rewrites gzipped match dumps as a series of independent gzip members of a fixed number of
+ * lines, along with an index of each member's offset and match_seq_num range (see
+ * GzipChunkIndex). The output is still a valid gzip file with the same name, but can be split
+ * between map tasks by IndexedGzipInputFormat or decoded in parallel by ParallelGzipDecoder.
+ *
+ * ex. kiji jar $WIBIDOTA/lib/wibi-dota-0.0.1.jar com.wibidata.wibidota.RechunkMatchDumps \
+ *   hdfs://path/to/match/files/directory/ hdfs://path/to/rechunked
+ */
+public class RechunkMatchDumps extends Configured implements Tool {
+
+  private static final Logger LOG = LoggerFactory.getLogger(RechunkMatchDumps.class);
+
+  /** Configuration key for the number of lines to put in each gzip member. */
+  public static final String CHUNK_LINES_KEY = "wibidota.rechunk.chunk_lines";
+
+  private static final int DEFAULT_CHUNK_LINES = 2000;
+
+  private static List<Path> listDumps(FileSystem fs, Path input) throws IOException {
+    final List<Path> dumps = new ArrayList<Path>();
+    if(fs.getFileStatus(input).isDir()) {
+      for(FileStatus status : fs.listStatus(input)) {
+        if(!status.isDir() && !GzipChunkIndex.isIndex(status.getPath())) {
+          dumps.add(status.getPath());
+        }
+      }
+    } else {
+      dumps.add(input);
+    }
+    return dumps;
+  }
+
+  // Compresses a chunk as its own gzip member and appends it to out
+  private static GzipChunkIndex.Member writeMember(FSDataOutputStream out, List<String> lines,
+                                                   ByteArrayOutputStream buffer)
+      throws IOException {
+    buffer.reset();
+    final Writer writer = new OutputStreamWriter(new GZIPOutputStream(buffer), "UTF-8");
+    for(String line : lines) {
+      writer.write(line);
+      writer.write('\n');
+    }
+    writer.close();
+    final long offset = out.getPos();
+    buffer.writeTo(out);
+    return new GzipChunkIndex.Member(offset, buffer.size(),
+        GzipChunkIndex.seqNum(lines.get(0)), GzipChunkIndex.seqNum(lines.get(lines.size() - 1)),
+        lines.size());
+  }
+
+  /**
+   * Rechunks a single dump.
+   *
+   * @param conf, the configuration used to find the filesystems of dump and output.
+   * @param dump, the dump to read.
+   * @param output, the path to write the rechunked dump to, the index is written beside it.
+   * @param chunkLines, the number of lines per a member.
+   * @throws IOException if there was a problem reading or writing.
+   */
+  public static void rechunk(Configuration conf, Path dump, Path output, int chunkLines)
+      throws IOException {
+    final FileSystem outFs = output.getFileSystem(conf);
+    InputStream in = dump.getFileSystem(conf).open(dump);
+    if(dump.getName().endsWith(".gz")) {
+      in = new GZIPInputStream(in);
+    }
+    final BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+    final FSDataOutputStream out = outFs.create(output);
+    final List<GzipChunkIndex.Member> members = new ArrayList<GzipChunkIndex.Member>();
+    try {
+      final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+      final List<String> lines = new ArrayList<String>(chunkLines);
+      String line;
+      while((line = reader.readLine()) != null) {
+        lines.add(line);
+        if(lines.size() == chunkLines) {
+          members.add(writeMember(out, lines, buffer));
+          lines.clear();
+        }
+      }
+      if(!lines.isEmpty()) {
+        members.add(writeMember(out, lines, buffer));
+      }
+    } finally {
+      reader.close();
+      out.close();
+    }
+
+    final FSDataOutputStream indexOut = outFs.create(GzipChunkIndex.indexPath(output));
+    try {
+      new GzipChunkIndex(members).write(indexOut);
+    } finally {
+      indexOut.close();
+    }
+    LOG.info("Rechunked " + dump + " into " + members.size() + " members");
+  }
+
+  public static void main(String args[]) throws Exception {
+    Configuration conf = new Configuration();
+    int res = ToolRunner.run(conf, new RechunkMatchDumps(), args);
+    System.exit(res);
+  }
+
+  public final int run(final String[] args) throws Exception {
+    if(args.length != 2) {
+      System.err.println("Usage: RechunkMatchDumps <input file or directory> <output directory>");
+      return -1;
+    }
+    final Path input = new Path(args[0]);
+    final Path outputDir = new Path(args[1]);
+    final int chunkLines = getConf().getInt(CHUNK_LINES_KEY, DEFAULT_CHUNK_LINES);
+    for(Path dump : listDumps(input.getFileSystem(getConf()), input)) {
+      rechunk(getConf(), dump, new Path(outputDir, dump.getName()), chunkLines);
+    }
+    return 0;
+  }
+}
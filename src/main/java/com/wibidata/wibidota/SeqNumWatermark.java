@@ -0,0 +1,212 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A high-water mark of the match_seq_nums that have been imported, stored as a single number
+ * in a small file. When wibidota.importer.watermark_file is set the importers skip lines at or
+ * below the watermark, and NewerDumpsFilter skips whole dumps whose dota_slurp file name
+ * (matches_<start>-<end>.gz, covering start <= match_seq_num < end) shows they are entirely
+ * at or below it. After an import succeeds the watermark is advanced past the imported dumps
+ * by running this class:
+ *
+ * ex. kiji jar $WIBIDOTA/lib/wibi-dota-0.0.1.jar com.wibidata.wibidota.SeqNumWatermark \
+ *   hdfs://path/to/watermark [hdfs://path/to/imported/files/directory/]
+ */
+public class SeqNumWatermark extends Configured implements Tool {
+
+  /** Configuration key for the path to the watermark file. */
+  public static final String WATERMARK_FILE_KEY = "wibidota.importer.watermark_file";
+
+  static enum Counters {
+    LINES_BELOW_WATERMARK
+  }
+
+  private static final Pattern DUMP_NAME = Pattern.compile("^matches_(\\d+)-(\\d+)");
+
+  private static final byte[] SEQ_NUM_FIELD = "\"match_seq_num\"".getBytes();
+
+  /**
+   * Reads the watermark from the file given by wibidota.importer.watermark_file.
+   *
+   * @param conf, the configuration to read the file name from.
+   * @return the watermark, or -1 if there is no watermark file.
+   * @throws IOException if the file could not be read.
+   */
+  public static long read(Configuration conf) throws IOException {
+    final String file = conf.get(WATERMARK_FILE_KEY);
+    return file == null ? -1 : read(conf, new Path(file));
+  }
+
+  /**
+   * @return the watermark stored in path, or -1 if path does not exist.
+   */
+  public static long read(Configuration conf, Path path) throws IOException {
+    final FileSystem fs = path.getFileSystem(conf);
+    if(!fs.exists(path)) {
+      return -1;
+    }
+    final BufferedReader reader =
+        new BufferedReader(new InputStreamReader(fs.open(path), "UTF-8"));
+    try {
+      final String line = reader.readLine();
+      return line == null ? -1 : Long.parseLong(line.trim());
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Overwrites the watermark stored in path.
+   */
+  public static void write(Configuration conf, Path path, long watermark) throws IOException {
+    final FSDataOutputStream out = path.getFileSystem(conf).create(path, true);
+    final Writer writer = new OutputStreamWriter(out, "UTF-8");
+    try {
+      writer.write(watermark + "\n");
+    } finally {
+      writer.close();
+    }
+  }
+
+  /**
+   * @param path, the path of a dump.
+   * @return the last match_seq_num the dump's file name says it can contain, or -1 if the
+   *     name is not of the form dota_slurp writes.
+   */
+  public static long lastSeqNum(Path path) {
+    final Matcher m = DUMP_NAME.matcher(path.getName());
+    return m.find() ? Long.parseLong(m.group(2)) - 1 : -1;
+  }
+
+  /**
+   * Finds the match_seq_num of a raw line by scanning its bytes, without decoding or parsing it.
+   *
+   * @param line, a raw line of match JSON.
+   * @return the match_seq_num, or -1 if it could not be found.
+   */
+  public static long seqNum(Text line) {
+    final int field = line.find("\"match_seq_num\"");
+    if(field < 0) {
+      return -1;
+    }
+    final byte[] bytes = line.getBytes();
+    final int end = line.getLength();
+    int i = field + SEQ_NUM_FIELD.length;
+    while(i < end && (bytes[i] == ' ' || bytes[i] == ':')) {
+      i++;
+    }
+    if(i == end || bytes[i] < '0' || bytes[i] > '9') {
+      return -1;
+    }
+    long seqNum = 0;
+    for(; i < end && bytes[i] >= '0' && bytes[i] <= '9'; i++) {
+      seqNum = seqNum * 10 + (bytes[i] - '0');
+    }
+    return seqNum;
+  }
+
+  /**
+   * @return true if line's match_seq_num was found and is at or below watermark.
+   */
+  public static boolean belowWatermark(Text line, long watermark) {
+    if(watermark < 0) {
+      return false;
+    }
+    final long seqNum = seqNum(line);
+    return seqNum >= 0 && seqNum <= watermark;
+  }
+
+  /**
+   * PathFilter that rejects dumps whose file names show they only contain matches at or below
+   * the watermark. Other paths, including directories, are accepted. Set it as the input path
+   * filter (mapred.input.pathFilter.class) of a job to skip the old dumps.
+   */
+  public static class NewerDumpsFilter extends Configured implements PathFilter {
+
+    private long mWatermark = -1;
+
+    @Override
+    public void setConf(Configuration conf) {
+      super.setConf(conf);
+      if(conf != null) {
+        try {
+          mWatermark = read(conf);
+        } catch (IOException e) {
+          throw new RuntimeException("Could not read the watermark", e);
+        }
+      }
+    }
+
+    public boolean accept(Path path) {
+      final long last = lastSeqNum(path);
+      return last < 0 || last > mWatermark;
+    }
+  }
+
+  public static void main(String args[]) throws Exception {
+    Configuration conf = new Configuration();
+    int res = ToolRunner.run(conf, new SeqNumWatermark(), args);
+    System.exit(res);
+  }
+
+  public final int run(final String[] args) throws Exception {
+    if(args.length < 1 || args.length > 2) {
+      System.err.println("Usage: SeqNumWatermark <watermark file> [<imported files directory>]");
+      return -1;
+    }
+    final Path watermarkPath = new Path(args[0]);
+    final long watermark = read(getConf(), watermarkPath);
+    System.out.println("Watermark: " + watermark);
+    if(args.length == 1) {
+      return 0;
+    }
+
+    final Path dir = new Path(args[1]);
+    long newWatermark = watermark;
+    for(FileStatus status : dir.getFileSystem(getConf()).listStatus(dir)) {
+      newWatermark = Math.max(newWatermark, lastSeqNum(status.getPath()));
+    }
+    if(newWatermark > watermark) {
+      write(getConf(), watermarkPath, newWatermark);
+      System.out.println("Advanced watermark to: " + newWatermark);
+    }
+    return 0;
+  }
+}
@@ -0,0 +1,83 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota;
+
+import org.apache.hadoop.conf.Configuration;
+import org.kiji.mapreduce.KijiContext;
+
+import java.io.IOException;
+
+/**
+ * Counts the games played and won after each win or loss streak, run by StreakCounterGatherer
+ * and PlayerTimelineGatherer. Emits "streak" keyed by the streak (positive for wins, negative
+ * for losses) with counts of [games, wins]. Games within a player's first streakcounter.burn_in
+ * (12) games, counting every game in the row and not only real matches, only build up the streak.
+ */
+public class StreakAccumulator implements TimelineAccumulator {
+
+  public static final String STATISTIC = "streak";
+
+  /** Configuration key for the number of each player's first games that are not counted. */
+  public static final String BURN_IN_KEY = "streakcounter.burn_in";
+
+  private static final int DEFAULT_BURN_IN = 12;
+
+  // Streaks this long or shorter are counted in dense arrays
+  private static final int DENSE_STREAK = 64;
+
+  private PartialCounts mCounts;
+  private int mBurnIn;
+  private int mStreak;
+
+  public void setup(Configuration conf, final Output out) {
+    mBurnIn = conf.getInt(BURN_IN_KEY, DEFAULT_BURN_IN);
+    mCounts = new PartialCounts(conf, 2, -DENSE_STREAK, DENSE_STREAK,
+        new PartialCounts.Emitter() {
+          public void emit(int key, long[] counts) throws IOException {
+            out.emit(STATISTIC, Integer.toString(key), counts);
+          }
+        });
+  }
+
+  public void startPlayer(int accountId) {
+    mStreak = 0;
+  }
+
+  public void game(PlayerGame game) throws IOException {
+    if(!game.isBurnIn() && game.getCellNumber() > mBurnIn) {
+      mCounts.add(mStreak, 0, 1);
+      if(game.isWin()) {
+        mCounts.add(mStreak, 1, 1);
+      }
+    }
+    if(game.isWin()) {
+      mStreak = mStreak > 0 ? mStreak + 1 : 1;
+    } else {
+      mStreak = mStreak < 0 ? mStreak - 1 : -1;
+    }
+  }
+
+  public void endPlayer() {}
+
+  public void cleanup(KijiContext context) throws IOException {
+    mCounts.flush();
+    mCounts.reportCounters(context);
+  }
+}
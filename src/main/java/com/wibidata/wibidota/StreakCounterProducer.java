@@ -18,7 +18,6 @@
  */
 
 package com.wibidata.wibidota;
-import com.wibidata.wibidota.avro.Player;
 import org.apache.hadoop.io.LongWritable;
 import org.kiji.mapreduce.produce.KijiProducer;
 import org.kiji.mapreduce.produce.ProducerContext;
@@ -28,7 +27,8 @@ import java.io.IOException;
 
 /**
  * Class to gather statistics about a player's likelihood to win or lose a match
- * depending on the number of matches won or lost in a row before.
+ * depending on the number of matches won or lost in a row before. Each player's games
+ * are read into a PlayerHistory, which only reads the players of real matches.
  */
 // TODO: Should case some of this work in the derived_data column
 public class StreakCounterProducer extends KijiProducer {
@@ -36,31 +36,53 @@ public class StreakCounterProducer extends KijiProducer {
   // We discards a player's first n matches
   private static final int BURN_IN =  12;
 
+  // Only 'serious' games are counted, the players of other games are not read
+  private static final PlayerHistory.GameFilter REAL_MATCHES = new PlayerHistory.GameFilter() {
+    public boolean accept(long matchId, int realMatch) {
+      return realMatch >= 2;
+    }
+  };
+
+  private final PlayerHistory mHistory = new PlayerHistory();
+
+  private RealMatchIndex mIndex = null;
+
+  private PlayerCellReader mPlayers = null;
+
+  @Override
+  public void setup(ProducerContext context) throws IOException {
+    mIndex = RealMatchIndex.fromConf(getConf());
+    mPlayers = new PlayerCellReader(getConf());
+    super.setup(context);
+  }
+
+  @Override
+  public void cleanup(ProducerContext context) throws IOException {
+    mPlayers.close();
+    super.cleanup(context);
+  }
+
   @Override
   public void produce(KijiRowData input, ProducerContext context) throws IOException {
-    double score = 0;
+    mHistory.read(input, mIndex, REAL_MATCHES, mPlayers);
+    int score = 0;
     int game = 0;
-    long prevTime = 0;
 
-    for(Long time : input.getTimestamps("data", "player").descendingSet()){
+    for(int i = 0; i < mHistory.size(); i++){
 
       // Make sure this is a 'serious' game
-      if(!input.containsCell("match_derived_data", "real_match", time) ||
-          (Double) input.getValue("match_derived_data", "real_match", time) < 2.0){
+      if(!mHistory.hasPlayer(i)){
         continue;
       }
 
       // Check if we won
-      Player self = input.getValue("data", "player", time);
-      boolean radiantWin = (Boolean) input.getValue("data", "radiant_win", time);
-      boolean radiantPlayer = DotaValues.radiantPlayer(self.getPlayerSlot());
-      boolean winner = radiantWin == radiantPlayer;
+      boolean winner = mHistory.isWin(i);
 
       game++;
 
       // Write updates for the streaks we are tracking
       if(game > BURN_IN){
-        context.put("streak_all", time, score);
+        context.put("streak_all", mHistory.getTimestamp(i), (double) score);
       }
 
       // Update out win counter for the next iteration
@@ -77,19 +99,12 @@ public class StreakCounterProducer extends KijiProducer {
           score = -1;
         }
       }
-      prevTime = time;
     }
   }
 
   @Override
   public KijiDataRequest getDataRequest() {
-    KijiDataRequestBuilder builder = KijiDataRequest.builder();
-    KijiDataRequestBuilder.ColumnsDef def = builder.newColumnsDef();
-    def.withMaxVersions(Integer.MAX_VALUE)
-        .add("data", "radiant_win")
-        .add("match_derived_data", "real_match")
-        .add("data", "player");
-    return builder.addColumns(def).build();
+    return PagedPlayerCells.dataRequest(getConf());
   }
 
   @Override
@@ -26,22 +26,22 @@ import org.kiji.mapreduce.KijiReducer;
 import java.io.IOException;
 
 /**
- * For each key, takes values that are int arrays containing two 
- * integers and emits the sum of the first integers and the quotient
- * of the sum of second integers and the sum of the first
+ * For each key, takes values that are counts of games and wins
+ * and emits the quotient of the summed wins and the summed games
+ * along with the summed games
  */
 // Intended for use with StreakCounterGatherer
-public class StreakCounterReducer extends KijiReducer<IntWritable, IntArrayWritable,
+public class StreakCounterReducer extends KijiReducer<IntWritable, CountsWritable,
     IntWritable, Text> {
 
   @Override
-  protected void reduce(IntWritable key, Iterable<IntArrayWritable> values,
+  protected void reduce(IntWritable key, Iterable<CountsWritable> values,
                         Context context) throws IOException, InterruptedException {
     double sum1 = 0;
     double sum2 = 0;
-    for(IntArrayWritable dw : values){
-      sum2 += dw.get(0).get();
-      sum1 += dw.get(1).get();
+    for(CountsWritable dw : values){
+      sum2 += dw.get(0);
+      sum1 += dw.get(1);
     }
     double mean = sum1 / sum2;
     context.write(key, new Text(mean + "," + sum2));
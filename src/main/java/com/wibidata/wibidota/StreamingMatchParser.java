@@ -0,0 +1,310 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.wibidata.wibidota.avro.AbilityUpgrade;
+import com.wibidata.wibidota.avro.AdditionalUnit;
+import com.wibidata.wibidota.avro.Player;
+import com.wibidata.wibidota.avro.Players;
+import org.apache.hadoop.io.Text;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses a line of raw match JSON into a RawMatch in a single pass with a pull
+ * reader, without building a JsonObject tree. Reads the UTF-8 bytes of the Text
+ * directly and should produce the same values as RawMatch.fromJson.
+ */
+public final class StreamingMatchParser {
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  // Match fields, the bit index of each is used to check all the required fields are present
+  private static final String[] MATCH_FIELDS = new String[] {
+      "players", "match_id", "game_mode", "lobby_type", "tower_status_dire",
+      "tower_status_radiant", "barracks_status_dire", "barracks_status_radiant", "cluster",
+      "start_time", "match_seq_num", "leagueid", "first_blood_time", "negative_votes",
+      "positive_votes", "duration", "radiant_win", "human_players", "season"
+  };
+
+  // Every match field but season is required
+  private static final int MATCH_REQUIRED = (1 << (MATCH_FIELDS.length - 1)) - 1;
+
+  // Player fields, item_0 - item_5 take indices 0 - 5 so they double as the item slot
+  private static final String[] PLAYER_FIELDS = new String[] {
+      "item_0", "item_1", "item_2", "item_3", "item_4", "item_5",
+      "account_id", "assists", "deaths", "denies", "xp_per_min", "hero_id", "last_hits",
+      "leaver_status", "level", "player_slot", "tower_damage", "gold_spent", "gold",
+      "gold_per_min", "hero_damage", "hero_healing", "kills", "ability_upgrades",
+      "additional_units", "unitname"
+  };
+
+  private static final int ITEMS = 6;
+
+  private static final int ALL_ITEMS = (1 << ITEMS) - 1;
+
+  private static final Map<String, Integer> MATCH_INDEX = indexOf(MATCH_FIELDS);
+
+  private static final Map<String, Integer> PLAYER_INDEX = indexOf(PLAYER_FIELDS);
+
+  // This utility class should not be instantiated
+  private StreamingMatchParser() {}
+
+  private static Map<String, Integer> indexOf(String[] fields) {
+    Map<String, Integer> index = new HashMap<String, Integer>();
+    for(int i = 0; i < fields.length; i++) {
+      index.put(fields[i], i);
+    }
+    return index;
+  }
+
+  private static int fieldIndex(Map<String, Integer> index, String name) {
+    Integer i = index.get(name);
+    return (i == null ? -1 : i);
+  }
+
+  /**
+   * Parses a line of raw match JSON.
+   *
+   * @param line, the line holding a single match.
+   * @return the RawMatch with line's content.
+   * @throws IOException if the line is not valid JSON.
+   */
+  public static RawMatch parse(Text line) throws IOException {
+    final JsonReader reader = new JsonReader(new InputStreamReader(
+        new ByteArrayInputStream(line.getBytes(), 0, line.getLength()), UTF8));
+    // Match the lenient parsing JsonParser does
+    reader.setLenient(true);
+    try {
+      return readMatch(reader);
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Reads a RawMatch from a reader positioned at the start of a match object.
+   */
+  public static RawMatch readMatch(JsonReader reader) throws IOException {
+    final RawMatch match = new RawMatch();
+    int seen = 0;
+    reader.beginObject();
+    while(reader.hasNext()) {
+      final int field = fieldIndex(MATCH_INDEX, reader.nextName());
+      switch(field) {
+        case 0:  match.players = readPlayers(reader); break;
+        case 1:  match.matchId = reader.nextLong(); break;
+        case 2:  match.gameMode = readInt(reader); break;
+        case 3:  match.lobbyType = readInt(reader); break;
+        case 4:  match.direTowers = readInt(reader); break;
+        case 5:  match.radiantTowers = readInt(reader); break;
+        case 6:  match.direBarracks = readInt(reader); break;
+        case 7:  match.radiantBarracks = readInt(reader); break;
+        case 8:  match.cluster = readInt(reader); break;
+        case 9:  match.startTime = reader.nextLong() * 1000; break; // convert to milliseconds
+        case 10: match.seqNum = reader.nextLong(); break;
+        case 11: match.leagueId = readInt(reader); break;
+        case 12: match.firstBloodTime = readInt(reader); break;
+        case 13: match.negativeVotes = readInt(reader); break;
+        case 14: match.positiveVotes = readInt(reader); break;
+        case 15: match.duration = readInt(reader); break;
+        case 16: match.radiantWin = reader.nextBoolean(); break;
+        case 17: match.humanPlayers = readInt(reader); break;
+        case 18: match.season = readNullableInt(reader); break;
+        default: reader.skipValue(); continue;
+      }
+      seen |= 1 << field;
+    }
+    reader.endObject();
+    checkFields(seen, MATCH_REQUIRED, MATCH_FIELDS, "match");
+    return match;
+  }
+
+  /**
+   * Reads the array of player objects.
+   */
+  public static Players readPlayers(JsonReader reader) throws IOException {
+    final List<Player> players = new ArrayList<Player>(10);
+    reader.beginArray();
+    while(reader.hasNext()) {
+      players.add(readPlayer(reader));
+    }
+    reader.endArray();
+    return new Players(players);
+  }
+
+  /**
+   * Reads a single player object.
+   */
+  public static Player readPlayer(JsonReader reader) throws IOException {
+    final Player.Builder builder = Player.newBuilder()
+        .setAccountId(null)
+        .setLeaverStatus(null)
+        .setAdditionalUnits(null);
+    List<AbilityUpgrade> abilityUpgrades = null;
+    final Integer[] items = new Integer[ITEMS];
+    int itemsSeen = 0;
+
+    reader.beginObject();
+    while(reader.hasNext()) {
+      final int field = fieldIndex(PLAYER_INDEX, reader.nextName());
+      switch(field) {
+        case 0: case 1: case 2: case 3: case 4: case 5:
+          items[field] = readInt(reader);
+          itemsSeen |= 1 << field;
+          break;
+        case 6:  builder.setAccountId(readNullableInt(reader)); break;
+        case 7:  builder.setAssists(readInt(reader)); break;
+        case 8:  builder.setDeaths(readInt(reader)); break;
+        case 9:  builder.setDenies(readInt(reader)); break;
+        case 10: builder.setExpPerMinute(reader.nextDouble()); break;
+        case 11: builder.setHeroId(readInt(reader)); break;
+        case 12: builder.setLastHits(readInt(reader)); break;
+        case 13: builder.setLeaverStatus(readNullableInt(reader)); break;
+        case 14: builder.setLevel(readInt(reader)); break;
+        case 15: builder.setPlayerSlot(readInt(reader)); break;
+        case 16: builder.setTowerDamage(readInt(reader)); break;
+        case 17: builder.setGoldSpent(readInt(reader)); break;
+        case 18: builder.setGold(readInt(reader)); break;
+        case 19: builder.setGoldPerMinute(reader.nextDouble()); break;
+        case 20: builder.setHeroDamage(readInt(reader)); break;
+        case 21: builder.setHeroHealing(readInt(reader)); break;
+        case 22: builder.setKills(readInt(reader)); break;
+        case 23: abilityUpgrades = readAbilityUpgrades(reader); break;
+        case 24: builder.setAdditionalUnits(readAdditionalUnit(reader)); break;
+        default: reader.skipValue();
+      }
+    }
+    reader.endObject();
+    checkFields(itemsSeen, ALL_ITEMS, PLAYER_FIELDS, "player");
+
+    // This can be missing (players have no abilities selected yet?) use a 0 length list
+    return builder
+        .setAbilityUpgrades(abilityUpgrades == null ?
+            new ArrayList<AbilityUpgrade>() : abilityUpgrades)
+        .setItemIds(Arrays.asList(items))
+        .build();
+  }
+
+  private static List<AbilityUpgrade> readAbilityUpgrades(JsonReader reader) throws IOException {
+    final List<AbilityUpgrade> abilityUpgrades = new ArrayList<AbilityUpgrade>();
+    if(reader.peek() == JsonToken.NULL) {
+      reader.nextNull();
+      return abilityUpgrades;
+    }
+    reader.beginArray();
+    while(reader.hasNext()) {
+      final AbilityUpgrade.Builder builder = AbilityUpgrade.newBuilder();
+      reader.beginObject();
+      while(reader.hasNext()) {
+        final String name = reader.nextName();
+        if("level".equals(name)) {
+          builder.setLevel(readInt(reader));
+        } else if("ability".equals(name)) {
+          builder.setAbilityId(readInt(reader));
+        } else if("time".equals(name)) {
+          builder.setTime(readInt(reader));
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+      abilityUpgrades.add(builder.build());
+    }
+    reader.endArray();
+    return abilityUpgrades;
+  }
+
+  private static AdditionalUnit readAdditionalUnit(JsonReader reader) throws IOException {
+    // This is sometimes contained in a list, in which case we only keep the first unit
+    final JsonToken token = reader.peek();
+    if(token == JsonToken.NULL) {
+      reader.nextNull();
+      return null;
+    } else if(token == JsonToken.BEGIN_ARRAY) {
+      AdditionalUnit unit = null;
+      reader.beginArray();
+      if(reader.hasNext()) {
+        unit = readAdditionalUnitObject(reader);
+      }
+      while(reader.hasNext()) {
+        reader.skipValue();
+      }
+      reader.endArray();
+      return unit;
+    }
+    return readAdditionalUnitObject(reader);
+  }
+
+  private static AdditionalUnit readAdditionalUnitObject(JsonReader reader) throws IOException {
+    final AdditionalUnit.Builder builder = AdditionalUnit.newBuilder();
+    final Integer[] items = new Integer[ITEMS];
+    int itemsSeen = 0;
+    reader.beginObject();
+    while(reader.hasNext()) {
+      final int field = fieldIndex(PLAYER_INDEX, reader.nextName());
+      if(field >= 0 && field < ITEMS) {
+        items[field] = readInt(reader);
+        itemsSeen |= 1 << field;
+      } else if(field == 25) {
+        builder.setName(reader.nextString());
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    checkFields(itemsSeen, ALL_ITEMS, PLAYER_FIELDS, "additional_units");
+    return builder.setItemIds(Arrays.asList(items)).build();
+  }
+
+  /**
+   * Reads an int the same way JsonElement.getAsInt would, values outside the int range
+   * (such as the 4294967295 account_id of anonymous players) are truncated.
+   */
+  private static int readInt(JsonReader reader) throws IOException {
+    return (int) reader.nextLong();
+  }
+
+  private static Integer readNullableInt(JsonReader reader) throws IOException {
+    if(reader.peek() == JsonToken.NULL) {
+      reader.nextNull();
+      return null;
+    }
+    return readInt(reader);
+  }
+
+  private static void checkFields(int seen, int required, String[] names, String object) {
+    final int missing = required & ~seen;
+    if(missing != 0) {
+      throw new IllegalStateException("Field " + names[Integer.numberOfTrailingZeros(missing)] +
+          " missing from " + object);
+    }
+  }
+}
@@ -0,0 +1,69 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota;
+
+import org.apache.hadoop.io.Text;
+import org.kiji.mapreduce.KijiReducer;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Sums the CountsWritables of each key element-wise. Since the input and output types match
+ * it can be used as both the combiner and the reducer for PlayerTimelineGatherer.
+ */
+public class SumCountsReducer extends KijiReducer<Text, CountsWritable, Text, CountsWritable> {
+
+  private final CountsWritable mSum = new CountsWritable();
+
+  // Running sums, reused between keys with the same number of counts
+  private long[] mCounts = new long[0];
+
+  @Override
+  protected void reduce(Text key, Iterable<CountsWritable> values, Context context)
+      throws IOException, InterruptedException {
+    boolean first = true;
+    for(CountsWritable counts : values) {
+      if(first) {
+        // Every value of a key has the same number of counts
+        if(mCounts.length != counts.size()) {
+          mCounts = new long[counts.size()];
+        }
+        Arrays.fill(mCounts, 0);
+        first = false;
+      }
+      for(int i = 0; i < mCounts.length; i++) {
+        mCounts[i] += counts.get(i);
+      }
+    }
+    mSum.set(mCounts);
+    context.write(key, mSum);
+  }
+
+  @Override
+  public Class<?> getOutputKeyClass() {
+    return Text.class;
+  }
+
+  @Override
+  public Class<?> getOutputValueClass() {
+    return CountsWritable.class;
+  }
+}
@@ -0,0 +1,132 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota;
+
+import org.kiji.mapreduce.framework.HFileKeyValue;
+import org.kiji.schema.EntityId;
+import org.kiji.schema.EntityIdFactory;
+import org.kiji.schema.Kiji;
+import org.kiji.schema.KijiCellEncoder;
+import org.kiji.schema.KijiColumnName;
+import org.kiji.schema.KijiTable;
+import org.kiji.schema.KijiURI;
+import org.kiji.schema.hbase.HBaseColumnName;
+import org.kiji.schema.impl.DefaultKijiCellEncoderFactory;
+import org.kiji.schema.layout.CellSpec;
+import org.kiji.schema.layout.KijiTableLayout;
+import org.kiji.schema.layout.impl.ColumnNameTranslator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Encodes cells for a Kiji table into HFileKeyValues so they can be written to HFiles
+ * outside of a KijiTableContext, see DerivedDataToHFiles. Encoders and HBase column names
+ * are cached per column, we assume the table's layout is static. Values are not cached,
+ * callers writing the same value to many rows should encode it once and reuse the bytes.
+ */
+public class TableCellEncoder implements Closeable {
+
+  private final Kiji mKiji;
+  private final KijiTableLayout mLayout;
+  private final ColumnNameTranslator mColumnNameTranslator;
+  private final EntityIdFactory mEntityIdFactory;
+  private final Map<String, Column> mColumns = new HashMap<String, Column>();
+
+  // The encoder and hbase column name for a Kiji column
+  private static class Column {
+    final KijiCellEncoder encoder;
+    final HBaseColumnName hbaseColumn;
+
+    Column(KijiCellEncoder encoder, HBaseColumnName hbaseColumn) {
+      this.encoder = encoder;
+      this.hbaseColumn = hbaseColumn;
+    }
+  }
+
+  /**
+   * Opens the Kiji instance holding the table, the instance is kept open
+   * so its schema table can be used by the encoders until close is called.
+   *
+   * @param uri, the uri of the table to encode cells for.
+   * @throws IOException if the table could not be opened.
+   */
+  public TableCellEncoder(KijiURI uri) throws IOException {
+    mKiji = Kiji.Factory.open(uri);
+    KijiTable table = mKiji.openTable(uri.getTable());
+    try {
+      mLayout = table.getLayout();
+    } finally {
+      table.release();
+    }
+    mColumnNameTranslator = new ColumnNameTranslator(mLayout);
+    mEntityIdFactory = EntityIdFactory.getFactory(mLayout);
+  }
+
+  private Column getColumn(String family, String qualifier) throws IOException {
+    final String key = family + ":" + qualifier;
+    Column column = mColumns.get(key);
+    if(column == null) {
+      final KijiColumnName kijiColumn = new KijiColumnName(family, qualifier);
+      final CellSpec cellSpec = mLayout.getCellSpec(kijiColumn)
+          .setSchemaTable(mKiji.getSchemaTable());
+      column = new Column(DefaultKijiCellEncoderFactory.get().create(cellSpec),
+          mColumnNameTranslator.toHBaseColumnName(kijiColumn));
+      mColumns.put(key, column);
+    }
+    return column;
+  }
+
+  /**
+   * @param components, the components of the row key.
+   * @return the EntityId of the row in this table.
+   */
+  public EntityId getEntityId(Object... components) {
+    return mEntityIdFactory.getEntityId(components);
+  }
+
+  /**
+   * Encodes a value the way Kiji would store it in the given column.
+   */
+  public byte[] encode(String family, String qualifier, Object value) throws IOException {
+    return getColumn(family, qualifier).encoder.encode(value);
+  }
+
+  /**
+   * Builds an HFileKeyValue from a cell that has already been encoded with encode.
+   */
+  public HFileKeyValue keyValue(EntityId eid, String family, String qualifier, long timestamp,
+                                byte[] encoded) throws IOException {
+    final HBaseColumnName hbaseColumn = getColumn(family, qualifier).hbaseColumn;
+    return new HFileKeyValue(
+        eid.getHBaseRowKey(),
+        hbaseColumn.getFamily(),
+        hbaseColumn.getQualifier(),
+        timestamp,
+        encoded);
+  }
+
+  @Override
+  public void close() throws IOException {
+    mKiji.release();
+  }
+}
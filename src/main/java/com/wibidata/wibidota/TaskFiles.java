@@ -0,0 +1,54 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * Names for the side files tasks write next to their main output, such as quarantined lines
+ * or change logs. Each task attempt writes its own file so attempts never collide.
+ */
+public final class TaskFiles {
+
+  // This utility class should not be instantiated
+  private TaskFiles() {}
+
+  /**
+   * @return the id of the running job, or "local" outside of a job.
+   */
+  public static String jobId(Configuration conf) {
+    return conf.get("mapreduce.job.id", conf.get("mapred.job.id", "local"));
+  }
+
+  /**
+   * @return the id of the running task attempt, or "local" outside of a task.
+   */
+  public static String taskAttemptId(Configuration conf) {
+    return conf.get("mapreduce.task.attempt.id", conf.get("mapred.task.id", "local"));
+  }
+
+  /**
+   * @return the path of this task attempt's file in dir.
+   */
+  public static Path taskFile(Configuration conf, Path dir) {
+    return new Path(dir, taskAttemptId(conf));
+  }
+}
@@ -0,0 +1,260 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+import org.kiji.mapreduce.KijiContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Low overhead timing and size statistics for a single task. Each Metric is recorded into a
+ * Histogram with power of two buckets, so recording a value is a few array operations and
+ * no allocation. The totals of each metric are added to the job's counters (the Metric enum
+ * doubles as the counters) and, if wibidota.metrics.dir is set, the full histograms of each task
+ * are written to a file per task attempt in that directory so slow tasks and skewed rows can
+ * be found. The summary is also logged when the metrics are closed.
+ *
+ * Summary lines are tab separated:
+ *
+ * <task name>  <metric>  count=..  sum=..  mean=..  max=..  p50=..  p90=..  p99=..  buckets=..
+ *
+ * where percentiles are the upper bound of the bucket they fall in and buckets lists the
+ * non empty buckets as <upper bound>:<count>.
+ */
+public class TaskMetrics implements Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(TaskMetrics.class);
+
+  /** Configuration key for the directory to write per-task summaries to, none if not set. */
+  public static final String METRICS_DIR_KEY = "wibidota.metrics.dir";
+
+  /** The recorded metrics, as counters each holds the metric's total over all rows. */
+  public static enum Metric {
+    PARSE_NANOS,     // Time to parse a line of JSON into a RawMatch
+    WRITE_NANOS,     // Time to build, encode and hand off the cells of a line or row
+    ENCODE_NANOS,    // Time to Avro encode the cells of a row
+    CELLS_PER_ROW,   // Cells written per line or row read
+    BYTES_PER_ROW,   // Encoded bytes written per row, where the encoding is done by the task
+    GATHER_NANOS     // Time to gather a single row
+  }
+
+  /**
+   * Histogram of non negative longs with a bucket per power of two, value v goes in bucket
+   * 64 - numberOfLeadingZeros(v) so bucket b holds [2^(b-1), 2^b - 1] and bucket 0 holds 0.
+   */
+  public static class Histogram {
+
+    private final long[] mBuckets = new long[65];
+    private long mCount = 0;
+    private long mSum = 0;
+    private long mMax = 0;
+
+    /**
+     * Records value, negative values are recorded as 0.
+     */
+    public void record(long value) {
+      if(value < 0) {
+        value = 0;
+      }
+      mBuckets[64 - Long.numberOfLeadingZeros(value)]++;
+      mCount++;
+      mSum += value;
+      if(value > mMax) {
+        mMax = value;
+      }
+    }
+
+    public long getCount() {
+      return mCount;
+    }
+
+    public long getSum() {
+      return mSum;
+    }
+
+    public long getMax() {
+      return mMax;
+    }
+
+    public double getMean() {
+      return mCount == 0 ? 0.0 : (double) mSum / mCount;
+    }
+
+    /**
+     * @return the largest value bucket b can hold.
+     */
+    static long upperBound(int b) {
+      return b == 0 ? 0 : (b == 64 ? Long.MAX_VALUE : (1L << b) - 1);
+    }
+
+    /**
+     * @param fraction, between 0 and 1.
+     * @return the upper bound of the bucket holding the value at fraction, capped at the max.
+     */
+    public long percentile(double fraction) {
+      final long rank = (long) Math.ceil(fraction * mCount);
+      long seen = 0;
+      for(int b = 0; b < mBuckets.length; b++) {
+        seen += mBuckets[b];
+        if(seen >= rank && seen > 0) {
+          return Math.min(upperBound(b), mMax);
+        }
+      }
+      return mMax;
+    }
+
+    /**
+     * Adds the values of other to this histogram.
+     */
+    public void merge(Histogram other) {
+      for(int b = 0; b < mBuckets.length; b++) {
+        mBuckets[b] += other.mBuckets[b];
+      }
+      mCount += other.mCount;
+      mSum += other.mSum;
+      mMax = Math.max(mMax, other.mMax);
+    }
+
+    @Override
+    public String toString() {
+      final StringBuilder sb = new StringBuilder();
+      sb.append("count=").append(mCount)
+          .append("\tsum=").append(mSum)
+          .append("\tmean=").append(String.format("%.1f", getMean()))
+          .append("\tmax=").append(mMax)
+          .append("\tp50=").append(percentile(0.5))
+          .append("\tp90=").append(percentile(0.9))
+          .append("\tp99=").append(percentile(0.99))
+          .append("\tbuckets=");
+      boolean first = true;
+      for(int b = 0; b < mBuckets.length; b++) {
+        if(mBuckets[b] != 0) {
+          if(!first) {
+            sb.append(',');
+          }
+          sb.append(upperBound(b)).append(':').append(mBuckets[b]);
+          first = false;
+        }
+      }
+      return sb.toString();
+    }
+  }
+
+  private final Configuration mConf;
+  private final String mName;
+  private final Histogram[] mHistograms = new Histogram[Metric.values().length];
+
+  /**
+   * @param conf, the task's configuration.
+   * @param name, the name of the task's class, written with each summary line.
+   */
+  public TaskMetrics(Configuration conf, String name) {
+    mConf = conf;
+    mName = name;
+    for(int i = 0; i < mHistograms.length; i++) {
+      mHistograms[i] = new Histogram();
+    }
+  }
+
+  /**
+   * @return a start time to hand to stop.
+   */
+  public static long start() {
+    return System.nanoTime();
+  }
+
+  /**
+   * Records the nanoseconds since start under metric.
+   */
+  public void stop(Metric metric, long start) {
+    mHistograms[metric.ordinal()].record(System.nanoTime() - start);
+  }
+
+  /**
+   * Records value under metric.
+   */
+  public void record(Metric metric, long value) {
+    mHistograms[metric.ordinal()].record(value);
+  }
+
+  public Histogram getHistogram(Metric metric) {
+    return mHistograms[metric.ordinal()];
+  }
+
+  /**
+   * Adds the total of each recorded metric to the counters of context. Should be called
+   * once, at the end of the task.
+   */
+  public void reportCounters(KijiContext context) {
+    for(Metric metric : Metric.values()) {
+      final Histogram histogram = getHistogram(metric);
+      if(histogram.getCount() != 0) {
+        context.incrementCounter(metric, histogram.getSum());
+      }
+    }
+  }
+
+  /**
+   * Adds the total of each recorded metric to the counters of a plain Hadoop task, for
+   * jobs that are not run through Kiji MapReduce. Should be called once, at the end of the task.
+   */
+  public void reportCounters(TaskInputOutputContext<?, ?, ?, ?> context) {
+    for(Metric metric : Metric.values()) {
+      final Histogram histogram = getHistogram(metric);
+      if(histogram.getCount() != 0) {
+        context.getCounter(metric).increment(histogram.getSum());
+      }
+    }
+  }
+
+  /**
+   * Logs the summary and writes it to the task's file in wibidota.metrics.dir if set.
+   */
+  public void close() throws IOException {
+    final StringBuilder summary = new StringBuilder();
+    for(Metric metric : Metric.values()) {
+      final Histogram histogram = getHistogram(metric);
+      if(histogram.getCount() != 0) {
+        summary.append(mName).append('\t').append(metric).append('\t')
+            .append(histogram).append('\n');
+      }
+    }
+    LOG.info("Task metrics:\n" + summary);
+    final String dir = mConf.get(METRICS_DIR_KEY);
+    if(dir != null && summary.length() != 0) {
+      final Path path = TaskFiles.taskFile(mConf, new Path(dir));
+      final Writer out = new OutputStreamWriter(path.getFileSystem(mConf).create(path, true),
+          "UTF-8");
+      try {
+        out.write(summary.toString());
+      } finally {
+        out.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,66 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota;
+
+import org.apache.hadoop.conf.Configuration;
+import org.kiji.mapreduce.KijiContext;
+
+import java.io.IOException;
+
+/**
+ * A statistic computed by walking each player's real matches in chronological order, run by
+ * PlayerTimeline. One instance is used for every player a task sees.
+ */
+public interface TimelineAccumulator {
+
+  /**
+   * Receives the counts accumulators emit, keyed by the statistic and a key within it.
+   * counts may be reused by the caller once emit returns.
+   */
+  public interface Output {
+    public void emit(String statistic, String key, long[] counts) throws IOException;
+  }
+
+  /**
+   * Called once before any player.
+   */
+  public void setup(Configuration conf, Output out) throws IOException;
+
+  /**
+   * Called before the games of each player.
+   */
+  public void startPlayer(int accountId) throws IOException;
+
+  /**
+   * Called with each of the current player's real matches, oldest first.
+   */
+  public void game(PlayerGame game) throws IOException;
+
+  /**
+   * Called after the last game of each player.
+   */
+  public void endPlayer() throws IOException;
+
+  /**
+   * Called once after the last player, accumulators aggregating over players emit here and
+   * report any counters of their own to context.
+   */
+  public void cleanup(KijiContext context) throws IOException;
+}
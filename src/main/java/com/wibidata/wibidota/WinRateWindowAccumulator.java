@@ -0,0 +1,94 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota;
+
+import org.apache.hadoop.conf.Configuration;
+import org.kiji.mapreduce.KijiContext;
+
+import java.io.IOException;
+
+/**
+ * Computes each player's win rate over a sliding window of wibidota.timeline.window_size
+ * (20) games, as WinRateVsGamesPlayed does. Emits "win_rate" keyed by the window number
+ * (1 for a player's first full window, 2 for the window one game later, ...) with counts
+ * of [players, wins, wins^2] summed over players, from which the mean and standard deviation
+ * of the win rates are (wins / players) / window_size and so on.
+ */
+public class WinRateWindowAccumulator implements TimelineAccumulator {
+
+  public static final String STATISTIC = "win_rate";
+
+  /** Configuration key for the number of games in each window. */
+  public static final String WINDOW_SIZE_KEY = "wibidota.timeline.window_size";
+
+  private static final int DEFAULT_WINDOW_SIZE = 20;
+
+  // Windows up to this number are counted in dense arrays
+  private static final int DENSE_WINDOWS = 1024;
+
+  private PartialCounts mCounts;
+  // Ring buffer of the results of the last window_size games
+  private boolean[] mWindow;
+  private int mGames;
+  private int mWins;
+
+  public void setup(Configuration conf, final Output out) {
+    mWindow = new boolean[conf.getInt(WINDOW_SIZE_KEY, DEFAULT_WINDOW_SIZE)];
+    mCounts = new PartialCounts(conf, 3, 1, DENSE_WINDOWS,
+        new PartialCounts.Emitter() {
+          public void emit(int key, long[] counts) throws IOException {
+            out.emit(STATISTIC, Integer.toString(key), counts);
+          }
+        });
+  }
+
+  public void startPlayer(int accountId) {
+    mGames = 0;
+    mWins = 0;
+  }
+
+  public void game(PlayerGame game) throws IOException {
+    if(game.isBurnIn()) {
+      return;
+    }
+    final int slot = mGames % mWindow.length;
+    if(mGames >= mWindow.length && mWindow[slot]) {
+      mWins--;
+    }
+    mWindow[slot] = game.isWin();
+    if(game.isWin()) {
+      mWins++;
+    }
+    mGames++;
+    if(mGames >= mWindow.length) {
+      final int window = mGames - mWindow.length + 1;
+      mCounts.add(window, 0, 1);
+      mCounts.add(window, 1, mWins);
+      mCounts.add(window, 2, (long) mWins * mWins);
+    }
+  }
+
+  public void endPlayer() {}
+
+  public void cleanup(KijiContext context) throws IOException {
+    mCounts.flush();
+    mCounts.reportCounters(context);
+  }
+}
@@ -22,7 +22,7 @@ package com.wibidata.wibidota.express
 import com.twitter.scalding._
 
 import org.kiji.express._
-import com.wibidata.wibidota.DotaValues.{LeaverStatus, LobbyType}
+import com.wibidata.wibidota.RealMatchClassifier
 import org.kiji.express.flow._
 import com.wibidata.wibidota.express.DefaultResourceLocations._;
 
@@ -36,7 +36,7 @@ import com.wibidata.wibidota.express.DefaultResourceLocations._;
  * Games meeting this criteria have a value in this field, either
  * 3.0 if all players stayed, 2.0 if all plays did not recieve an abandon (but might have disconnected
  * before the game ended) or 1.0 if at least one player abandoned.
- *
+ * The rules are those of RealMatchClassifier, shared with RealMatchProducer.
  */
 class DeriveRealMatch(args: Args) extends KijiJob(args) {
 
@@ -44,51 +44,46 @@ class DeriveRealMatch(args: Args) extends KijiJob(args) {
     "hbase.client.scanner.caching" -> "100"
   )
 
-  // Is the game a real match based on its game mode and lobby type
-  def isRealMatch(gmCell : KijiSlice[Int], ltCell : KijiSlice[Int]): Boolean = {
-    val gameMode = gmCell.getFirstValue();
-    val lobbyType = LobbyType.fromInt(ltCell.getFirstValue());
-    return ((gameMode < 6 || gameMode == 12 || gameMode == 14)  &&
-      (lobbyType == LobbyType.SOLO_QUEUE || lobbyType == LobbyType.TEAM_MATCH ||
-        lobbyType == LobbyType.PUBLIC_MATCHMAKING ||lobbyType == LobbyType.TOURNAMENT ))
+  // Is the game a real match based on its game mode, lobby type and human players, read from
+  // match_summary or the legacy columns of rows without one
+  def isRealMatch(fields : (KijiSlice[AvroRecord], KijiSlice[Int], KijiSlice[Int],
+      KijiSlice[Int])): Boolean = {
+    val (summary, gameMode, lobbyType, humanPlayers) = fields
+    RealMatchClassifier.seriousGameMode(
+      MatchSummaryFields.getInt(summary, gameMode, "game_mode")) &&
+      RealMatchClassifier.seriousLobby(
+        MatchSummaryFields.getInt(summary, lobbyType, "lobby_type")) &&
+      MatchSummaryFields.getInt(summary, humanPlayers, "human_players") == 10
   }
 
   // 3.0, 2.0, or 1.0 depending on the conditions stated above
   def statusFromLeavers(playersCell : KijiSlice[AvroRecord]) : Double = {
     val players = playersCell.getFirstValue()("players").asList()
-    var allStayed = true
+    var worst = RealMatchClassifier.STAYED
     for(i <- 0 to (players.size - 1)){
-      val ls = players(i)("leaver_status").asInt()
-      if(ls >= 2){
-        return 1.0
-      } else {
-        allStayed = (allStayed && ls == 0)
-      }
+      val ls = players(i)("leaver_status")
+      val severity = if(ls == null) RealMatchClassifier.ABANDONED
+        else RealMatchClassifier.leaverSeverity(ls.asInt())
+      worst = math.max(worst, severity)
     }
-    if(allStayed) 3.0 else 2.0
+    RealMatchClassifier.realMatchValue(worst)
   }
 
   val table = args.getOrElse("matches_table", MatchesTable)
 
   KijiInput(table)(
     Map(
-      Column("data:human_players", latest) -> 'human_players,
-      Column("data:player_data", latest) -> 'players,
+      Column("data:match_summary", latest) -> 'summary,
+      // Rows imported before match_summary only have the individual columns
       Column("data:game_mode", latest) -> 'game_mode,
-      Column("data:lobby_type", latest) -> 'lobby_type
+      Column("data:lobby_type", latest) -> 'lobby_type,
+      Column("data:human_players", latest) -> 'human_players,
+      Column("data:player_data", latest) -> 'players
     )
   )
-    // Filter out bad game modes and lobby types
-    .filter('game_mode, 'lobby_type){
-    fields : (KijiSlice[Int], KijiSlice[Int]) =>
-      isRealMatch(fields._1, fields._2)
-  }.discard('game_mode, 'lobby_type)
-
-    // Filter out game with less then 10 players,
-    .filter('human_players){
-    human_players : KijiSlice[Int] =>
-      human_players.getFirstValue() == 10
-  }.discard('human_players)
+    // Filter out bad game modes, lobby types and games with less then 10 players
+    .filter('summary, 'game_mode, 'lobby_type, 'human_players){isRealMatch}
+    .discard('summary, 'game_mode, 'lobby_type, 'human_players)
 
     // Add the values we want to insert and write
     .map('players -> 'status){statusFromLeavers}
@@ -44,16 +44,22 @@ import org.kiji.express.flow._
     Map (
       MapFamily("derived_data", "real_match", latest) -> 'real_match,
       Column("data:player_data", versions = latest) -> 'players,
-      Column("data:radiant_win", versions = latest) -> 'r_win
+      Column("data:match_summary", versions = latest) -> 'summary,
+      // Rows imported before match_summary only have the individual column
+      Column("data:radiant_win", versions = latest) -> 'legacy_r_win
     )
   )
+    .map(('summary, 'legacy_r_win) -> 'r_win){
+    fields : (KijiSlice[AvroRecord], KijiSlice[Boolean]) =>
+      MatchSummaryFields.getBoolean(fields._1, fields._2, "radiant_win")
+  }
     // For each player emit a tuple indicating their hero, if they won or lost, and the time
     .flatMapTo(('players, 'real_match, 'r_win) -> ('win, 'hero_id, 'time)) {
-    fields : (KijiSlice[AvroRecord], KijiSlice[Double], KijiSlice[Boolean]) =>
+    fields : (KijiSlice[AvroRecord], KijiSlice[Double], Boolean) =>
       if(!fields._2.getFirstValue().equals(null) && fields._2.getFirstValue() != 1.0){
         None
       }
-      val rWin = fields._3.getFirstValue();
+      val rWin = fields._3
       val slot = interval * (fields._1.getFirst().version / interval)
       fields._1.getFirstValue()("players").asList.map({playerEle =>
         val player = playerEle.asRecord()
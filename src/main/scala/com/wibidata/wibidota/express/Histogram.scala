@@ -28,6 +28,9 @@ import org.kiji.express.flow._
  * value is the value in the column, interval is a time range, and count is the number
  * of occurrences of value within interval.
  *
+ * Like MultHistogram it reads the column as it is, so the scalar columns of dota_matches are only
+ * present while the importers write them with wibidota.importer.legacy_columns (the default).
+ *
  * @param args, arguements that includes the following flags:
  * --table the Kiji table to use
  * --column the column within the table to use
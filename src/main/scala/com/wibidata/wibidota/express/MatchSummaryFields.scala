@@ -0,0 +1,67 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota.express
+
+import org.kiji.express.{AvroRecord, KijiSlice}
+
+/**
+ * Reads the scalar match level values of dota_matches rows in express jobs, as MatchSummaries
+ * does for the Java jobs. Jobs request both data:match_summary and the individual legacy
+ * column of each value they need, the value is read from match_summary if the row has one and
+ * from the legacy column otherwise, as rows imported before match_summary existed only have
+ * the legacy columns until MatchSummaryProducer backfills them.
+ */
+object MatchSummaryFields {
+
+  /**
+   * @return the int field of the row's match summary, or of its legacy column if the row has
+   *     no match_summary.
+   * @throws IllegalStateException if the row has neither.
+   */
+  def getInt(summary : KijiSlice[AvroRecord], legacy : KijiSlice[Int], field : String): Int = {
+    if(!summary.cells.isEmpty) {
+      summary.getFirstValue()(field).asInt()
+    } else {
+      legacyValue(legacy, field)
+    }
+  }
+
+  /**
+   * @return the boolean field of the row's match summary, or of its legacy column if the row
+   *     has no match_summary.
+   * @throws IllegalStateException if the row has neither.
+   */
+  def getBoolean(summary : KijiSlice[AvroRecord], legacy : KijiSlice[Boolean],
+      field : String): Boolean = {
+    if(!summary.cells.isEmpty) {
+      summary.getFirstValue()(field).asBoolean()
+    } else {
+      legacyValue(legacy, field)
+    }
+  }
+
+  // Rows with neither column are not matches we can read, fail rather than silently drop them
+  private def legacyValue[T](legacy : KijiSlice[T], field : String): T = {
+    if(legacy.cells.isEmpty) {
+      throw new IllegalStateException("Row has neither data:match_summary nor data:" + field)
+    }
+    legacy.getFirstValue()
+  }
+}
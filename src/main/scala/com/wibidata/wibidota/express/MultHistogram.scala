@@ -31,6 +31,11 @@ import com.wibidata.wibidota.express.DefaultResourceLocations.MatchesTable
  * of occurrences of value that occured in column field with timestamp between [start-end).
  * Supports up to four columns
  *
+ * The columns are read as they are, so for dota_matches the scalar match values (game_mode,
+ * cluster, ...) need their individual columns, which the importers only write while
+ * wibidota.importer.legacy_columns is true (the default). DotaValueHistogram reads them from
+ * data:match_summary instead.
+ *
  * @param args, arguements that includes the following flags:
  * --table the Kiji table to use, defaults to wibidota/dota_mathes
  * --columns the columns within the table to use, group type only, comma deliminated
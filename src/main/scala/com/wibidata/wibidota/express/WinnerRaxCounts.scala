@@ -23,6 +23,7 @@ import com.twitter.scalding.{Csv, Mode, Args}
 import org.kiji.express.flow._
 import org.slf4j.LoggerFactory
 import org.kiji.express.KijiSlice
+import org.kiji.express.AvroRecord
 import com.wibidata.wibidota.DotaValues
 import com.wibidata.wibidota.express.DefaultResourceLocations._
 import com.twitter.scalding.Csv
@@ -47,21 +48,23 @@ class WinnerRaxCounts(args : Args) extends KijiJob(args) {
 
   KijiInput(table)(
     Map(
+      Column("data:match_summary", latest) -> 'summary,
+      // Rows imported before match_summary only have the individual columns
       Column("data:radiant_win", latest) -> 'radiantWin,
-      Column("derived_data:real_match", latest) -> 'realMatch,
       Column("data:dire_barracks_status", latest) -> 'direRax,
-      Column("data:radiant_barracks_status", latest) -> 'radiantRax
+      Column("data:radiant_barracks_status", latest) -> 'radiantRax,
+      Column("derived_data:real_match", latest) -> 'realMatch
     )
   ).discard('entityId)
     // Only count real matches with no abandons
     .filter('realMatch){x : KijiSlice[Double] => x.getFirstValue() >= 2.0}
-    .mapTo(('direRax, 'radiantRax, 'radiantWin) -> 'raxesLeft){
-    x : (KijiSlice[Int], KijiSlice[Int], KijiSlice[Boolean]) =>
+    .mapTo(('summary, 'direRax, 'radiantRax, 'radiantWin) -> 'raxesLeft){
+    x : (KijiSlice[AvroRecord], KijiSlice[Int], KijiSlice[Int], KijiSlice[Boolean]) =>
     // If the radiant win return their rax counts and vice versa
-      if(x._3.getFirstValue()){
-        Integer.bitCount(x._2.getFirstValue())
+      if(MatchSummaryFields.getBoolean(x._1, x._4, "radiant_win")){
+        Integer.bitCount(MatchSummaryFields.getInt(x._1, x._3, "radiant_barracks_status"))
       } else {
-        Integer.bitCount(x._1.getFirstValue())
+        Integer.bitCount(MatchSummaryFields.getInt(x._1, x._2, "dire_barracks_status"))
       }
   }.groupBy('raxesLeft){_.size}.write(Csv(args("output"), writeHeader = true))
 }
@@ -0,0 +1,169 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestIntCountsMap {
+
+  // Collects the keys and counts forEach visits, failing on a key visited twice
+  private static Map<Integer, long[]> visitAll(IntCountsMap map) throws IOException {
+    final Map<Integer, long[]> visited = new HashMap<Integer, long[]>();
+    map.forEach(new IntCountsMap.Visitor() {
+      @Override
+      public void visit(int key, long[] counts) {
+        assertFalse("Visited " + key + " twice", visited.containsKey(key));
+        visited.put(key, counts.clone());
+      }
+    });
+    return visited;
+  }
+
+  @Test
+  public void testAddAndGet() {
+    final IntCountsMap map = new IntCountsMap(2);
+    map.add(7, 0, 3);
+    map.add(7, 1, 5);
+    map.add(7, 0, 4);
+    map.add(-7, 1, 1);
+    assertEquals(7, map.get(7, 0));
+    assertEquals(5, map.get(7, 1));
+    assertEquals(0, map.get(-7, 0));
+    assertEquals(1, map.get(-7, 1));
+    assertEquals(0, map.get(8, 0));
+    assertEquals(2, map.size());
+    assertEquals(2, map.getWidth());
+  }
+
+  @Test
+  public void testExtremeKeys() {
+    final IntCountsMap map = new IntCountsMap(1);
+    map.add(Integer.MIN_VALUE, 0, 1);
+    map.add(Integer.MAX_VALUE, 0, 2);
+    map.add(0, 0, 3);
+    map.add(-1, 0, 4);
+    assertEquals(1, map.get(Integer.MIN_VALUE, 0));
+    assertEquals(2, map.get(Integer.MAX_VALUE, 0));
+    assertEquals(3, map.get(0, 0));
+    assertEquals(4, map.get(-1, 0));
+    assertEquals(4, map.size());
+  }
+
+  @Test
+  public void testDenseAndSparseKeys() throws IOException {
+    final IntCountsMap map = new IntCountsMap(1, 0, 127);
+    map.add(127, 0, 1);
+    map.add(0, 0, 2);
+    map.add(128, 0, 3);
+    map.add(-1, 0, 4);
+    map.add(0, 0, 5);
+    assertEquals(7, map.get(0, 0));
+    assertEquals(1, map.get(127, 0));
+    assertEquals(3, map.get(128, 0));
+    assertEquals(4, map.get(-1, 0));
+    assertEquals(0, map.get(64, 0));
+    assertEquals(4, map.size());
+
+    final Map<Integer, long[]> visited = visitAll(map);
+    assertEquals(4, visited.size());
+    assertArrayEquals(new long[] {7}, visited.get(0));
+    assertArrayEquals(new long[] {3}, visited.get(128));
+  }
+
+  @Test
+  public void testDenseKeysVisitedFirstInOrder() throws IOException {
+    final IntCountsMap map = new IntCountsMap(1, 10, 20);
+    map.add(1000, 0, 1);
+    map.add(15, 0, 1);
+    map.add(12, 0, 1);
+    map.add(20, 0, 1);
+    final int[] order = new int[4];
+    final int[] visits = new int[1];
+    map.forEach(new IntCountsMap.Visitor() {
+      @Override
+      public void visit(int key, long[] counts) {
+        order[visits[0]++] = key;
+      }
+    });
+    assertArrayEquals(new int[] {12, 15, 20, 1000}, order);
+  }
+
+  @Test
+  public void testGrow() throws IOException {
+    // Far past the 48 keys the initial 64 slots hold at a load factor of 3/4, with keys that
+    // collide in the low bits
+    final int keys = 10000;
+    final IntCountsMap map = new IntCountsMap(3);
+    final long initialBytes = map.estimatedBytes();
+    for(int i = 0; i < keys; i++) {
+      final int key = i << 12;
+      map.add(key, 0, i);
+      map.add(key, 2, 1);
+    }
+    for(int i = 0; i < keys; i += 2) {
+      map.add(i << 12, 1, -i);
+    }
+    assertEquals(keys, map.size());
+    assertTrue(map.estimatedBytes() > initialBytes);
+    for(int i = 0; i < keys; i++) {
+      final int key = i << 12;
+      assertEquals(i, map.get(key, 0));
+      assertEquals(i % 2 == 0 ? -i : 0, map.get(key, 1));
+      assertEquals(1, map.get(key, 2));
+    }
+    assertEquals(0, map.get(keys << 12, 0));
+
+    final Map<Integer, long[]> visited = visitAll(map);
+    assertEquals(keys, visited.size());
+    for(int i = 0; i < keys; i++) {
+      assertArrayEquals(new long[] {i, i % 2 == 0 ? -i : 0, 1}, visited.get(i << 12));
+    }
+  }
+
+  @Test
+  public void testClear() throws IOException {
+    final IntCountsMap map = new IntCountsMap(1, 0, 9);
+    final long initialBytes = map.estimatedBytes();
+    for(int i = 0; i < 1000; i++) {
+      map.add(i, 0, 1);
+    }
+    map.clear();
+    assertEquals(0, map.size());
+    assertEquals(initialBytes, map.estimatedBytes());
+    assertEquals(0, map.get(5, 0));
+    assertEquals(0, map.get(500, 0));
+    assertTrue(visitAll(map).isEmpty());
+
+    map.add(5, 0, 2);
+    map.add(500, 0, 3);
+    assertEquals(2, map.size());
+    assertEquals(2, map.get(5, 0));
+    assertEquals(3, map.get(500, 0));
+  }
+}
@@ -0,0 +1,197 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestMatchIdBitmap {
+
+  // Serialized sizes: the container count, then per container its key, type and values
+  private static final int HEADER_BYTES = 4;
+  private static final int CONTAINER_HEADER_BYTES = 2 + 1;
+  private static final int BITMAP_BYTES = 8192;
+
+  private static byte[] serialize(MatchIdBitmap bitmap) throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream(bytes);
+    bitmap.write(out);
+    out.close();
+    return bytes.toByteArray();
+  }
+
+  private static MatchIdBitmap deserialize(byte[] bytes) throws IOException {
+    return MatchIdBitmap.read(new DataInputStream(new ByteArrayInputStream(bytes)));
+  }
+
+  // Ids sharing the high bits high, with low bits 0, step, 2 * step, ...
+  private static void addRange(MatchIdBitmap bitmap, long high, int count, int step) {
+    for(int i = 0; i < count; i++) {
+      bitmap.add((high << 16) | (i * step));
+    }
+  }
+
+  @Test
+  public void testAddAndContains() {
+    final MatchIdBitmap bitmap = new MatchIdBitmap();
+    final long[] ids = {0L, 1L, 65535L, 65536L, 90000000L, 1234567890L, 0xFFFFFFFFL};
+    for(long id : ids) {
+      bitmap.add(id);
+    }
+    // Adding again changes nothing
+    bitmap.add(90000000L);
+    assertEquals(ids.length, bitmap.cardinality());
+    for(long id : ids) {
+      assertTrue(bitmap.contains(id));
+    }
+    assertFalse(bitmap.contains(2L));
+    assertFalse(bitmap.contains(65537L));
+    assertFalse(bitmap.contains(90000001L));
+    assertFalse(bitmap.contains(-1L));
+    assertFalse(bitmap.contains(0x100000000L));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testAddNegative() {
+    new MatchIdBitmap().add(-1L);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testAddTooLarge() {
+    new MatchIdBitmap().add(0x100000000L);
+  }
+
+  @Test
+  public void testArrayContainerUpToLimit() throws IOException {
+    final MatchIdBitmap bitmap = new MatchIdBitmap();
+    addRange(bitmap, 1373, 4096, 2);
+    assertEquals(4096, bitmap.cardinality());
+    assertEquals(HEADER_BYTES + CONTAINER_HEADER_BYTES + 2 + 2 * 4096, serialize(bitmap).length);
+    // Adding an id already present at the limit keeps the array
+    bitmap.add((1373L << 16) | 8190);
+    assertEquals(4096, bitmap.cardinality());
+    assertEquals(HEADER_BYTES + CONTAINER_HEADER_BYTES + 2 + 2 * 4096, serialize(bitmap).length);
+  }
+
+  @Test
+  public void testPromotionToBitmapContainer() throws IOException {
+    final MatchIdBitmap bitmap = new MatchIdBitmap();
+    addRange(bitmap, 1373, 4096, 2);
+    bitmap.add((1373L << 16) | 1);
+    assertEquals(4097, bitmap.cardinality());
+    assertEquals(HEADER_BYTES + CONTAINER_HEADER_BYTES + BITMAP_BYTES, serialize(bitmap).length);
+    for(int low = 0; low < 2 * 4096; low++) {
+      final boolean expected = low % 2 == 0 || low == 1;
+      assertEquals("low bits " + low, expected, bitmap.contains((1373L << 16) | low));
+    }
+    // Ids of the neighbouring containers are unaffected
+    assertFalse(bitmap.contains(1372L << 16));
+    assertFalse(bitmap.contains(1374L << 16));
+    bitmap.add((1373L << 16) | 65535);
+    assertEquals(4098, bitmap.cardinality());
+    assertTrue(bitmap.contains((1373L << 16) | 65535));
+  }
+
+  @Test
+  public void testOr() {
+    final MatchIdBitmap a = new MatchIdBitmap();
+    final MatchIdBitmap b = new MatchIdBitmap();
+    // An array container in a and a bitmap container in b sharing the same high bits
+    addRange(a, 7, 100, 3);
+    addRange(b, 7, 5000, 2);
+    addRange(a, 8, 10, 1);
+    addRange(b, 9, 10, 1);
+    a.or(b);
+    for(int low = 0; low < 10000; low++) {
+      final boolean expected = (low < 300 && low % 3 == 0) || low % 2 == 0;
+      assertEquals("low bits " + low, expected, a.contains((7L << 16) | low));
+    }
+    for(int low = 0; low < 10; low++) {
+      assertTrue(a.contains((8L << 16) | low));
+      assertTrue(a.contains((9L << 16) | low));
+    }
+    // 5000 evens, the 50 odd multiples of 3 below 300 and two containers of 10
+    assertEquals(50 + 5000 + 10 + 10, a.cardinality());
+    // b is not changed
+    assertEquals(5000 + 10, b.cardinality());
+
+    final MatchIdBitmap empty = new MatchIdBitmap();
+    empty.or(a);
+    assertEquals(a.cardinality(), empty.cardinality());
+    a.or(new MatchIdBitmap());
+    assertEquals(5070, a.cardinality());
+  }
+
+  @Test
+  public void testWriteReadRoundTrip() throws IOException {
+    final MatchIdBitmap bitmap = new MatchIdBitmap();
+    addRange(bitmap, 0, 3, 7);
+    addRange(bitmap, 1373, 6000, 3);
+    addRange(bitmap, 65535, 4096, 16);
+    // More containers than the initial capacity
+    for(long high = 100; high < 120; high++) {
+      bitmap.add(high << 16);
+    }
+    final byte[] bytes = serialize(bitmap);
+    final MatchIdBitmap read = deserialize(bytes);
+    assertEquals(bitmap.cardinality(), read.cardinality());
+    assertTrue(read.contains(14L));
+    assertFalse(read.contains(15L));
+    assertTrue(read.contains((1373L << 16) | 5999 * 3));
+    assertFalse(read.contains((1373L << 16) | 1));
+    assertTrue(read.contains(0xFFFFFFF0L));
+    assertTrue(read.contains(119L << 16));
+    assertArrayEquals(bytes, serialize(read));
+    // The read bitmap can still be added to
+    read.add((120L << 16) | 1);
+    read.add((1373L << 16) | 1);
+    assertEquals(bitmap.cardinality() + 2, read.cardinality());
+  }
+
+  @Test
+  public void testEmptyRoundTrip() throws IOException {
+    final MatchIdBitmap read = deserialize(serialize(new MatchIdBitmap()));
+    assertEquals(0, read.cardinality());
+    assertFalse(read.contains(0L));
+    read.add(5L);
+    assertTrue(read.contains(5L));
+  }
+
+  @Test(expected = IOException.class)
+  public void testUnknownContainerType() throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(1);
+    out.writeChar(0);
+    out.writeByte(7);
+    out.close();
+    deserialize(bytes.toByteArray());
+  }
+}
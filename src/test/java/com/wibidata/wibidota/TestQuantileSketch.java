@@ -0,0 +1,227 @@
+/**
+ * (c) Copyright 2013 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wibidata.wibidota;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestQuantileSketch {
+
+  private static final double[] QUANTILES = {0.0, 0.01, 0.1, 0.25, 0.5, 0.75, 0.9, 0.99, 1.0};
+
+  private static byte[] serialize(QuantileSketch sketch) throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream(bytes);
+    sketch.write(out);
+    out.close();
+    return bytes.toByteArray();
+  }
+
+  private static QuantileSketch deserialize(byte[] bytes) throws IOException {
+    final QuantileSketch sketch = new QuantileSketch();
+    sketch.readFields(new DataInputStream(new ByteArrayInputStream(bytes)));
+    return sketch;
+  }
+
+  // Checks every quantile of the sketch is within its accuracy of the value at the same rank
+  // of the sorted values
+  private static void assertQuantiles(QuantileSketch sketch, double[] sorted)
+      throws IOException {
+    for(double q : QUANTILES) {
+      final double expected = sorted[(int) (q * (sorted.length - 1))];
+      final double actual = sketch.quantile(q);
+      assertTrue("Quantile " + q + " was " + actual + ", expected " + expected,
+          Math.abs(actual - expected) <= sketch.getAccuracy() * expected * (1 + 1e-9));
+    }
+  }
+
+  @Test
+  public void testEmpty() throws IOException {
+    final QuantileSketch sketch = new QuantileSketch();
+    assertEquals(0, sketch.getCount());
+    assertTrue(Double.isNaN(sketch.quantile(0.5)));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testZeroAccuracy() {
+    new QuantileSketch(0.0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testAccuracyOfOne() {
+    new QuantileSketch(1.0);
+  }
+
+  @Test
+  public void testBinMidpoint() throws IOException {
+    final QuantileSketch sketch = new QuantileSketch(0.05);
+    final double gamma = 1.05 / 0.95;
+    // Values in (gamma^4, gamma^5] fall in bin 5 and are reported as its middle
+    sketch.add(0.0);
+    sketch.add(Math.pow(gamma, 4.5));
+    sketch.add(1e6);
+    final double middle = 2 * Math.pow(gamma, 5) / (gamma + 1);
+    assertEquals(middle, sketch.quantile(0.5), middle * 1e-12);
+    // The middle is within the accuracy of both ends of the bin
+    assertTrue(middle - Math.pow(gamma, 4) <= 0.05 * Math.pow(gamma, 4) * (1 + 1e-12));
+    assertTrue(Math.pow(gamma, 5) - middle <= 0.05 * Math.pow(gamma, 5) * (1 + 1e-12));
+  }
+
+  @Test
+  public void testSingleValue() throws IOException {
+    final QuantileSketch sketch = new QuantileSketch();
+    sketch.add(1234.5);
+    // Clamped to the exact min and max
+    for(double q : QUANTILES) {
+      assertEquals(1234.5, sketch.quantile(q), 0.0);
+    }
+  }
+
+  @Test
+  public void testSequentialValues() throws IOException {
+    final QuantileSketch sketch = new QuantileSketch();
+    final double[] values = new double[100000];
+    for(int i = 0; i < values.length; i++) {
+      values[i] = i + 1;
+      sketch.add(values[i]);
+    }
+    assertEquals(values.length, sketch.getCount());
+    assertEquals(1.0, sketch.getMin(), 0.0);
+    assertEquals(100000.0, sketch.getMax(), 0.0);
+    assertQuantiles(sketch, values);
+  }
+
+  @Test
+  public void testWideRange() throws IOException {
+    // Values from 1e-3 to 1e9, in negative bins as well as dense and hashed positive ones
+    final Random random = new Random(42);
+    final QuantileSketch sketch = new QuantileSketch(0.02);
+    final double[] values = new double[50000];
+    for(int i = 0; i < values.length; i++) {
+      values[i] = Math.pow(10, -3 + 12 * random.nextDouble());
+      sketch.add(values[i]);
+    }
+    Arrays.sort(values);
+    assertQuantiles(sketch, values);
+  }
+
+  @Test
+  public void testZerosAndNegatives() throws IOException {
+    final QuantileSketch sketch = new QuantileSketch();
+    for(int i = 0; i < 30; i++) {
+      sketch.add(-5.0);
+    }
+    for(int i = 0; i < 20; i++) {
+      sketch.add(0.0);
+    }
+    for(int i = 0; i < 50; i++) {
+      sketch.add(100.0);
+    }
+    assertEquals(-5.0, sketch.getMin(), 0.0);
+    assertEquals(0.0, sketch.quantile(0.0), 0.0);
+    assertEquals(0.0, sketch.quantile(0.49), 0.0);
+    assertEquals(100.0, sketch.quantile(0.6), 1.0);
+
+    // Only negative values report the largest of them rather than 0
+    final QuantileSketch negative = new QuantileSketch();
+    negative.add(-3.0);
+    negative.add(-1.0);
+    assertEquals(-1.0, negative.quantile(0.5), 0.0);
+  }
+
+  @Test
+  public void testMerge() throws IOException {
+    final Random random = new Random(7);
+    final QuantileSketch all = new QuantileSketch();
+    final QuantileSketch left = new QuantileSketch();
+    final QuantileSketch right = new QuantileSketch();
+    for(int i = 0; i < 20000; i++) {
+      final double value = random.nextDouble() < 0.05 ? 0.0 : Math.exp(20 * random.nextDouble());
+      all.add(value);
+      (i % 3 == 0 ? left : right).add(value);
+    }
+    left.merge(right);
+    assertEquals(all.getCount(), left.getCount());
+    assertEquals(all.getMin(), left.getMin(), 0.0);
+    assertEquals(all.getMax(), left.getMax(), 0.0);
+    for(double q : QUANTILES) {
+      assertEquals(all.quantile(q), left.quantile(q), 0.0);
+    }
+  }
+
+  @Test
+  public void testMergeEmpty() throws IOException {
+    final QuantileSketch sketch = new QuantileSketch();
+    sketch.add(10.0);
+    sketch.merge(new QuantileSketch());
+    assertEquals(1, sketch.getCount());
+    assertEquals(10.0, sketch.quantile(0.5), 0.0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMergeDifferentAccuracy() throws IOException {
+    new QuantileSketch(0.01).merge(new QuantileSketch(0.02));
+  }
+
+  @Test
+  public void testWriteReadRoundTrip() throws IOException {
+    final QuantileSketch sketch = new QuantileSketch(0.005);
+    sketch.add(0.0);
+    sketch.add(-2.0);
+    // A few sparse bins far apart, below 1, dense and hashed
+    sketch.add(1e-6);
+    sketch.add(3.0);
+    sketch.add(3.0);
+    sketch.add(1e12);
+    final byte[] bytes = serialize(sketch);
+    final QuantileSketch read = deserialize(bytes);
+    assertEquals(0.005, read.getAccuracy(), 0.0);
+    assertEquals(sketch.getCount(), read.getCount());
+    assertEquals(sketch.getMin(), read.getMin(), 0.0);
+    assertEquals(sketch.getMax(), read.getMax(), 0.0);
+    for(double q : QUANTILES) {
+      assertEquals(sketch.quantile(q), read.quantile(q), 0.0);
+    }
+    assertArrayEquals(bytes, serialize(read));
+  }
+
+  @Test
+  public void testReadReplacesContents() throws IOException {
+    final QuantileSketch source = new QuantileSketch();
+    source.add(50.0);
+    final QuantileSketch target = new QuantileSketch(0.1);
+    target.add(1e9);
+    target.readFields(new DataInputStream(new ByteArrayInputStream(serialize(source))));
+    assertEquals(1, target.getCount());
+    assertEquals(0.01, target.getAccuracy(), 0.0);
+    assertEquals(50.0, target.quantile(1.0), 0.0);
+  }
+}